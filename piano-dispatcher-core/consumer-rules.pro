@@ -0,0 +1,12 @@
+# Optional dependencies, only required when the matching feature is enabled
+-dontwarn androidx.work.**
+
+# Instantiated by WorkManager
+-keep class com.batch.android.dispatcher.piano.DeferredDispatchWorker {
+    public <init>(android.content.Context, androidx.work.WorkerParameters);
+}
+
+# Configuration generated at build time, loaded by reflection
+-keep class com.batch.android.dispatcher.piano.GeneratedPianoDispatcherConfiguration {
+    public <init>();
+}
@@ -0,0 +1,1636 @@
+package com.batch.android.dispatcher.piano;
+
+import android.content.Context;
+import android.net.Uri;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+
+import com.batch.android.Batch;
+import com.batch.android.BatchEventDispatcher;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+
+/**
+ * Piano Event Dispatcher
+ * <p>
+ * Dispatch Batch events to the Piano Analytics SDK. By default events are dispatched as On-site Ads.
+ * If you want to dispatch as custom event, please see {@link #enableBatchCustomEvents(boolean)}.
+ * Note: if you enable custom events, you need to declare them in your Piano Data Model.
+ */
+public abstract class AbstractPianoDispatcher implements BatchEventDispatcher {
+
+    /**
+     * Batch internal dispatcher information used for analytics
+     */
+    private static final String DISPATCHER_NAME = "piano";
+    private static final int DISPATCHER_VERSION = 2;
+
+    /**
+     * Piano event keys
+     */
+    protected static final String CAMPAIGN = "src_campaign";
+    protected static final String SOURCE = "src_source";
+    protected static final String SOURCE_FORCE = "src_force";
+    protected static final String MEDIUM = "src_medium";
+    protected static final String CONTENT = "src_content";
+
+    protected static final String EVENT_IMPRESSION = "publisher.impression";
+    protected static final String EVENT_CLICK = "publisher.click";
+
+    protected static final String ON_SITE_TYPE = "onsitead_type";
+    protected static final String ON_SITE_TYPE_PUBLISHER = "Publisher";
+    protected static final String ON_SITE_ADVERTISER = "onsitead_advertiser";
+    protected static final String ON_SITE_CAMPAIGN = "onsitead_campaign";
+    protected static final String ON_SITE_FORMAT = "onsitead_format";
+
+    /**
+     * Custom event name used when logging on Piano
+     * <p>
+     *  Note: Must be add as custom event/property in your Piano Data Model
+     */
+    private static final String NOTIFICATION_DISPLAY_NAME = "batch_notification_display";
+    private static final String NOTIFICATION_OPEN_NAME = "batch_notification_open";
+    private static final String NOTIFICATION_DISMISS_NAME = "batch_notification_dismiss";
+    private static final String MESSAGING_SHOW_NAME = "batch_in_app_show";
+    private static final String MESSAGING_CLOSE_NAME = "batch_in_app_close";
+    private static final String MESSAGING_AUTO_CLOSE_NAME = "batch_in_app_auto_close";
+    private static final String MESSAGING_CLOSE_ERROR_NAME = "batch_in_app_close_error";
+    private static final String MESSAGING_CLICK_NAME = "batch_in_app_click";
+    private static final String MESSAGING_WEBVIEW_CLICK_NAME = "batch_in_app_webview_click";
+    protected static final String BATCH_WEBVIEW_ANALYTICS_ID = "batch_webview_analytics_id";
+    protected static final String BATCH_TRACKING_ID = "batch_tracking_id";
+    protected static final String EVENT_TIME = "batch_event_time";
+    private static final String UNKNOWN_EVENT_NAME = "batch_unknown";
+
+    /**
+     * Batch event values
+     */
+    private static final String BATCH_SRC = "Batch";
+    private static final String BATCH_FORMAT_IN_APP = "in-app";
+    private static final String BATCH_FORMAT_PUSH = "push";
+    private static final String BATCH_DEFAULT_CAMPAIGN = "batch-default-campaign";
+
+    /**
+     * Third-party keys
+     */
+    private static final String AT_MEDIUM = "at_medium";
+    private static final String AT_CAMPAIGN = "at_campaign";
+
+    private static final String UTM_SOURCE = "utm_source";
+    private static final String UTM_MEDIUM = "utm_medium";
+    private static final String UTM_CAMPAIGN = "utm_campaign";
+    private static final String UTM_CONTENT = "utm_content";
+
+    /**
+     * Every tag read from the deeplink or the custom payload
+     */
+    static final String[] ATTRIBUTION_KEYS = {
+            AT_MEDIUM, AT_CAMPAIGN, UTM_SOURCE, UTM_MEDIUM, UTM_CAMPAIGN, UTM_CONTENT
+    };
+
+    /**
+     * Whether Batch should send custom events (default: false)
+     * <p>
+     * Note: Custom events must be defined in the Piano Data Model
+     */
+    protected volatile boolean customEventsEnabled = false;
+
+    /**
+     * Whether Batch should send onSiteAds events (default: true)
+     */
+    protected volatile boolean onSiteAdsEventsEnabled = true;
+
+    /**
+     * Whether Batch should handle UTM tags in campaign's deeplink
+     * and custom payload. (default = true)
+     */
+    protected volatile boolean isUTMTrackingEnabled = true;
+
+    /**
+     * Optional flight recorder keeping track of the last dispatches
+     */
+    @Nullable
+    private volatile DispatchFlightRecorder flightRecorder;
+
+    /**
+     * Optional writer capturing the incoming Batch events
+     */
+    @Nullable
+    private volatile EventCaptureWriter captureWriter;
+
+    /**
+     * Whether the time at which the Batch event happened should be attached to the Piano events
+     * as {@link #EVENT_TIME} (default: false)
+     */
+    protected volatile boolean eventTimePropertyEnabled = false;
+
+    /**
+     * Histogram of the delay between a Batch event entering the dispatcher and its send
+     */
+    @NonNull
+    protected final DispatchLatencyHistogram latencyHistogram = new DispatchLatencyHistogram();
+
+    /**
+     * Optional rules dropping Batch events before any parsing
+     */
+    @Nullable
+    private volatile PianoEventFilter eventFilter;
+
+    /**
+     * Low-priority event types deferred by default
+     */
+    public static final Set<Batch.EventDispatcher.Type> DEFAULT_DEFERRED_TYPES = Collections.unmodifiableSet(
+            EnumSet.of(Batch.EventDispatcher.Type.NOTIFICATION_DISMISS, Batch.EventDispatcher.Type.MESSAGING_AUTO_CLOSE));
+
+    /**
+     * Optional channel deferring low-priority events to a WorkManager job
+     */
+    @Nullable
+    private volatile DeferredEventChannel deferredChannel;
+
+    /**
+     * Optional sink receiving the mapped events instead of the Piano SDK
+     */
+    @Nullable
+    private volatile PianoEventSink eventSink;
+
+    /**
+     * Optional watchdog reporting slow dispatches on the main thread
+     */
+    @Nullable
+    private volatile MainThreadWatchdog mainThreadWatchdog;
+
+    /**
+     * Byte budget enforced on the mapped events, disabled if null
+     */
+    private volatile PianoPayloadBudget payloadBudget;
+
+    /**
+     * Gate skipping the events dropped by the Piano privacy mode, disabled if null
+     */
+    private volatile PianoConsentGate consentGate;
+
+    /**
+     * Static context properties appended to every event, if any
+     */
+    private volatile PianoContextProperties contextProperties;
+
+    /**
+     * Piano Data Model validating the custom events, bound to this dispatcher, disabled if null
+     */
+    private volatile PianoDataModel.Binding dataModelBinding;
+
+    /**
+     * Shadow mode comparing a candidate attribution engine, disabled if null
+     */
+    private volatile ShadowAttribution shadowAttribution;
+
+    /**
+     * Workers dispatching events in parallel, disabled if null
+     */
+    private volatile ShardedDispatchExecutor shardedExecutor;
+
+    /**
+     * Executor still draining its queues after sharded dispatch has been disabled
+     */
+    @Nullable
+    private volatile ShardedDispatchExecutor drainingExecutor;
+
+    /**
+     * Controller degrading fidelity under load, disabled if null
+     */
+    private volatile AdaptiveLoadShedder loadShedder;
+
+    /**
+     * Circuit breaker around the Piano SDK sends
+     */
+    @NonNull
+    protected final PianoCircuitBreaker circuitBreaker = new PianoCircuitBreaker();
+
+    /**
+     * Whether Batch should dispatch events as Piano Custom Event.
+     * <p>
+     * Note: This method should be called as soon as possible in your Application subclass
+     * just after your Piano Configuration.
+     *
+     * @param enabled true if you want to enable custom events sending
+     */
+    public void enableBatchCustomEvents(boolean enabled) {
+        this.customEventsEnabled = enabled;
+    }
+
+    /**
+     * Whether Batch should dispatch as Piano OnSite-Ads Event.
+     *
+     * @param enabled true if you want to enable OnSite-Ads events sending
+     */
+    public void enableBatchOnSiteAdsEvents(boolean enabled) {
+        this.onSiteAdsEventsEnabled = enabled;
+    }
+
+    /**
+     * Whether Batch should handle UTM tags in campaign's deeplink
+     * and custom payload. (default = true)
+     */
+    public void enableUTMTracking(boolean enabled) {
+        this.isUTMTrackingEnabled = enabled;
+    }
+
+    /**
+     * Enable the flight recorder keeping track of the last dispatches.
+     * <p>
+     * Useful to diagnose the attribution resolved on a device, see {@link DispatchFlightRecorder#dump()}.
+     *
+     * @param capacity Number of dispatches to keep
+     */
+    public void enableFlightRecorder(int capacity) {
+        this.flightRecorder = new DispatchFlightRecorder(capacity);
+    }
+
+    /**
+     * Disable the flight recorder and drop its records.
+     */
+    public void disableFlightRecorder() {
+        this.flightRecorder = null;
+    }
+
+    /**
+     * Get the flight recorder, if enabled
+     *
+     * @return The flight recorder or null
+     */
+    @Nullable
+    public DispatchFlightRecorder getFlightRecorder() {
+        return flightRecorder;
+    }
+
+    /**
+     * Capture every incoming Batch event into a binary log, to be replayed offline
+     * with {@link EventCaptureReplayer}.
+     *
+     * @param writer The capture writer, or null to stop capturing
+     */
+    public void setEventCaptureWriter(@Nullable EventCaptureWriter writer) {
+        this.captureWriter = writer;
+    }
+
+    /**
+     * Write an incoming Batch event into the capture log, if enabled
+     *
+     * @param type Batch event type
+     * @param payload Batch event payload
+     */
+    protected void captureEvent(@NonNull Batch.EventDispatcher.Type type, @NonNull Batch.EventDispatcher.Payload payload) {
+        EventCaptureWriter writer = captureWriter;
+        if (writer != null) {
+            writer.capture(type, payload);
+        }
+    }
+
+    /**
+     * Whether Batch should attach the time at which the event happened to the Piano events,
+     * as a "batch_event_time" property (milliseconds since epoch).
+     * <p>
+     * Useful when events are deferred, since Piano timestamps events when they are sent.
+     * Note: the property must be declared in your Piano Data Model.
+     *
+     * @param enabled true to attach the event time
+     */
+    public void enableEventTimeProperty(boolean enabled) {
+        this.eventTimePropertyEnabled = enabled;
+    }
+
+    /**
+     * Get the histogram of the delay between a Batch event entering the dispatcher
+     * and its Piano events being handed to the SDK.
+     *
+     * @return The histogram
+     */
+    @NonNull
+    public DispatchLatencyHistogram getLatencyHistogram() {
+        return latencyHistogram;
+    }
+
+    /**
+     * Set precompiled rules dropping Batch events before any parsing
+     *
+     * @param filter The filter, or null to remove it
+     */
+    public void setEventFilter(@Nullable PianoEventFilter filter) {
+        this.eventFilter = filter;
+    }
+
+    /**
+     * Get the event filter, if any
+     *
+     * @return The filter or null
+     */
+    @Nullable
+    public PianoEventFilter getEventFilter() {
+        return eventFilter;
+    }
+
+    /**
+     * Get the channels a Batch event type should be sent to, according to the configuration,
+     * the event filter, the consent gate and the load shedder, in this order. Nothing is read from the payload.
+     *
+     * @param type Batch event type
+     * @return A mask of {@link PianoEventFilter.Channel}, 0 if nothing should be sent
+     */
+    protected int getEnabledChannels(@NonNull Batch.EventDispatcher.Type type) {
+        return getEnabledChannels(type, true);
+    }
+
+    /**
+     * Get the channels a Batch event type should be sent to
+     *
+     * @param type Batch event type
+     * @param count Whether the filter, gate and shedder count the events they drop,
+     *              false when replaying events that have already been counted
+     * @return A mask of {@link PianoEventFilter.Channel}, 0 if nothing should be sent
+     */
+    private int getEnabledChannels(@NonNull Batch.EventDispatcher.Type type, boolean count) {
+        int channels = 0;
+        if (onSiteAdsEventsEnabled && shouldBeDispatchedAsOnSiteAd(type)) {
+            channels |= PianoEventFilter.Channel.ON_SITE_ADS.mask;
+        }
+        if (customEventsEnabled) {
+            channels |= PianoEventFilter.Channel.CUSTOM.mask;
+        }
+        // Filtered events are never counted as skipped by the gate or shed
+        PianoEventFilter filter = eventFilter;
+        if (filter != null && channels != 0) {
+            channels &= filter.getAllowedChannels(type);
+            if (channels == 0 && count) {
+                filter.onRejected();
+            }
+        }
+        PianoConsentGate gate = consentGate;
+        if (gate != null && channels != 0) {
+            channels = gate.filter(type, channels, count);
+        }
+        AdaptiveLoadShedder shedder = loadShedder;
+        if (shedder != null && channels != 0) {
+            channels = shedder.filter(channels, isClick(type), isImpression(type), count);
+        }
+        return channels;
+    }
+
+    /**
+     * Whether the event filter rejects the tracking id of a Batch event
+     *
+     * @param trackingId Batch tracking id
+     * @param count Whether a rejection is counted
+     * @return True if the event must not be sent
+     */
+    private boolean rejectsTrackingId(@Nullable String trackingId, boolean count) {
+        PianoEventFilter filter = eventFilter;
+        if (filter != null && filter.rejectsTrackingId(trackingId)) {
+            if (count) {
+                filter.onRejected();
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Callback fired when a new Batch event is triggered
+     * <p>
+     * Resolve the attribution once, then let the implementation build and send
+     * the Piano events through {@link #sendEvents}. When sharded dispatch is enabled,
+     * this happens on the worker thread of the event's tracking id, but the event is
+     * timestamped and captured here, in arrival order.
+     *
+     * @param type The type of the event
+     * @param payload The associated payload of the event
+     */
+    @Override
+    public void dispatchEvent(@NonNull Batch.EventDispatcher.Type type, @NonNull Batch.EventDispatcher.Payload payload) {
+        long startNanos = System.nanoTime();
+        long eventTime = System.currentTimeMillis();
+        captureEvent(type, payload);
+        ShardedDispatchExecutor executor = shardedExecutor;
+        if (executor != null) {
+            executor.execute(type, payload, startNanos, eventTime);
+            return;
+        }
+        ShardedDispatchExecutor draining = drainingExecutor;
+        if (draining != null) {
+            // Sharded dispatch has just been disabled, queued events come first
+            draining.awaitTermination();
+        }
+        dispatchEventNow(type, payload, startNanos, eventTime);
+    }
+
+    /**
+     * Dispatch a Batch event on the current thread
+     *
+     * @param type The type of the event
+     * @param payload The associated payload of the event
+     * @param startNanos {@link System#nanoTime()} when the event entered the dispatcher
+     * @param eventTime Wall-clock time at which the event entered the dispatcher
+     */
+    private void dispatchEventNow(@NonNull Batch.EventDispatcher.Type type,
+                                  @NonNull Batch.EventDispatcher.Payload payload,
+                                  long startNanos,
+                                  long eventTime) {
+        // Queue wait on a sharded worker is part of the latency, but not of the dispatch cost
+        long dispatchStartNanos = System.nanoTime();
+        try {
+            mapAndSendEvent(type, payload, startNanos, eventTime);
+        } finally {
+            // Every dispatch is recorded, including the ones that end up sending nothing
+            AdaptiveLoadShedder shedder = loadShedder;
+            if (shedder != null) {
+                ShardedDispatchExecutor executor = shardedExecutor;
+                shedder.record(System.nanoTime() - dispatchStartNanos, executor != null ? executor.getBacklog() : 0);
+            }
+        }
+    }
+
+    /**
+     * Resolve, map and send the Piano events of a Batch event
+     *
+     * @param type The type of the event
+     * @param payload The associated payload of the event
+     * @param startNanos {@link System#nanoTime()} when the event entered the dispatcher
+     * @param eventTime Wall-clock time at which the event entered the dispatcher
+     */
+    private void mapAndSendEvent(@NonNull Batch.EventDispatcher.Type type,
+                                 @NonNull Batch.EventDispatcher.Payload payload,
+                                 long startNanos,
+                                 long eventTime) {
+        if (rejectsTrackingId(payload.getTrackingId(), true)) {
+            return;
+        }
+        int channels = getEnabledChannels(type);
+        if (channels == 0) {
+            return;
+        }
+        boolean sendOnSiteAds = (channels & PianoEventFilter.Channel.ON_SITE_ADS.mask) != 0;
+        boolean sendCustom = (channels & PianoEventFilter.Channel.CUSTOM.mask) != 0;
+        DeferredEventChannel deferred = deferredChannel;
+        boolean defer = deferred != null && deferred.accepts(type);
+        // Don't build anything while the Piano SDK keeps failing
+        if (!defer && !circuitBreaker.allowRequest()) {
+            return;
+        }
+
+        // Resolve attribution once for every event built from this Batch event
+        String campaign = getCampaign(payload);
+        String medium = getMedium(payload, type);
+        String source = getSource(payload);
+        String content = sendCustom || defer ? getContent(payload) : null;
+        String trackingId = payload.getTrackingId();
+        String webViewAnalyticsId = type.isMessagingEvent() ? payload.getWebViewAnalyticsID() : null;
+        ShadowAttribution shadow = shadowAttribution;
+        if (shadow != null) {
+            shadow.offer(type, payload);
+        }
+
+        MainThreadWatchdog watchdog = mainThreadWatchdog;
+        if (defer) {
+            long resolvedNanos = System.nanoTime();
+            // Channels are evaluated again when the deferred events are replayed
+            deferred.defer(type, campaign, medium, source, content, trackingId, webViewAnalyticsId, eventTime);
+            if (watchdog != null) {
+                watchdog.check(type, payload, startNanos, resolvedNanos, System.nanoTime());
+            }
+            return;
+        }
+
+        List<MappedPianoEvent> events = new ArrayList<>(2);
+        mapEvents(events, type, sendOnSiteAds, sendCustom, campaign, medium, source, content, trackingId, webViewAnalyticsId, eventTime);
+        long resolvedNanos = System.nanoTime();
+        latencyHistogram.record(type, resolvedNanos - startNanos);
+        if (events.isEmpty()) {
+            circuitBreaker.release();
+            return;
+        }
+        try {
+            send(events);
+        } catch (RuntimeException e) {
+            circuitBreaker.onFailure(e);
+            return;
+        } finally {
+            if (watchdog != null) {
+                watchdog.check(type, payload, startNanos, resolvedNanos, System.nanoTime());
+            }
+        }
+        circuitBreaker.onSuccess();
+
+        recordDispatch(type, campaign, medium, source,
+                sendOnSiteAds ? getOnSiteAdsEventName(type) : null,
+                sendCustom ? getPianoEventName(type) : null,
+                startNanos);
+    }
+
+    /**
+     * Dispatch a batch of Batch events at once, eg: when replaying events from an offline store.
+     * <p>
+     * Events sharing the same deeplink, custom values and tracking id have their attribution
+     * resolved once, and every Piano event is handed to the SDK in a single call, in order.
+     * Each event is captured, offered to the shadow attribution, timestamped and recorded in the
+     * flight recorder like with {@link #dispatchEvent}, but:
+     * <ul>
+     *     <li>Deferred delivery does not apply: the events are sent right away.</li>
+     *     <li>The main thread watchdog and the adaptive load shedder are not fed: the cost of a
+     *     bulk send is not the cost of a single Batch callback. Shed event types are still dropped.</li>
+     * </ul>
+     *
+     * @param entries Batch events, in order
+     * @return The number of Piano events sent
+     */
+    public int dispatchEvents(@NonNull List<BatchEventEntry> entries) {
+        if (entries.isEmpty() || !circuitBreaker.allowRequest()) {
+            return 0;
+        }
+        ShadowAttribution shadow = shadowAttribution;
+        Map<String, ResolvedAttribution> resolved = new HashMap<>();
+        StringBuilder key = new StringBuilder();
+        List<MappedPianoEvent> events = new ArrayList<>(entries.size() * 2);
+        // What to record for each entry once the events are sent, entries without events have no attribution
+        ResolvedAttribution[] attributions = new ResolvedAttribution[entries.size()];
+        int[] sentChannels = new int[entries.size()];
+        long[] startNanos = new long[entries.size()];
+        for (int i = 0; i < entries.size(); i++) {
+            startNanos[i] = System.nanoTime();
+            long eventTime = System.currentTimeMillis();
+            BatchEventEntry entry = entries.get(i);
+            Batch.EventDispatcher.Type type = entry.getType();
+            Batch.EventDispatcher.Payload payload = entry.getPayload();
+            captureEvent(type, payload);
+            String trackingId = payload.getTrackingId();
+            if (rejectsTrackingId(trackingId, true)) {
+                continue;
+            }
+            int channels = getEnabledChannels(type);
+            if (channels == 0) {
+                continue;
+            }
+            boolean sendCustom = (channels & PianoEventFilter.Channel.CUSTOM.mask) != 0;
+
+            String attributionKey = getAttributionKey(key, type, payload);
+            ResolvedAttribution attribution = resolved.get(attributionKey);
+            if (attribution == null) {
+                attribution = new ResolvedAttribution(getCampaign(payload), getMedium(payload, type), getSource(payload));
+                resolved.put(attributionKey, attribution);
+            }
+            // Content is only needed by custom events, resolve it the first time one needs it
+            if (sendCustom && !attribution.contentResolved) {
+                attribution.content = getContent(payload);
+                attribution.contentResolved = true;
+            }
+            if (shadow != null) {
+                shadow.offer(type, payload);
+            }
+            int mappedCount = events.size();
+            mapEvents(events, type,
+                    (channels & PianoEventFilter.Channel.ON_SITE_ADS.mask) != 0,
+                    sendCustom,
+                    attribution.campaign, attribution.medium, attribution.source, sendCustom ? attribution.content : null,
+                    trackingId, type.isMessagingEvent() ? payload.getWebViewAnalyticsID() : null, eventTime);
+            latencyHistogram.record(type, System.nanoTime() - startNanos[i]);
+            if (events.size() > mappedCount) {
+                attributions[i] = attribution;
+                sentChannels[i] = channels;
+            }
+        }
+        if (events.isEmpty()) {
+            circuitBreaker.release();
+            return 0;
+        }
+        try {
+            send(events);
+        } catch (RuntimeException e) {
+            circuitBreaker.onFailure(e);
+            return 0;
+        }
+        circuitBreaker.onSuccess();
+
+        for (int i = 0; i < entries.size(); i++) {
+            ResolvedAttribution attribution = attributions[i];
+            if (attribution == null) {
+                continue;
+            }
+            Batch.EventDispatcher.Type type = entries.get(i).getType();
+            recordDispatch(type, attribution.campaign, attribution.medium, attribution.source,
+                    (sentChannels[i] & PianoEventFilter.Channel.ON_SITE_ADS.mask) != 0 ? getOnSiteAdsEventName(type) : null,
+                    (sentChannels[i] & PianoEventFilter.Channel.CUSTOM.mask) != 0 ? getPianoEventName(type) : null,
+                    startNanos[i]);
+        }
+        return events.size();
+    }
+
+    /**
+     * Build a key identifying everything the attribution of a Batch event is resolved from
+     *
+     * @param key Reused builder, holding the key afterwards
+     * @param type Batch event type
+     * @param payload Batch event payload
+     * @return The key
+     */
+    @NonNull
+    private String getAttributionKey(@NonNull StringBuilder key,
+                                     @NonNull Batch.EventDispatcher.Type type,
+                                     @NonNull Batch.EventDispatcher.Payload payload) {
+        key.setLength(0);
+        // The default medium depends on the kind of event
+        key.append(type.isNotificationEvent() ? 'n' : 'm');
+        appendKeyPart(key, payload.getTrackingId());
+        appendKeyPart(key, payload.getDeeplink());
+        for (String attributionKey : ATTRIBUTION_KEYS) {
+            appendKeyPart(key, payload.getCustomValue(attributionKey));
+        }
+        return key.toString();
+    }
+
+    private static void appendKeyPart(@NonNull StringBuilder key, @Nullable String part) {
+        if (part == null) {
+            key.append('\1');
+        } else {
+            key.append('\0').append(part);
+        }
+    }
+
+    /**
+     * Map the Piano events of an already resolved Batch event
+     *
+     * @param events List the mapped events are added to
+     * @param type Batch event type
+     * @param sendOnSiteAds Whether an On-site Ads event should be mapped
+     * @param sendCustom Whether a custom event should be mapped
+     * @param campaign Resolved campaign
+     * @param medium Resolved medium
+     * @param source Resolved source
+     * @param content Resolved content
+     * @param trackingId Batch tracking id
+     * @param webViewAnalyticsId Batch webview analytics id
+     * @param eventTime Wall-clock time at which the Batch event happened
+     */
+    void mapEvents(@NonNull List<MappedPianoEvent> events,
+                   @NonNull Batch.EventDispatcher.Type type,
+                   boolean sendOnSiteAds,
+                   boolean sendCustom,
+                   @NonNull String campaign,
+                   @NonNull String medium,
+                   @NonNull String source,
+                   @Nullable String content,
+                   @Nullable String trackingId,
+                   @Nullable String webViewAnalyticsId,
+                   long eventTime) {
+        boolean hasEventTime = eventTimePropertyEnabled;
+        PianoDataModel.Binding binding = dataModelBinding;
+        PianoContextProperties contextBlock = binding != null ? binding.contextProperties : contextProperties;
+        PianoDataModel.Keys keys = binding != null ? binding.model.keys : PianoDataModel.Keys.DEFAULT;
+        if (sendOnSiteAds) {
+            String onSiteAdsEventName = getOnSiteAdsEventName(type);
+            if (onSiteAdsEventName != null) {
+                // The data model only applies to custom events
+                events.add(applyBudget(MappedPianoEvent.onSiteAds(type, onSiteAdsEventName, campaign, medium, source,
+                        eventTime, hasEventTime, contextProperties, PianoDataModel.Keys.DEFAULT)));
+            }
+        }
+        if (sendCustom) {
+            String name = binding != null ? binding.eventNames[type.ordinal()] : getPianoEventName(type);
+            if (name == null) {
+                binding.model.onEventDropped(type);
+                return;
+            }
+            if (dropsBlankValues()) {
+                content = blankToNull(content);
+                trackingId = blankToNull(trackingId);
+                webViewAnalyticsId = blankToNull(webViewAnalyticsId);
+            }
+            MappedPianoEvent event = MappedPianoEvent.custom(type, name, campaign, medium, source,
+                    content, trackingId, webViewAnalyticsId, eventTime, hasEventTime, contextBlock, keys);
+            if (binding != null) {
+                binding.model.onPropertiesDropped(event.getUndeclaredPropertyCount()
+                        + binding.droppedContextPropertyCount);
+            }
+            events.add(applyBudget(event));
+        }
+    }
+
+    /**
+     * Map the On-site Ads event of a Batch event, whatever the configuration
+     *
+     * @param type Batch event type
+     * @param payload Batch event payload
+     * @return The mapped event, or null if this type has no On-site Ads equivalent
+     */
+    @Nullable
+    MappedPianoEvent mapOnSiteAdsEvent(@NonNull Batch.EventDispatcher.Type type,
+                                       @NonNull Batch.EventDispatcher.Payload payload) {
+        String onSiteAdsEventName = getOnSiteAdsEventName(type);
+        if (onSiteAdsEventName == null) {
+            return null;
+        }
+        return applyBudget(MappedPianoEvent.onSiteAds(type, onSiteAdsEventName,
+                getCampaign(payload), getMedium(payload, type), getSource(payload),
+                System.currentTimeMillis(), eventTimePropertyEnabled,
+                contextProperties, PianoDataModel.Keys.DEFAULT));
+    }
+
+    /**
+     * Map the custom event of a Batch event, whatever the configuration
+     * <p>
+     * Renames and undeclared properties of the Piano Data Model are applied, but the event
+     * itself is mapped even if the data model drops it.
+     *
+     * @param type Batch event type
+     * @param payload Batch event payload
+     * @return The mapped event
+     */
+    @NonNull
+    MappedPianoEvent mapCustomEvent(@NonNull Batch.EventDispatcher.Type type,
+                                    @NonNull Batch.EventDispatcher.Payload payload) {
+        PianoDataModel.Binding binding = dataModelBinding;
+        String name = binding != null ? binding.eventNames[type.ordinal()] : null;
+        String content = getContent(payload);
+        String trackingId = payload.getTrackingId();
+        String webViewAnalyticsId = payload.getWebViewAnalyticsID();
+        if (dropsBlankValues()) {
+            content = blankToNull(content);
+            trackingId = blankToNull(trackingId);
+            webViewAnalyticsId = blankToNull(webViewAnalyticsId);
+        }
+        return applyBudget(MappedPianoEvent.custom(type, name != null ? name : getPianoEventName(type),
+                getCampaign(payload), getMedium(payload, type), getSource(payload),
+                content, trackingId, webViewAnalyticsId,
+                System.currentTimeMillis(), eventTimePropertyEnabled,
+                binding != null ? binding.contextProperties : contextProperties,
+                binding != null ? binding.model.keys : PianoDataModel.Keys.DEFAULT));
+    }
+
+    /**
+     * Whether blank content, tracking id and webview analytics id values are dropped
+     * <p>
+     * Empty values are always dropped, override to also drop values made only of whitespaces.
+     *
+     * @return True if blank values should not be sent
+     */
+    protected boolean dropsBlankValues() {
+        return false;
+    }
+
+    @Nullable
+    private static String blankToNull(@Nullable String value) {
+        if (value == null) {
+            return null;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            if (!Character.isWhitespace(value.charAt(i)) && !Character.isSpaceChar(value.charAt(i))) {
+                return value;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Enforce the payload budget on a mapped event, if enabled
+     *
+     * @param event The mapped event
+     * @return The event, truncated if needed
+     */
+    @NonNull
+    private MappedPianoEvent applyBudget(@NonNull MappedPianoEvent event) {
+        PianoPayloadBudget budget = payloadBudget;
+        return budget != null ? budget.apply(event) : event;
+    }
+
+    /**
+     * Lower mapped events to the Piano SDK events and send them.
+     *
+     * @param events Events mapped from a single Batch event, or from a whole buffer, in order
+     */
+    protected abstract void sendEvents(@NonNull List<MappedPianoEvent> events);
+
+    /**
+     * Called with the mapped events right before they are handed to the sink or the Piano SDK.
+     * <p>
+     * Called whatever the outcome of the send, must not throw.
+     *
+     * @param events Events about to be sent, in order
+     */
+    protected void onEventsMapped(@NonNull List<MappedPianoEvent> events) {
+    }
+
+    /**
+     * Send mapped events to the configured sink, or to the Piano SDK if there is none.
+     */
+    private void send(@NonNull List<MappedPianoEvent> events) {
+        onEventsMapped(events);
+        PianoEventSink sink = eventSink;
+        if (sink == null) {
+            sendEvents(events);
+            return;
+        }
+        List<BatchPianoEvent> lowered = new ArrayList<>(events.size());
+        for (MappedPianoEvent event : events) {
+            lowered.add(event.toBatchPianoEvent());
+        }
+        sink.send(lowered);
+    }
+
+    /**
+     * Send mapped events through this dispatcher's circuit breaker
+     *
+     * @return True if the events have been handed to the sink or the Piano SDK
+     */
+    boolean deliverEvents(@NonNull List<MappedPianoEvent> events) {
+        if (!circuitBreaker.allowRequest()) {
+            return false;
+        }
+        try {
+            send(events);
+        } catch (RuntimeException e) {
+            circuitBreaker.onFailure(e);
+            return false;
+        }
+        circuitBreaker.onSuccess();
+        return true;
+    }
+
+    /**
+     * Resolve the attribution of a Batch event and append it to a compact buffer,
+     * to be sent later with {@link #sendBuffered(CompactEventBuffer)}.
+     *
+     * @param buffer The buffer holding pending events
+     * @param type Batch event type
+     * @param payload Batch event payload
+     */
+    public void bufferEvent(@NonNull CompactEventBuffer buffer,
+                            @NonNull Batch.EventDispatcher.Type type,
+                            @NonNull Batch.EventDispatcher.Payload payload) {
+        if (rejectsTrackingId(payload.getTrackingId(), true) || getEnabledChannels(type) == 0) {
+            return;
+        }
+        buffer.append(type,
+                getCampaign(payload),
+                getMedium(payload, type),
+                getSource(payload),
+                getContent(payload),
+                payload.getTrackingId(),
+                type.isMessagingEvent() ? payload.getWebViewAnalyticsID() : null,
+                System.currentTimeMillis());
+    }
+
+    /**
+     * Build the Piano events of every event pending in a compact buffer and send them
+     * in as few SDK calls as possible.
+     * <p>
+     * The buffer is only emptied once the events have been sent: they stay in it while
+     * the circuit breaker is open or if the send fails. The buffer is locked meanwhile.
+     *
+     * @param buffer The buffer holding pending events
+     */
+    public void sendBuffered(@NonNull CompactEventBuffer buffer) {
+        synchronized (buffer) {
+            sendBufferedLocked(buffer);
+        }
+    }
+
+    private void sendBufferedLocked(@NonNull CompactEventBuffer buffer) {
+        if (buffer.size() == 0 || !circuitBreaker.allowRequest()) {
+            return;
+        }
+        final List<MappedPianoEvent> events = new ArrayList<>(buffer.size() * 2);
+        // The dispatch latency histogram is not fed here: the age of buffered events is not a dispatch cost
+        buffer.forEach((type, campaign, medium, source, content, trackingId, webViewAnalyticsId, timestamp) -> {
+            if (campaign == null || medium == null || source == null) {
+                return;
+            }
+            // Rules may have changed since the event has been buffered, but the event has
+            // already been counted by the filter, gate and shedder when it was dispatched
+            if (rejectsTrackingId(trackingId, false)) {
+                return;
+            }
+            int channels = getEnabledChannels(type, false);
+            mapEvents(events, type,
+                    (channels & PianoEventFilter.Channel.ON_SITE_ADS.mask) != 0,
+                    (channels & PianoEventFilter.Channel.CUSTOM.mask) != 0,
+                    campaign, medium, source, content, trackingId, webViewAnalyticsId, timestamp);
+        });
+        if (events.isEmpty()) {
+            circuitBreaker.release();
+            buffer.clear();
+            return;
+        }
+        try {
+            send(events);
+        } catch (RuntimeException e) {
+            circuitBreaker.onFailure(e);
+            return;
+        }
+        circuitBreaker.onSuccess();
+        buffer.clear();
+    }
+
+    /**
+     * Defer the delivery of low-priority events to a WorkManager job.
+     * <p>
+     * Events of the given types are persisted and replayed in bulk once the battery is not low
+     * and the network is available, instead of being sent right away.
+     * Only one dispatcher per process is supported: the last one enabling deferred delivery
+     * replays every deferred event.
+     * Note: requires `androidx.work:work-runtime` in your app.
+     *
+     * @param context Application context
+     * @param types Batch event types to defer, usually {@link #DEFAULT_DEFERRED_TYPES}
+     * @param delayMinutes Delay before replaying deferred events
+     * @return The deferred channel
+     */
+    @NonNull
+    public DeferredEventChannel enableDeferredDelivery(@NonNull Context context,
+                                                       @NonNull Set<Batch.EventDispatcher.Type> types,
+                                                       long delayMinutes) {
+        DeferredEventChannel channel = new DeferredEventChannel(context, types, delayMinutes);
+        AbstractPianoDispatcher previous = DeferredEventChannel.activeDispatcher;
+        if (previous != null && previous != this) {
+            Log.w("Batch", "PianoDispatcher - Deferred delivery is already enabled on another dispatcher, its deferred events will be replayed by this one");
+        }
+        DeferredEventChannel.activeDispatcher = this;
+        deferredChannel = channel;
+        return channel;
+    }
+
+    /**
+     * Send every event as soon as it is dispatched (default).
+     * Already deferred events are still replayed by the pending job.
+     */
+    public void disableDeferredDelivery() {
+        deferredChannel = null;
+    }
+
+    /**
+     * Get the deferred delivery channel
+     *
+     * @return The channel or null if deferred delivery is disabled
+     */
+    @Nullable
+    public DeferredEventChannel getDeferredChannel() {
+        return deferredChannel;
+    }
+
+    /**
+     * Send the mapped events to a sink instead of the Piano SDK.
+     *
+     * @param sink The sink, or null to send to the Piano SDK again (default)
+     */
+    public void setEventSink(@Nullable PianoEventSink sink) {
+        eventSink = sink;
+    }
+
+    /**
+     * Get the sink receiving the mapped events
+     *
+     * @return The sink or null if events are sent to the Piano SDK
+     */
+    @Nullable
+    public PianoEventSink getEventSink() {
+        return eventSink;
+    }
+
+    /**
+     * Report the Batch events dispatched on the main thread for longer than a budget.
+     *
+     * @param budgetMicros Maximum time a dispatch may spend on the main thread, in microseconds,
+     *                     usually {@link MainThreadWatchdog#DEFAULT_BUDGET_MICROS}
+     * @return The watchdog holding the violation report
+     */
+    @NonNull
+    public MainThreadWatchdog enableMainThreadWatchdog(long budgetMicros) {
+        MainThreadWatchdog watchdog = new MainThreadWatchdog(budgetMicros, MainThreadWatchdog.DEFAULT_REPORT_SIZE);
+        mainThreadWatchdog = watchdog;
+        return watchdog;
+    }
+
+    /**
+     * Stop reporting slow dispatches on the main thread (default)
+     */
+    public void disableMainThreadWatchdog() {
+        mainThreadWatchdog = null;
+    }
+
+    /**
+     * Get the main thread watchdog
+     *
+     * @return The watchdog or null if disabled
+     */
+    @Nullable
+    public MainThreadWatchdog getMainThreadWatchdog() {
+        return mainThreadWatchdog;
+    }
+
+    /**
+     * Limit the size of the Piano events built from deeplinks and custom payloads.
+     *
+     * @param maxPropertyBytes Maximum UTF-8 size of an attribution value,
+     *                         usually {@link PianoPayloadBudget#DEFAULT_MAX_PROPERTY_BYTES}
+     * @param maxEventBytes Maximum UTF-8 size of an event, usually {@link PianoPayloadBudget#DEFAULT_MAX_EVENT_BYTES}
+     * @return The budget holding the size histogram and truncation counts
+     */
+    @NonNull
+    public PianoPayloadBudget enablePayloadBudget(int maxPropertyBytes, int maxEventBytes) {
+        PianoPayloadBudget budget = new PianoPayloadBudget(maxPropertyBytes, maxEventBytes);
+        payloadBudget = budget;
+        return budget;
+    }
+
+    /**
+     * Send attribution values whatever their size (default)
+     */
+    public void disablePayloadBudget() {
+        payloadBudget = null;
+    }
+
+    /**
+     * Get the payload budget
+     *
+     * @return The budget or null if disabled
+     */
+    @Nullable
+    public PianoPayloadBudget getPayloadBudget() {
+        return payloadBudget;
+    }
+
+    /**
+     * Skip the events Piano would drop because of the visitor privacy mode,
+     * before resolving their attribution.
+     * <p>
+     * The privacy mode is cached: call {@link PianoConsentGate#refresh()} when your app changes it.
+     *
+     * @return The consent gate holding the skipped event counts
+     */
+    @NonNull
+    public PianoConsentGate enableConsentGate() {
+        PianoConsentGate gate = new PianoConsentGate(createPrivacyModeReader());
+        consentGate = gate;
+        return gate;
+    }
+
+    /**
+     * Build every event whatever the privacy mode (default)
+     */
+    public void disableConsentGate() {
+        consentGate = null;
+    }
+
+    /**
+     * Get the consent gate
+     *
+     * @return The gate or null if disabled
+     */
+    @Nullable
+    public PianoConsentGate getConsentGate() {
+        return consentGate;
+    }
+
+    /**
+     * Create a reader of the privacy mode of the Piano SDK used by this dispatcher
+     *
+     * @return The reader, or null if the privacy mode can't be read
+     */
+    @Nullable
+    protected PianoConsentGate.PrivacyModeReader createPrivacyModeReader() {
+        return null;
+    }
+
+    /**
+     * Append static context properties to every event.
+     * <p>
+     * The block is shared by all events, build it once with {@link PianoContextProperties#collect}.
+     * Note: the properties must be declared in your Piano Data Model.
+     *
+     * @param properties The context properties, or null to stop sending them (default)
+     */
+    public synchronized void setContextProperties(@Nullable PianoContextProperties properties) {
+        contextProperties = properties;
+        PianoDataModel.Binding binding = dataModelBinding;
+        if (binding != null) {
+            dataModelBinding = binding.model.bind(this, properties);
+        }
+    }
+
+    /**
+     * Get the static context properties appended to every event
+     *
+     * @return The context properties or null
+     */
+    @Nullable
+    public PianoContextProperties getContextProperties() {
+        return contextProperties;
+    }
+
+    /**
+     * Validate the custom events against a Piano Data Model before sending them.
+     * <p>
+     * Undeclared custom events and properties are dropped locally instead of being rejected
+     * by Piano, or renamed when the data model maps them to declared names.
+     * Event names are resolved once here, so this adds no lookup when dispatching.
+     * On-site Ads events are standard Piano events and are not validated.
+     *
+     * @param dataModel The compiled data model, or null to send every event (default)
+     */
+    public synchronized void setDataModel(@Nullable PianoDataModel dataModel) {
+        dataModelBinding = dataModel != null ? dataModel.bind(this, contextProperties) : null;
+    }
+
+    /**
+     * Get the Piano Data Model validating the custom events
+     *
+     * @return The data model, or null if disabled
+     */
+    @Nullable
+    public PianoDataModel getDataModel() {
+        PianoDataModel.Binding binding = dataModelBinding;
+        return binding != null ? binding.model : null;
+    }
+
+    /**
+     * Dispatch events on several worker threads instead of the caller's thread.
+     * <p>
+     * Events are partitioned by tracking id, so the events of a campaign keep their order
+     * while different campaigns are dispatched in parallel. Events are dropped when the queue
+     * of their worker is full. Calling this method again replaces the previous workers: the new
+     * ones start once the previous ones have drained their queues.
+     *
+     * @param shardCount Number of worker threads, usually the number of cores
+     * @param queueCapacity Capacity of each worker queue, usually {@link ShardedDispatchExecutor#DEFAULT_QUEUE_CAPACITY}
+     * @return The executor holding the queue metrics
+     */
+    @NonNull
+    public synchronized ShardedDispatchExecutor enableShardedDispatch(int shardCount, int queueCapacity) {
+        ShardedDispatchExecutor previous = shardedExecutor;
+        if (previous == null) {
+            previous = drainingExecutor;
+        }
+        ShardedDispatchExecutor executor = new ShardedDispatchExecutor(this::dispatchEventNow, shardCount, queueCapacity, previous);
+        shardedExecutor = executor;
+        drainingExecutor = null;
+        if (previous != null) {
+            previous.shutdown(executor);
+        }
+        return executor;
+    }
+
+    /**
+     * Dispatch events on the caller's thread again (default).
+     * Queued events are still dispatched, new events wait for them to keep their order.
+     */
+    public synchronized void disableShardedDispatch() {
+        ShardedDispatchExecutor previous = shardedExecutor;
+        if (previous == null) {
+            return;
+        }
+        drainingExecutor = previous;
+        shardedExecutor = null;
+        previous.shutdown();
+    }
+
+    /**
+     * Get the sharded dispatch executor
+     *
+     * @return The executor or null if events are dispatched on the caller's thread
+     */
+    @Nullable
+    public ShardedDispatchExecutor getShardedExecutor() {
+        return shardedExecutor;
+    }
+
+    /**
+     * Degrade analytics fidelity when dispatching becomes expensive, see {@link AdaptiveLoadShedder}.
+     *
+     * @param highCostMicros Average dispatch cost above which fidelity steps down,
+     *                       usually {@link AdaptiveLoadShedder#DEFAULT_HIGH_COST_MICROS}
+     * @param lowCostMicros Average dispatch cost under which fidelity steps back up,
+     *                      usually {@link AdaptiveLoadShedder#DEFAULT_LOW_COST_MICROS}
+     * @param highBacklog Sharded dispatch backlog above which fidelity steps down
+     * @param lowBacklog Sharded dispatch backlog under which fidelity steps back up
+     * @return The controller holding the level and the shed event counts
+     */
+    @NonNull
+    public AdaptiveLoadShedder enableLoadShedding(long highCostMicros, long lowCostMicros, int highBacklog, int lowBacklog) {
+        AdaptiveLoadShedder shedder = new AdaptiveLoadShedder(highCostMicros, lowCostMicros, highBacklog, lowBacklog);
+        loadShedder = shedder;
+        return shedder;
+    }
+
+    /**
+     * Send every event whatever the load (default)
+     */
+    public void disableLoadShedding() {
+        loadShedder = null;
+    }
+
+    /**
+     * Get the load shedding controller
+     *
+     * @return The controller or null if disabled
+     */
+    @Nullable
+    public AdaptiveLoadShedder getLoadShedder() {
+        return loadShedder;
+    }
+
+    /**
+     * Compare a candidate attribution engine with the current one on a sample of live events.
+     * <p>
+     * Both engines run on a background thread, and the current engine's attribution is always
+     * the one sent. Calling this method again replaces the previous shadow mode.
+     *
+     * @param candidate The engine to evaluate
+     * @param sampleRate Fraction of the events compared, between 0 and 1
+     * @return The shadow mode holding the mismatch report and timings
+     */
+    @NonNull
+    public ShadowAttribution enableShadowAttribution(@NonNull PianoAttributionEngine candidate, double sampleRate) {
+        ShadowAttribution shadow = new ShadowAttribution(this::resolveAttribution, candidate,
+                sampleRate, ShadowAttribution.DEFAULT_REPORT_SIZE);
+        ShadowAttribution previous = shadowAttribution;
+        shadowAttribution = shadow;
+        if (previous != null) {
+            previous.shutdown();
+        }
+        return shadow;
+    }
+
+    /**
+     * Stop comparing attribution engines (default)
+     */
+    public void disableShadowAttribution() {
+        ShadowAttribution previous = shadowAttribution;
+        shadowAttribution = null;
+        if (previous != null) {
+            previous.shutdown();
+        }
+    }
+
+    /**
+     * Get the shadow attribution mode
+     *
+     * @return The shadow mode or null if disabled
+     */
+    @Nullable
+    public ShadowAttribution getShadowAttribution() {
+        return shadowAttribution;
+    }
+
+    /**
+     * Resolve the attribution of a Batch event with this dispatcher's engine
+     *
+     * @param type Batch event type
+     * @param payload Batch event payload
+     * @return The attribution
+     */
+    @NonNull
+    PianoAttribution resolveAttribution(@NonNull Batch.EventDispatcher.Type type,
+                                        @NonNull Batch.EventDispatcher.Payload payload) {
+        return new PianoAttribution(getCampaign(payload), getMedium(payload, type), getSource(payload), getContent(payload));
+    }
+
+    /**
+     * Get the circuit breaker protecting the Piano SDK sends.
+     * <p>
+     * Use it to tune thresholds, read failure counts or listen to state transitions.
+     *
+     * @return The circuit breaker
+     */
+    @NonNull
+    public PianoCircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    /**
+     * Get the analytics name of this dispatcher
+     *
+     * @return The name
+     */
+    @Override
+    public String getName() {
+        return DISPATCHER_NAME;
+    }
+
+    /**
+     * Get the analytics version of this dispatcher
+     *
+     * @return The version
+     */
+    @Override
+    public int getVersion() {
+        return DISPATCHER_VERSION;
+    }
+
+
+    /**
+     * Get the campaign label to send at Piano.
+     * <p>
+     * First, check for an "at_campaign" tag in the custom payload, or in the deeplink.
+     * If not, check for an "utm_campaign" tag in the custom payload, or in the deeplink.
+     * If not, check if there is a TrackingID attached.
+     * If not, use {@link AbstractPianoDispatcher#BATCH_DEFAULT_CAMPAIGN}
+     *
+     * @param payload Batch event payload
+     * @return The campaign label.
+     */
+    @NonNull
+    @VisibleForTesting
+    String getCampaign(@NonNull Batch.EventDispatcher.Payload payload) {
+        String campaign = getTagFromPayload(payload, AT_CAMPAIGN);
+        if (campaign != null && !campaign.isEmpty()) {
+            return campaign;
+        }
+        campaign = getTagFromPayload(payload, UTM_CAMPAIGN);
+        if (isUTMTrackingEnabled && campaign != null && !campaign.isEmpty()) {
+            return campaign;
+        }
+        campaign = payload.getTrackingId();
+        if (campaign != null && !campaign.isEmpty()) {
+            return campaign;
+        }
+        return BATCH_DEFAULT_CAMPAIGN;
+    }
+
+    /**
+     * Get the medium
+     * <p>
+     * Check for at_medium or utm_medium tags
+     * If not found return "push" or "in-app" according to the batch event type
+     *
+     * @param payload Batch event payload
+     * @param type Batch event type
+     * @return The medium
+     */
+    @NonNull
+    protected String getMedium(@NonNull Batch.EventDispatcher.Payload payload, @NonNull Batch.EventDispatcher.Type type) {
+        String medium;
+        medium = getTagFromPayload(payload, AT_MEDIUM);
+        if (medium != null && !medium.isEmpty()) {
+            return medium;
+        }
+        medium = getTagFromPayload(payload, UTM_MEDIUM);
+        if (isUTMTrackingEnabled && medium != null && !medium.isEmpty()) {
+            return medium;
+        }
+        if (type.isNotificationEvent()) {
+            medium = BATCH_FORMAT_PUSH;
+        } else {
+            medium = BATCH_FORMAT_IN_APP;
+        }
+        return medium;
+    }
+
+    /**
+     * Get the source
+     * <p>
+     * Check for utm_source tags
+     * If not found return "Batch"
+     *
+     * @param payload Batch event payload
+     * @return The source
+     */
+    @NonNull
+    protected String getSource(@NonNull Batch.EventDispatcher.Payload payload) {
+        String source = getTagFromPayload(payload, UTM_SOURCE);
+        if (isUTMTrackingEnabled && source != null && !source.isEmpty()) {
+            return source;
+        }
+        return BATCH_SRC;
+    }
+
+    /**
+     * Get the content
+     * <p>
+     * Check for utm_content tag
+     * If not found return null
+     *
+     * @param payload Batch event payload
+     * @return The content
+     */
+    @Nullable
+    protected String getContent(@NonNull Batch.EventDispatcher.Payload payload) {
+        String content = getTagFromPayload(payload, UTM_CONTENT);
+        if (isUTMTrackingEnabled && content != null && !content.isEmpty()) {
+            return content;
+        }
+        return null;
+    }
+
+    /**
+     * Get the corresponding Piano event name.
+     *
+     * @param type Batch event type
+     * @return The corresponding event name for Piano
+     */
+    @NonNull
+    protected String getPianoEventName(Batch.EventDispatcher.Type type) {
+        switch (type) {
+            case NOTIFICATION_DISPLAY:
+                return NOTIFICATION_DISPLAY_NAME;
+            case NOTIFICATION_OPEN:
+                return NOTIFICATION_OPEN_NAME;
+            case NOTIFICATION_DISMISS:
+                return NOTIFICATION_DISMISS_NAME;
+            case MESSAGING_SHOW:
+                return MESSAGING_SHOW_NAME;
+            case MESSAGING_CLOSE:
+                return MESSAGING_CLOSE_NAME;
+            case MESSAGING_AUTO_CLOSE:
+                return MESSAGING_AUTO_CLOSE_NAME;
+            case MESSAGING_CLOSE_ERROR:
+                return MESSAGING_CLOSE_ERROR_NAME;
+            case MESSAGING_CLICK:
+                return MESSAGING_CLICK_NAME;
+            case MESSAGING_WEBVIEW_CLICK:
+                return MESSAGING_WEBVIEW_CLICK_NAME;
+        }
+        return UNKNOWN_EVENT_NAME;
+    }
+
+    /**
+     * Get the corresponding Piano On-site Ads event name.
+     *
+     * @param type Batch event type
+     * @return The On-site Ads event name or null if this type is not an impression or a click
+     */
+    @Nullable
+    protected String getOnSiteAdsEventName(Batch.EventDispatcher.Type type) {
+        if (isImpression(type)) {
+            return EVENT_IMPRESSION;
+        } else if (isClick(type)) {
+            return EVENT_CLICK;
+        }
+        return null;
+    }
+
+    /**
+     * Record a dispatch into the flight recorder, if enabled
+     *
+     * @param type Batch event type
+     * @param campaign Resolved campaign
+     * @param medium Resolved medium
+     * @param source Resolved source
+     * @param onSiteAdsEventName Name of the On-site Ads event sent, if any
+     * @param customEventName Name of the custom event sent, if any
+     * @param startNanos {@link System#nanoTime()} when the dispatch started
+     */
+    protected void recordDispatch(@NonNull Batch.EventDispatcher.Type type,
+                                  @Nullable String campaign,
+                                  @Nullable String medium,
+                                  @Nullable String source,
+                                  @Nullable String onSiteAdsEventName,
+                                  @Nullable String customEventName,
+                                  long startNanos) {
+        DispatchFlightRecorder recorder = flightRecorder;
+        if (recorder != null) {
+            recorder.record(type, campaign, medium, source, onSiteAdsEventName, customEventName,
+                    System.currentTimeMillis(), System.nanoTime() - startNanos);
+        }
+    }
+
+    /**
+     * Indicate if an event type should be dispatched as On-site Ads
+     *
+     * @param type Batch event type
+     * @return True if this kind of event should be dispatched as On-site Ads.
+     */
+    protected boolean shouldBeDispatchedAsOnSiteAd(Batch.EventDispatcher.Type type) {
+        return isImpression(type) || isClick(type);
+    }
+
+    /**
+     * Whether this kind of Batch event corresponds to a Piano publisher impression event
+     *
+     * @param type Batch event type
+     * @return True if it's an impression
+     */
+    protected boolean isImpression(Batch.EventDispatcher.Type type) {
+        return type.equals(Batch.EventDispatcher.Type.NOTIFICATION_DISPLAY) ||
+                type.equals(Batch.EventDispatcher.Type.MESSAGING_SHOW);
+    }
+
+    /**
+     * Whether this kind of Batch event corresponds to a Piano publisher click event
+     *
+     * @param type Batch event type
+     * @return True if it's a click
+     */
+    protected boolean isClick(Batch.EventDispatcher.Type type) {
+        return type.equals(Batch.EventDispatcher.Type.NOTIFICATION_OPEN) ||
+                type.equals(Batch.EventDispatcher.Type.MESSAGING_CLICK) ||
+                type.equals(Batch.EventDispatcher.Type.MESSAGING_WEBVIEW_CLICK);
+    }
+
+    /**
+     * Simple helper method to get a tag from a Batch event payload.
+     *
+     * @param payload Batch event payload
+     * @param tagName Tag name
+     * @return The tag
+     */
+    @Nullable
+    private String getTagFromPayload(@NonNull Batch.EventDispatcher.Payload payload, @NonNull String tagName) {
+        String tag = getTagFromDeeplink(payload, tagName);
+
+        String tagTmp = payload.getCustomValue(tagName);
+        if (tagTmp != null) {
+            tag = tagTmp;
+        }
+        return tag;
+    }
+
+    /**
+     * Simple helper method to get a tag from a Batch deeplink.
+     *
+     * @param payload Batch event payload
+     * @param tagName Tag name
+     * @return The tag
+     */
+    @Nullable
+    private String getTagFromDeeplink(Batch.EventDispatcher.Payload payload, String tagName) {
+        String tag = null;
+        String deeplink = payload.getDeeplink();
+        if (deeplink != null) {
+            deeplink = deeplink.trim();
+            tagName = tagName.toLowerCase();
+            Uri uri = Uri.parse(deeplink);
+            if (uri.isHierarchical()) {
+                String fragment = uri.getFragment();
+                if (fragment != null && !fragment.isEmpty()) {
+                    Map<String, String> fragments = getFragmentMap(fragment);
+                    String tagTmp = fragments.get(tagName);
+                    if (tagTmp != null) {
+                        tag =  tagTmp;
+                    }
+                }
+                Set<String> keys = uri.getQueryParameterNames();
+                for (String key : keys) {
+                    if (tagName.equalsIgnoreCase(key)) {
+                        return uri.getQueryParameter(key);
+                    }
+                }
+            }
+        }
+        return tag;
+    }
+
+    /**
+     * Simple helper method to get a fragment as a map.
+     *
+     * @param fragment url fragment
+     * @return the map
+     */
+    @NonNull
+    private Map<String, String> getFragmentMap(String fragment) {
+        String[] params = fragment.split("&");
+        Map<String, String> map = new HashMap<>();
+        for (String param : params) {
+            String[] parts = param.split("=");
+            if (parts.length >= 2) {
+                map.put(parts[0].toLowerCase(), parts[1]);
+            }
+        }
+        return map;
+    }
+
+    /**
+     * Attribution shared by the Batch events of a bulk dispatch resolved from the same inputs
+     */
+    private static final class ResolvedAttribution {
+
+        @NonNull
+        final String campaign;
+
+        @NonNull
+        final String medium;
+
+        @NonNull
+        final String source;
+
+        /**
+         * Only valid once {@link #contentResolved} is set, null if the events have no content
+         */
+        @Nullable
+        String content;
+
+        boolean contentResolved;
+
+        ResolvedAttribution(@NonNull String campaign, @NonNull String medium, @NonNull String source) {
+            this.campaign = campaign;
+            this.medium = medium;
+            this.source = source;
+        }
+    }
+}
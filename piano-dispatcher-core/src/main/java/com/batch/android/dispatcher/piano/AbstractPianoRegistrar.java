@@ -0,0 +1,127 @@
+package com.batch.android.dispatcher.piano;
+
+import android.content.Context;
+import android.content.pm.ApplicationInfo;
+import android.content.pm.PackageManager;
+import android.os.Bundle;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.batch.android.eventdispatcher.DispatcherRegistrar;
+
+/**
+ * Base registrar configuring the dispatchers it creates.
+ * <p>
+ * The configuration is read from the class generated at build time if the app has one,
+ * from Android's manifest meta-data otherwise.
+ */
+public abstract class AbstractPianoRegistrar implements DispatcherRegistrar {
+
+    /**
+     * Load the dispatcher configuration
+     *
+     * @param context Application context
+     * @return The generated configuration, or the one read from meta-data
+     */
+    @NonNull
+    protected PianoDispatcherConfiguration loadConfiguration(@NonNull Context context) {
+        PianoDispatcherConfiguration configuration = PianoDispatcherConfiguration.loadGenerated();
+        if (configuration != null) {
+            return configuration;
+        }
+        return PianoDispatcherConfiguration.fromMetaData(getMetaData(context));
+    }
+
+    /**
+     * Apply a configuration to a newly created dispatcher
+     *
+     * @param context Application context
+     * @param dispatcher The dispatcher to configure
+     * @param configuration The configuration to apply
+     */
+    protected void configure(@NonNull Context context,
+                             @NonNull AbstractPianoDispatcher dispatcher,
+                             @NonNull PianoDispatcherConfiguration configuration) {
+        dispatcher.enableBatchCustomEvents(configuration.isCustomEventsEnabled());
+        dispatcher.enableBatchOnSiteAdsEvents(configuration.isOnSiteAdsEventsEnabled());
+        dispatcher.enableUTMTracking(configuration.isUTMTrackingEnabled());
+        String filterRules = configuration.getFilterRules();
+        if (filterRules != null && !filterRules.isEmpty()) {
+            dispatcher.setEventFilter(PianoEventFilter.parse(filterRules));
+        }
+        if (configuration.getFlightRecorderSize() > 0) {
+            dispatcher.enableFlightRecorder(configuration.getFlightRecorderSize());
+        }
+        if (configuration.getMainThreadBudgetMicros() > 0) {
+            dispatcher.enableMainThreadWatchdog(configuration.getMainThreadBudgetMicros());
+        }
+        if (configuration.getMaxPropertyBytes() > 0 || configuration.getMaxEventBytes() > 0) {
+            dispatcher.enablePayloadBudget(
+                    configuration.getMaxPropertyBytes() > 0 ? configuration.getMaxPropertyBytes() : Integer.MAX_VALUE,
+                    configuration.getMaxEventBytes() > 0 ? configuration.getMaxEventBytes() : Integer.MAX_VALUE);
+        }
+        if (configuration.isContextPropertiesEnabled()) {
+            dispatcher.setContextProperties(PianoContextProperties.collect(context, dispatcher).build());
+        }
+        String dataModelAsset = configuration.getDataModelAsset();
+        if (dataModelAsset != null && !dataModelAsset.isEmpty()) {
+            try {
+                dispatcher.setDataModel(PianoDataModel.fromAsset(context, dataModelAsset));
+            } catch (Exception e) {
+                Log.e("Batch", "PianoDispatcher - Could not load the Piano Data Model from asset " + dataModelAsset + ", events will not be validated", e);
+            }
+        }
+        if (configuration.isConsentGateEnabled()) {
+            dispatcher.enableConsentGate();
+        }
+        if (configuration.isLoadSheddingEnabled()) {
+            dispatcher.enableLoadShedding(AdaptiveLoadShedder.DEFAULT_HIGH_COST_MICROS, AdaptiveLoadShedder.DEFAULT_LOW_COST_MICROS,
+                    AdaptiveLoadShedder.DEFAULT_HIGH_BACKLOG, AdaptiveLoadShedder.DEFAULT_LOW_BACKLOG);
+        }
+        if (configuration.getShardCount() > 0) {
+            dispatcher.enableShardedDispatch(configuration.getShardCount(),
+                    configuration.getShardQueueCapacity() > 0 ? configuration.getShardQueueCapacity() : ShardedDispatchExecutor.DEFAULT_QUEUE_CAPACITY);
+        }
+        if (configuration.isDeferredDeliveryEnabled()) {
+            if (isWorkManagerPresent()) {
+                dispatcher.enableDeferredDelivery(context, AbstractPianoDispatcher.DEFAULT_DEFERRED_TYPES, configuration.getDeferredDeliveryDelayMinutes());
+            } else {
+                Log.w("Batch", "PianoDispatcher - Deferred delivery requires androidx.work:work-runtime. Did you add the dependency in your build.gradle?");
+            }
+        }
+    }
+
+    /**
+     * Get the application meta-data from Android's manifest.
+     *
+     * @param context Application context
+     * @return the meta-data or null
+     */
+    @Nullable
+    private Bundle getMetaData(Context context) {
+        try {
+            ApplicationInfo appInfo = context.getPackageManager().getApplicationInfo(context.getPackageName(), PackageManager.GET_META_DATA);
+            return appInfo.metaData;
+        } catch (PackageManager.NameNotFoundException e) {
+            // if we can’t find it in the manifest, just return null
+        } catch (Exception e) {
+            Log.e("Batch", "Error while parsing meta-data info", e);
+        }
+        return null;
+    }
+
+    /**
+     * Check if WorkManager is present.
+     * @return Whether WorkManager is present.
+     */
+    private boolean isWorkManagerPresent() {
+        try {
+            Class.forName("androidx.work.WorkManager");
+            return true;
+        } catch (ClassNotFoundException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,244 @@
+package com.batch.android.dispatcher.piano;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Adaptive controller degrading analytics fidelity under load rather than janking the app.
+ * <p>
+ * It tracks a moving average of the time spent dispatching each Batch event, and the sharded
+ * dispatch backlog. When the cost or the backlog crosses its high threshold, the shedding level
+ * steps up; once both are back under their low thresholds, it steps down:
+ * <ul>
+ *     <li>{@link #LEVEL_NONE}: every event is sent</li>
+ *     <li>{@link #LEVEL_CUSTOM_CLICKS_ONLY}: custom events are only sent for clicks</li>
+ *     <li>{@link #LEVEL_SAMPLE_IMPRESSIONS}: in addition, only one impression out of
+ *     {@link #IMPRESSION_SAMPLING} is sent</li>
+ * </ul>
+ * Level changes are reported to a {@link Listener}, and the events shed at each level are counted.
+ * <p>
+ * Shed events are dropped before their attribution is resolved, except deferred and buffered events:
+ * they are resolved when they are stored, and shed according to the level when they are replayed.
+ * The cost of every dispatch is recorded, including the ones that end up sending nothing.
+ */
+public final class AdaptiveLoadShedder {
+
+    public static final int LEVEL_NONE = 0;
+
+    public static final int LEVEL_CUSTOM_CLICKS_ONLY = 1;
+
+    public static final int LEVEL_SAMPLE_IMPRESSIONS = 2;
+
+    private static final int LEVEL_COUNT = 3;
+
+    /**
+     * One impression out of this number is kept at {@link #LEVEL_SAMPLE_IMPRESSIONS}
+     */
+    public static final int IMPRESSION_SAMPLING = 4;
+
+    /**
+     * Default dispatch cost above which the level steps up
+     */
+    public static final long DEFAULT_HIGH_COST_MICROS = 2000;
+
+    /**
+     * Default dispatch cost under which the level steps down
+     */
+    public static final long DEFAULT_LOW_COST_MICROS = 500;
+
+    /**
+     * Default sharded dispatch backlog above which the level steps up
+     */
+    public static final int DEFAULT_HIGH_BACKLOG = 512;
+
+    /**
+     * Default sharded dispatch backlog under which the level steps down
+     */
+    public static final int DEFAULT_LOW_BACKLOG = 64;
+
+    /**
+     * Number of dispatches between two level evaluations, so that the level does not flap
+     */
+    static final int EVALUATION_INTERVAL = 32;
+
+    /**
+     * Weight of a new sample in the moving average, as a shift: 1/8
+     */
+    private static final int EWMA_SHIFT = 3;
+
+    /**
+     * Listener notified when the shedding level changes, on the dispatching thread
+     */
+    public interface Listener {
+        void onLevelChanged(int previousLevel, int level, long averageCostMicros, int backlog);
+    }
+
+    private final long highCostNanos;
+
+    private final long lowCostNanos;
+
+    private final int highBacklog;
+
+    private final int lowBacklog;
+
+    private volatile int level = LEVEL_NONE;
+
+    /**
+     * Moving average of the dispatch cost, in nanoseconds
+     */
+    @NonNull
+    private final AtomicLong averageCostNanos = new AtomicLong();
+
+    @NonNull
+    private final AtomicLong samples = new AtomicLong();
+
+    @NonNull
+    private final AtomicLong impressions = new AtomicLong();
+
+    /**
+     * Shed Batch events, indexed by level
+     */
+    @NonNull
+    private final AtomicLongArray shedCounts = new AtomicLongArray(LEVEL_COUNT);
+
+    @Nullable
+    private volatile Listener listener;
+
+    /**
+     * Constructor
+     *
+     * @param highCostMicros Average dispatch cost above which the level steps up
+     * @param lowCostMicros Average dispatch cost under which the level may step down
+     * @param highBacklog Sharded dispatch backlog above which the level steps up
+     * @param lowBacklog Sharded dispatch backlog under which the level may step down
+     */
+    public AdaptiveLoadShedder(long highCostMicros, long lowCostMicros, int highBacklog, int lowBacklog) {
+        if (lowCostMicros < 0 || highCostMicros <= lowCostMicros || lowBacklog < 0 || highBacklog <= lowBacklog) {
+            throw new IllegalArgumentException("Thresholds must be positive and high thresholds greater than low ones");
+        }
+        this.highCostNanos = TimeUnit.MICROSECONDS.toNanos(highCostMicros);
+        this.lowCostNanos = TimeUnit.MICROSECONDS.toNanos(lowCostMicros);
+        this.highBacklog = highBacklog;
+        this.lowBacklog = lowBacklog;
+    }
+
+    public void setListener(@Nullable Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Get the current shedding level
+     *
+     * @return One of the LEVEL_ constants
+     */
+    public int getLevel() {
+        return level;
+    }
+
+    /**
+     * Get the moving average of the dispatch cost
+     *
+     * @return The average in microseconds
+     */
+    public long getAverageCostMicros() {
+        return TimeUnit.NANOSECONDS.toMicros(averageCostNanos.get());
+    }
+
+    /**
+     * Get the number of Batch events shed at a level, fully or partially
+     *
+     * @param level One of the LEVEL_ constants
+     * @return The count
+     */
+    public long getShedCount(int level) {
+        return shedCounts.get(level);
+    }
+
+    /**
+     * Restrict the channels of a Batch event according to the current level
+     *
+     * @param channels Channels the event would be sent to
+     * @param click Whether the event is a click
+     * @param impression Whether the event is an impression
+     * @param count Whether a shed event is counted
+     * @return The remaining channels
+     */
+    int filter(int channels, boolean click, boolean impression, boolean count) {
+        int currentLevel = level;
+        if (currentLevel == LEVEL_NONE) {
+            return channels;
+        }
+        int remaining = channels;
+        if (!click) {
+            remaining &= ~PianoEventFilter.Channel.CUSTOM.mask;
+        }
+        if (currentLevel >= LEVEL_SAMPLE_IMPRESSIONS && impression
+                && impressions.getAndIncrement() % IMPRESSION_SAMPLING != 0) {
+            remaining = 0;
+        }
+        if (remaining != channels && count) {
+            shedCounts.incrementAndGet(currentLevel);
+        }
+        return remaining;
+    }
+
+    /**
+     * Record the cost of a dispatch and evaluate the level periodically
+     *
+     * @param costNanos Time spent dispatching a Batch event
+     * @param backlog Number of events waiting to be dispatched
+     */
+    void record(long costNanos, int backlog) {
+        long average;
+        long updated;
+        do {
+            average = averageCostNanos.get();
+            updated = average == 0 ? costNanos : average + ((costNanos - average) >> EWMA_SHIFT);
+        } while (!averageCostNanos.compareAndSet(average, updated));
+        if (samples.incrementAndGet() % EVALUATION_INTERVAL == 0) {
+            evaluate(updated, backlog);
+        }
+    }
+
+    private void evaluate(long average, int backlog) {
+        int previous;
+        int next;
+        synchronized (this) {
+            previous = level;
+            next = previous;
+            if ((average > highCostNanos || backlog > highBacklog) && previous < LEVEL_COUNT - 1) {
+                next = previous + 1;
+            } else if (average < lowCostNanos && backlog <= lowBacklog && previous > LEVEL_NONE) {
+                next = previous - 1;
+            }
+            level = next;
+        }
+        if (next == previous) {
+            return;
+        }
+        Listener listener = this.listener;
+        if (listener != null) {
+            try {
+                listener.onLevelChanged(previous, next, TimeUnit.NANOSECONDS.toMicros(average), backlog);
+            } catch (RuntimeException e) {
+                Log.e("Batch", "PianoDispatcher - Load shedding listener failed", e);
+            }
+        }
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return "AdaptiveLoadShedder{" +
+                "level=" + level +
+                ", averageCostMicros=" + getAverageCostMicros() +
+                ", shedCounts=" + shedCounts +
+                '}';
+    }
+}
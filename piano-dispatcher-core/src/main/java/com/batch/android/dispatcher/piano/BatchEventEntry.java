@@ -0,0 +1,39 @@
+package com.batch.android.dispatcher.piano;
+
+import androidx.annotation.NonNull;
+
+import com.batch.android.Batch;
+
+/**
+ * A Batch event and its payload, to be dispatched in bulk with
+ * {@link AbstractPianoDispatcher#dispatchEvents(java.util.List)}.
+ */
+public final class BatchEventEntry {
+
+    @NonNull
+    private final Batch.EventDispatcher.Type type;
+
+    @NonNull
+    private final Batch.EventDispatcher.Payload payload;
+
+    /**
+     * Constructor
+     *
+     * @param type Batch event type
+     * @param payload Batch event payload
+     */
+    public BatchEventEntry(@NonNull Batch.EventDispatcher.Type type, @NonNull Batch.EventDispatcher.Payload payload) {
+        this.type = type;
+        this.payload = payload;
+    }
+
+    @NonNull
+    public Batch.EventDispatcher.Type getType() {
+        return type;
+    }
+
+    @NonNull
+    public Batch.EventDispatcher.Payload getPayload() {
+        return payload;
+    }
+}
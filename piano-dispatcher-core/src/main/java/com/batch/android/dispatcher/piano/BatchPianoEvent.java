@@ -0,0 +1,88 @@
+package com.batch.android.dispatcher.piano;
+
+import androidx.annotation.NonNull;
+
+import com.batch.android.Batch;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * SDK-neutral representation of an event mapped by the dispatcher.
+ * <p>
+ * It carries the Piano event name and properties without depending on any Piano SDK class,
+ * so it can be forwarded to another pipeline or post-processed by the app.
+ */
+public final class BatchPianoEvent {
+
+    /**
+     * Batch event type this event was mapped from
+     */
+    @NonNull
+    private final Batch.EventDispatcher.Type batchType;
+
+    /**
+     * Piano event name (eg: "publisher.click" or "batch_notification_open")
+     */
+    @NonNull
+    private final String name;
+
+    /**
+     * Piano event properties
+     */
+    @NonNull
+    private final Map<String, Object> properties;
+
+    /**
+     * Wall-clock time at which the event has been mapped
+     */
+    private final long timestamp;
+
+    /**
+     * Constructor
+     *
+     * @param batchType Batch event type
+     * @param name Piano event name
+     * @param properties Piano event properties, must not be modified afterwards
+     * @param timestamp Wall-clock time in milliseconds
+     */
+    public BatchPianoEvent(@NonNull Batch.EventDispatcher.Type batchType,
+                           @NonNull String name,
+                           @NonNull Map<String, Object> properties,
+                           long timestamp) {
+        this.batchType = batchType;
+        this.name = name;
+        this.properties = Collections.unmodifiableMap(properties);
+        this.timestamp = timestamp;
+    }
+
+    @NonNull
+    public Batch.EventDispatcher.Type getBatchType() {
+        return batchType;
+    }
+
+    @NonNull
+    public String getName() {
+        return name;
+    }
+
+    @NonNull
+    public Map<String, Object> getProperties() {
+        return properties;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return "BatchPianoEvent{" +
+                "batchType=" + batchType +
+                ", name='" + name + '\'' +
+                ", properties=" + properties +
+                ", timestamp=" + timestamp +
+                '}';
+    }
+}
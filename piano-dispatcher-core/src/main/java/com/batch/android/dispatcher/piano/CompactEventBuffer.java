@@ -0,0 +1,262 @@
+package com.batch.android.dispatcher.piano;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.batch.android.Batch;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * Compact in-memory buffer of pending events.
+ * <p>
+ * Instead of retaining Batch payloads or Piano event object graphs, the resolved fields of each
+ * pending event are encoded into pooled direct {@link ByteBuffer} chunks. Strings are dictionary
+ * encoded, so a campaign name repeated over many events is only stored once.
+ * Events are decoded with {@link #drain(Visitor)} when they are about to be sent.
+ * <p>
+ * Record layout: type ordinal (1 byte), timestamp (8 bytes), then campaign, medium, source,
+ * content, tracking id and webview analytics id as varint dictionary indexes (0 meaning null).
+ */
+public final class CompactEventBuffer {
+
+    /**
+     * Size of a chunk
+     */
+    static final int CHUNK_SIZE = 4096;
+
+    /**
+     * Maximum number of released chunks kept for reuse, shared by all buffers
+     */
+    private static final int MAX_POOLED_CHUNKS = 8;
+
+    /**
+     * Number of string fields in a record
+     */
+    private static final int STRING_FIELD_COUNT = 6;
+
+    /**
+     * Worst case record size: type + timestamp + 5 bytes varint per string field
+     */
+    private static final int MAX_RECORD_SIZE = 1 + 8 + STRING_FIELD_COUNT * 5;
+
+    private static final Batch.EventDispatcher.Type[] TYPES = Batch.EventDispatcher.Type.values();
+
+    private static final ArrayDeque<ByteBuffer> POOL = new ArrayDeque<>();
+
+    /**
+     * Receive the decoded events of a buffer
+     */
+    public interface Visitor {
+        void visit(@NonNull Batch.EventDispatcher.Type type,
+                   @Nullable String campaign,
+                   @Nullable String medium,
+                   @Nullable String source,
+                   @Nullable String content,
+                   @Nullable String trackingId,
+                   @Nullable String webViewAnalyticsId,
+                   long timestamp);
+    }
+
+    @NonNull
+    private final ArrayList<ByteBuffer> chunks = new ArrayList<>();
+
+    /**
+     * String to dictionary index (1-based)
+     */
+    @NonNull
+    private final HashMap<String, Integer> dictionary = new HashMap<>();
+
+    /**
+     * Dictionary index (0-based) to string
+     */
+    @NonNull
+    private final ArrayList<String> strings = new ArrayList<>();
+
+    private int count = 0;
+
+    private long dictionaryBytes = 0;
+
+    /**
+     * Append an event to the buffer
+     *
+     * @param type Batch event type
+     * @param campaign Resolved campaign
+     * @param medium Resolved medium
+     * @param source Resolved source
+     * @param content Resolved content
+     * @param trackingId Batch tracking id
+     * @param webViewAnalyticsId Batch webview analytics id
+     * @param timestamp Wall-clock time of the event in milliseconds
+     */
+    public synchronized void append(@NonNull Batch.EventDispatcher.Type type,
+                                    @Nullable String campaign,
+                                    @Nullable String medium,
+                                    @Nullable String source,
+                                    @Nullable String content,
+                                    @Nullable String trackingId,
+                                    @Nullable String webViewAnalyticsId,
+                                    long timestamp) {
+        ByteBuffer chunk = chunks.isEmpty() ? null : chunks.get(chunks.size() - 1);
+        if (chunk == null || chunk.remaining() < MAX_RECORD_SIZE) {
+            chunk = acquireChunk();
+            chunks.add(chunk);
+        }
+        chunk.put((byte) type.ordinal());
+        chunk.putLong(timestamp);
+        putVarInt(chunk, indexOf(campaign));
+        putVarInt(chunk, indexOf(medium));
+        putVarInt(chunk, indexOf(source));
+        putVarInt(chunk, indexOf(content));
+        putVarInt(chunk, indexOf(trackingId));
+        putVarInt(chunk, indexOf(webViewAnalyticsId));
+        count++;
+    }
+
+    /**
+     * Get the number of buffered events
+     *
+     * @return The event count
+     */
+    public synchronized int size() {
+        return count;
+    }
+
+    /**
+     * Get the number of bytes used by the encoded records
+     *
+     * @return The encoded size
+     */
+    public synchronized long getEncodedByteCount() {
+        long bytes = 0;
+        for (ByteBuffer chunk : chunks) {
+            bytes += chunk.position();
+        }
+        return bytes;
+    }
+
+    /**
+     * Get the approximate memory footprint of this buffer: allocated chunks
+     * plus the characters of the dictionary strings.
+     *
+     * @return The footprint in bytes
+     */
+    public synchronized long getByteFootprint() {
+        return (long) chunks.size() * CHUNK_SIZE + dictionaryBytes;
+    }
+
+    /**
+     * Decode every buffered event, in insertion order, then empty the buffer.
+     *
+     * @param visitor Receiver of the decoded events
+     * @return The number of decoded events
+     */
+    public synchronized int drain(@NonNull Visitor visitor) {
+        int drained = forEach(visitor);
+        clear();
+        return drained;
+    }
+
+    /**
+     * Decode every buffered event, in insertion order, and keep them in the buffer.
+     *
+     * @param visitor Receiver of the decoded events
+     * @return The number of decoded events
+     */
+    public synchronized int forEach(@NonNull Visitor visitor) {
+        for (ByteBuffer chunk : chunks) {
+            int end = chunk.position();
+            int position = 0;
+            while (position < end) {
+                chunk.position(position);
+                Batch.EventDispatcher.Type type = TYPES[chunk.get()];
+                long timestamp = chunk.getLong();
+                String campaign = stringAt(getVarInt(chunk));
+                String medium = stringAt(getVarInt(chunk));
+                String source = stringAt(getVarInt(chunk));
+                String content = stringAt(getVarInt(chunk));
+                String trackingId = stringAt(getVarInt(chunk));
+                String webViewAnalyticsId = stringAt(getVarInt(chunk));
+                position = chunk.position();
+                visitor.visit(type, campaign, medium, source, content, trackingId, webViewAnalyticsId, timestamp);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Drop every buffered event and give the chunks back to the pool
+     */
+    public synchronized void clear() {
+        for (ByteBuffer chunk : chunks) {
+            releaseChunk(chunk);
+        }
+        chunks.clear();
+        dictionary.clear();
+        strings.clear();
+        dictionaryBytes = 0;
+        count = 0;
+    }
+
+    private int indexOf(@Nullable String value) {
+        if (value == null) {
+            return 0;
+        }
+        Integer index = dictionary.get(value);
+        if (index == null) {
+            strings.add(value);
+            index = strings.size();
+            dictionary.put(value, index);
+            dictionaryBytes += 2L * value.length();
+        }
+        return index;
+    }
+
+    @Nullable
+    private String stringAt(int index) {
+        return index == 0 ? null : strings.get(index - 1);
+    }
+
+    private static void putVarInt(@NonNull ByteBuffer buffer, int value) {
+        while ((value & ~0x7F) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    private static int getVarInt(@NonNull ByteBuffer buffer) {
+        int value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = buffer.get();
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+
+    @NonNull
+    private static ByteBuffer acquireChunk() {
+        synchronized (POOL) {
+            ByteBuffer chunk = POOL.poll();
+            if (chunk != null) {
+                return chunk;
+            }
+        }
+        return ByteBuffer.allocateDirect(CHUNK_SIZE);
+    }
+
+    private static void releaseChunk(@NonNull ByteBuffer chunk) {
+        chunk.clear();
+        synchronized (POOL) {
+            if (POOL.size() < MAX_POOLED_CHUNKS) {
+                POOL.push(chunk);
+            }
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package com.batch.android.dispatcher.piano;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.work.Worker;
+import androidx.work.WorkerParameters;
+
+/**
+ * WorkManager job replaying the events persisted by {@link DeferredEventChannel}
+ * through the dispatcher, in bulk.
+ * <p>
+ * Events are put back into the store and the job retried if they could not be sent.
+ */
+public class DeferredDispatchWorker extends Worker {
+
+    /**
+     * Maximum number of store reads per run, events deferred while running are picked up too
+     */
+    private static final int MAX_ROUNDS = 4;
+
+    public DeferredDispatchWorker(@NonNull Context context, @NonNull WorkerParameters workerParams) {
+        super(context, workerParams);
+    }
+
+    @NonNull
+    @Override
+    public Result doWork() {
+        AbstractPianoDispatcher dispatcher = DeferredEventChannel.activeDispatcher;
+        if (dispatcher == null) {
+            // Batch did not load its dispatchers in this process yet
+            Log.w("Batch", "PianoDispatcher - No dispatcher available to send deferred events, retrying later");
+            return Result.retry();
+        }
+
+        DeferredEventStore store = new DeferredEventStore(getApplicationContext());
+        for (int round = 0; round < MAX_ROUNDS && !store.isEmpty(); round++) {
+            CompactEventBuffer buffer = new CompactEventBuffer();
+            store.drainInto(buffer);
+            dispatcher.sendBuffered(buffer);
+            if (buffer.size() > 0) {
+                // The Piano SDK is unavailable or failed: put the events back and retry later
+                buffer.drain(store::append);
+                return Result.retry();
+            }
+        }
+        return Result.success();
+    }
+}
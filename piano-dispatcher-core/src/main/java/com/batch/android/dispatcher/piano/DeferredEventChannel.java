@@ -0,0 +1,137 @@
+package com.batch.android.dispatcher.piano;
+
+import android.content.Context;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.work.Constraints;
+import androidx.work.ExistingWorkPolicy;
+import androidx.work.NetworkType;
+import androidx.work.OneTimeWorkRequest;
+import androidx.work.WorkManager;
+
+import com.batch.android.Batch;
+
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Deferred delivery of low-priority events.
+ * <p>
+ * Events of the configured types are persisted instead of being sent right away, and a single
+ * unique WorkManager job replays them in bulk once the battery is not low and the network is
+ * available, instead of waking the Piano SDK networking for each of them.
+ * <p>
+ * The store and the job are shared by the whole process, so only one dispatcher per process
+ * is supported: the job replays every deferred event through the last dispatcher that
+ * enabled deferred delivery.
+ * <p>
+ * Note: requires `androidx.work:work-runtime` in your app.
+ */
+public final class DeferredEventChannel {
+
+    /**
+     * Unique work name of the replay job
+     */
+    static final String WORK_NAME = "com.batch.android.dispatcher.piano.deferred_dispatch";
+
+    /**
+     * Default delay before replaying deferred events
+     */
+    public static final long DEFAULT_DELAY_MINUTES = 15;
+
+    /**
+     * Dispatcher the replay job sends the events through, set when a channel is enabled
+     */
+    @Nullable
+    static volatile AbstractPianoDispatcher activeDispatcher;
+
+    @NonNull
+    private final Context context;
+
+    @NonNull
+    private final DeferredEventStore store;
+
+    /**
+     * Deferred types, as a mask of type ordinals
+     */
+    private final long typeMask;
+
+    private final long delayMinutes;
+
+    @NonNull
+    private final AtomicLong droppedCount = new AtomicLong();
+
+    /**
+     * Constructor
+     *
+     * @param context Application context
+     * @param types Batch event types to defer
+     * @param delayMinutes Delay before replaying deferred events
+     */
+    public DeferredEventChannel(@NonNull Context context,
+                                @NonNull Set<Batch.EventDispatcher.Type> types,
+                                long delayMinutes) {
+        this.context = context.getApplicationContext();
+        this.store = new DeferredEventStore(this.context);
+        long mask = 0;
+        for (Batch.EventDispatcher.Type type : types) {
+            mask |= 1L << type.ordinal();
+        }
+        this.typeMask = mask;
+        this.delayMinutes = delayMinutes;
+    }
+
+    /**
+     * Whether events of this type are deferred
+     *
+     * @param type Batch event type
+     * @return True if deferred
+     */
+    boolean accepts(@NonNull Batch.EventDispatcher.Type type) {
+        return (typeMask & (1L << type.ordinal())) != 0;
+    }
+
+    /**
+     * Persist a resolved event and schedule the replay job
+     */
+    void defer(@NonNull Batch.EventDispatcher.Type type,
+               @NonNull String campaign,
+               @NonNull String medium,
+               @NonNull String source,
+               @Nullable String content,
+               @Nullable String trackingId,
+               @Nullable String webViewAnalyticsId,
+               long eventTime) {
+        if (!store.append(type, campaign, medium, source, content, trackingId, webViewAnalyticsId, eventTime)) {
+            droppedCount.incrementAndGet();
+            return;
+        }
+        schedule();
+    }
+
+    /**
+     * Get the number of events dropped because they could not be persisted
+     *
+     * @return The dropped event count
+     */
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    /**
+     * Schedule the replay job, unless it is already pending
+     */
+    void schedule() {
+        Constraints constraints = new Constraints.Builder()
+                .setRequiresBatteryNotLow(true)
+                .setRequiredNetworkType(NetworkType.CONNECTED)
+                .build();
+        OneTimeWorkRequest request = new OneTimeWorkRequest.Builder(DeferredDispatchWorker.class)
+                .setConstraints(constraints)
+                .setInitialDelay(delayMinutes, TimeUnit.MINUTES)
+                .build();
+        WorkManager.getInstance(context).enqueueUniqueWork(WORK_NAME, ExistingWorkPolicy.KEEP, request);
+    }
+}
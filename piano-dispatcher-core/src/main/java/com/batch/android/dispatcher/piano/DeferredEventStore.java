@@ -0,0 +1,192 @@
+package com.batch.android.dispatcher.piano;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.batch.android.Batch;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * File-backed store of deferred events.
+ * <p>
+ * Records hold the resolved fields of an event: type ordinal (byte), timestamp (long), then
+ * campaign, medium, source, content, tracking id and webview analytics id as a presence flag
+ * followed by modified UTF-8. The file is shared by every instance of the process.
+ * <p>
+ * Records are encoded in memory and appended whole, values too large for modified UTF-8 are truncated.
+ * A record that can't be read ends the file: the events read so far are kept.
+ */
+final class DeferredEventStore {
+
+    static final String FILE_NAME = "com.batch.android.dispatcher.piano.deferred";
+
+    /**
+     * Maximum size of a string written with {@link DataOutputStream#writeUTF(String)}
+     */
+    static final int MAX_UTF_BYTES = 65535;
+
+    /**
+     * Size cap of the store, new events are dropped once reached
+     */
+    static final long MAX_BYTES = 256 * 1024;
+
+    private static final Object LOCK = new Object();
+
+    private static final Batch.EventDispatcher.Type[] TYPES = Batch.EventDispatcher.Type.values();
+
+    @NonNull
+    private final File file;
+
+    DeferredEventStore(@NonNull Context context) {
+        this.file = new File(context.getNoBackupFilesDir(), FILE_NAME);
+    }
+
+    /**
+     * Append an event to the store
+     *
+     * @return False if the event could not be stored
+     */
+    boolean append(@NonNull Batch.EventDispatcher.Type type,
+                   @Nullable String campaign,
+                   @Nullable String medium,
+                   @Nullable String source,
+                   @Nullable String content,
+                   @Nullable String trackingId,
+                   @Nullable String webViewAnalyticsId,
+                   long timestamp) {
+        synchronized (LOCK) {
+            if (file.length() >= MAX_BYTES) {
+                return false;
+            }
+            // Encode the whole record first, so that a failure never leaves a partial record in the file
+            ByteArrayOutputStream recordBytes = new ByteArrayOutputStream(128);
+            DataOutputStream record = new DataOutputStream(recordBytes);
+            try {
+                record.writeByte(type.ordinal());
+                record.writeLong(timestamp);
+                writeString(record, campaign);
+                writeString(record, medium);
+                writeString(record, source);
+                writeString(record, content);
+                writeString(record, trackingId);
+                writeString(record, webViewAnalyticsId);
+            } catch (IOException e) {
+                Log.e("Batch", "PianoDispatcher - Could not encode deferred event", e);
+                return false;
+            }
+            try (FileOutputStream output = new FileOutputStream(file, true)) {
+                recordBytes.writeTo(output);
+                return true;
+            } catch (IOException e) {
+                Log.e("Batch", "PianoDispatcher - Could not store deferred event", e);
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Whether the store holds no event
+     */
+    boolean isEmpty() {
+        synchronized (LOCK) {
+            return file.length() == 0;
+        }
+    }
+
+    /**
+     * Move every stored event into a compact buffer and empty the store
+     *
+     * @param buffer Destination buffer
+     * @return The number of moved events
+     */
+    int drainInto(@NonNull CompactEventBuffer buffer) {
+        synchronized (LOCK) {
+            if (!file.exists()) {
+                return 0;
+            }
+            int count = 0;
+            try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+                while (true) {
+                    int ordinal;
+                    try {
+                        ordinal = input.readUnsignedByte();
+                    } catch (EOFException e) {
+                        break;
+                    }
+                    if (ordinal >= TYPES.length) {
+                        Log.e("Batch", "PianoDispatcher - Invalid deferred event, ignoring the next ones");
+                        break;
+                    }
+                    // Read the whole record before buffering it, a truncated record is dropped
+                    long timestamp = input.readLong();
+                    String campaign = readString(input);
+                    String medium = readString(input);
+                    String source = readString(input);
+                    String content = readString(input);
+                    String trackingId = readString(input);
+                    String webViewAnalyticsId = readString(input);
+                    buffer.append(TYPES[ordinal], campaign, medium, source, content, trackingId, webViewAnalyticsId, timestamp);
+                    count++;
+                }
+            } catch (IOException e) {
+                // An unreadable record ends the file, keep what has been read
+                Log.e("Batch", "PianoDispatcher - Error while reading deferred events", e);
+            }
+            if (!file.delete()) {
+                Log.e("Batch", "PianoDispatcher - Could not clear deferred events");
+            }
+            return count;
+        }
+    }
+
+    private static void writeString(@NonNull DataOutputStream output, @Nullable String value) throws IOException {
+        output.writeBoolean(value != null);
+        if (value != null) {
+            output.writeUTF(truncateUtf(value));
+        }
+    }
+
+    /**
+     * Truncate a string to {@link #MAX_UTF_BYTES} bytes of modified UTF-8, on a code point boundary
+     *
+     * @param value The string
+     * @return The same instance if it fits, a truncated copy otherwise
+     */
+    @NonNull
+    static String truncateUtf(@NonNull String value) {
+        int length = value.length();
+        if (length <= MAX_UTF_BYTES / 3) {
+            return value;
+        }
+        int size = 0;
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            size += c != 0 && c < 0x80 ? 1 : c < 0x800 ? 2 : 3;
+            if (size > MAX_UTF_BYTES) {
+                // Surrogates are encoded separately, but a pair must not be split
+                if (i > 0 && Character.isHighSurrogate(value.charAt(i - 1))) {
+                    i--;
+                }
+                return value.substring(0, i);
+            }
+        }
+        return value;
+    }
+
+    @Nullable
+    private static String readString(@NonNull DataInputStream input) throws IOException {
+        return input.readBoolean() ? input.readUTF() : null;
+    }
+}
@@ -0,0 +1,172 @@
+package com.batch.android.dispatcher.piano;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.batch.android.Batch;
+
+import org.json.JSONObject;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Flight recorder keeping track of the last dispatches.
+ * <p>
+ * Records are written into preallocated slots of a fixed-size ring buffer, without locking
+ * nor allocating, so it can stay enabled in production. Use {@link #dump()} to get a JSON
+ * snapshot of what the dispatcher actually resolved and sent.
+ */
+public final class DispatchFlightRecorder {
+
+    /**
+     * A preallocated record.
+     * <p>
+     * Fields are volatile so a reader can detect a slot being overwritten while it reads it.
+     */
+    private static final class Slot {
+        volatile long sequence = -1;
+        volatile Batch.EventDispatcher.Type type;
+        volatile String campaign;
+        volatile String medium;
+        volatile String source;
+        volatile String onSiteAdsEventName;
+        volatile String customEventName;
+        volatile long timestamp;
+        volatile long durationNanos;
+    }
+
+    @NonNull
+    private final Slot[] slots;
+
+    private final int mask;
+
+    /**
+     * Sequence of the next record to write
+     */
+    @NonNull
+    private final AtomicLong cursor = new AtomicLong();
+
+    /**
+     * Constructor
+     *
+     * @param capacity Number of dispatches to keep, rounded up to the next power of two.
+     */
+    public DispatchFlightRecorder(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be greater than 0");
+        }
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+        slots = new Slot[size];
+        for (int i = 0; i < size; i++) {
+            slots[i] = new Slot();
+        }
+        mask = size - 1;
+    }
+
+    /**
+     * Get the number of dispatches this recorder can hold
+     *
+     * @return The capacity
+     */
+    public int getCapacity() {
+        return slots.length;
+    }
+
+    /**
+     * Get the number of dispatches recorded since the creation of this recorder
+     *
+     * @return The total record count
+     */
+    public long getRecordedCount() {
+        return cursor.get();
+    }
+
+    /**
+     * Record a dispatch
+     *
+     * @param type Batch event type
+     * @param campaign Resolved campaign
+     * @param medium Resolved medium
+     * @param source Resolved source
+     * @param onSiteAdsEventName Name of the On-site Ads event sent, if any
+     * @param customEventName Name of the custom event sent, if any
+     * @param timestamp Wall-clock time of the dispatch in milliseconds
+     * @param durationNanos Time spent in the dispatcher
+     */
+    void record(@NonNull Batch.EventDispatcher.Type type,
+                @Nullable String campaign,
+                @Nullable String medium,
+                @Nullable String source,
+                @Nullable String onSiteAdsEventName,
+                @Nullable String customEventName,
+                long timestamp,
+                long durationNanos) {
+        long sequence = cursor.getAndIncrement();
+        Slot slot = slots[(int) (sequence & mask)];
+        slot.sequence = -1;
+        slot.type = type;
+        slot.campaign = campaign;
+        slot.medium = medium;
+        slot.source = source;
+        slot.onSiteAdsEventName = onSiteAdsEventName;
+        slot.customEventName = customEventName;
+        slot.timestamp = timestamp;
+        slot.durationNanos = durationNanos;
+        slot.sequence = sequence;
+    }
+
+    /**
+     * Get a JSON snapshot of the recorded dispatches, from the oldest to the most recent.
+     * <p>
+     * Records being overwritten while dumping are skipped.
+     *
+     * @return A JSON array
+     */
+    @NonNull
+    public String dump() {
+        long end = cursor.get();
+        long start = Math.max(0, end - slots.length);
+        StringBuilder builder = new StringBuilder("[");
+        for (long sequence = start; sequence < end; sequence++) {
+            Slot slot = slots[(int) (sequence & mask)];
+            if (slot.sequence != sequence) {
+                continue;
+            }
+            Batch.EventDispatcher.Type type = slot.type;
+            String campaign = slot.campaign;
+            String medium = slot.medium;
+            String source = slot.source;
+            String onSiteAdsEventName = slot.onSiteAdsEventName;
+            String customEventName = slot.customEventName;
+            long timestamp = slot.timestamp;
+            long durationNanos = slot.durationNanos;
+            if (slot.sequence != sequence) {
+                continue;
+            }
+            if (builder.length() > 1) {
+                builder.append(',');
+            }
+            builder.append("{\"seq\":").append(sequence)
+                    .append(",\"ts\":").append(timestamp)
+                    .append(",\"type\":").append(JSONObject.quote(String.valueOf(type)))
+                    .append(",\"campaign\":").append(JSONObject.quote(campaign))
+                    .append(",\"medium\":").append(JSONObject.quote(medium))
+                    .append(",\"source\":").append(JSONObject.quote(source))
+                    .append(",\"events\":[");
+            if (onSiteAdsEventName != null) {
+                builder.append(JSONObject.quote(onSiteAdsEventName));
+            }
+            if (customEventName != null) {
+                if (onSiteAdsEventName != null) {
+                    builder.append(',');
+                }
+                builder.append(JSONObject.quote(customEventName));
+            }
+            builder.append("],\"durationUs\":").append(durationNanos / 1000).append('}');
+        }
+        return builder.append(']').toString();
+    }
+}
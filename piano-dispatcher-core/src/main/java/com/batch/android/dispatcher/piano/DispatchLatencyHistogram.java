@@ -0,0 +1,139 @@
+package com.batch.android.dispatcher.piano;
+
+import androidx.annotation.NonNull;
+
+import com.batch.android.Batch;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram of the delay between the entry of a Batch event in the dispatcher and the moment
+ * its Piano events are handed to the SDK, per {@link Batch.EventDispatcher.Type}.
+ * <p>
+ * Buckets are powers of two in microseconds: bucket 0 counts delays under 1µs, and bucket n
+ * counts delays in [2^(n-1), 2^n) µs. Recording is a single atomic increment.
+ */
+public final class DispatchLatencyHistogram {
+
+    /**
+     * Number of buckets, the last one also counts every larger delay (~18 minutes and more)
+     */
+    public static final int BUCKET_COUNT = 32;
+
+    private static final Batch.EventDispatcher.Type[] TYPES = Batch.EventDispatcher.Type.values();
+
+    @NonNull
+    private final AtomicLongArray counts = new AtomicLongArray(TYPES.length * BUCKET_COUNT);
+
+    /**
+     * Record a delay
+     *
+     * @param type Batch event type
+     * @param delayNanos Delay in nanoseconds
+     */
+    void record(@NonNull Batch.EventDispatcher.Type type, long delayNanos) {
+        counts.incrementAndGet(type.ordinal() * BUCKET_COUNT + bucketOf(delayNanos));
+    }
+
+    /**
+     * Get the bucket index of a delay
+     *
+     * @param delayNanos Delay in nanoseconds
+     * @return The bucket index
+     */
+    static int bucketOf(long delayNanos) {
+        long micros = delayNanos / 1000;
+        if (micros <= 0) {
+            return 0;
+        }
+        return Math.min(BUCKET_COUNT - 1, 64 - Long.numberOfLeadingZeros(micros));
+    }
+
+    /**
+     * Get a copy of the buckets of a Batch event type
+     *
+     * @param type Batch event type
+     * @return The bucket counts
+     */
+    @NonNull
+    public long[] getBuckets(@NonNull Batch.EventDispatcher.Type type) {
+        long[] buckets = new long[BUCKET_COUNT];
+        int offset = type.ordinal() * BUCKET_COUNT;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            buckets[i] = counts.get(offset + i);
+        }
+        return buckets;
+    }
+
+    /**
+     * Get the number of recorded delays for a Batch event type
+     *
+     * @param type Batch event type
+     * @return The count
+     */
+    public long getCount(@NonNull Batch.EventDispatcher.Type type) {
+        long count = 0;
+        for (long bucket : getBuckets(type)) {
+            count += bucket;
+        }
+        return count;
+    }
+
+    /**
+     * Get an upper bound of a percentile of the delays for a Batch event type
+     *
+     * @param type Batch event type
+     * @param percentile Percentile, between 0 and 100
+     * @return The upper bound of the bucket holding the percentile in microseconds, 0 if nothing has been recorded
+     */
+    public long getPercentileMicros(@NonNull Batch.EventDispatcher.Type type, double percentile) {
+        long[] buckets = getBuckets(type);
+        long total = 0;
+        for (long bucket : buckets) {
+            total += bucket;
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long threshold = (long) Math.ceil(total * percentile / 100);
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += buckets[i];
+            if (seen >= threshold && buckets[i] > 0) {
+                return 1L << i;
+            }
+        }
+        return 1L << (BUCKET_COUNT - 1);
+    }
+
+    /**
+     * Get a compact text snapshot: one line per Batch event type with recorded delays,
+     * listing the non empty buckets as "upperBoundMicros:count".
+     *
+     * @return The snapshot
+     */
+    @NonNull
+    public String dump() {
+        StringBuilder builder = new StringBuilder();
+        for (Batch.EventDispatcher.Type type : TYPES) {
+            long[] buckets = getBuckets(type);
+            boolean first = true;
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                if (buckets[i] == 0) {
+                    continue;
+                }
+                if (first) {
+                    builder.append(type.name()).append(' ');
+                    first = false;
+                } else {
+                    builder.append(',');
+                }
+                builder.append(1L << i).append(':').append(buckets[i]);
+            }
+            if (!first) {
+                builder.append('\n');
+            }
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,191 @@
+package com.batch.android.dispatcher.piano;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.batch.android.Batch;
+import com.batch.android.BatchEventDispatcher;
+import com.batch.android.BatchMessage;
+import com.batch.android.BatchPushPayload;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+
+/**
+ * Replay a log written by {@link EventCaptureWriter} through a dispatcher.
+ * <p>
+ * Useful to benchmark and compare {@code LegacyPianoDispatcher} and {@code PianoDispatcher}
+ * offline on real traffic.
+ */
+public final class EventCaptureReplayer {
+
+    /**
+     * Outcome of a replay
+     */
+    public static final class Result {
+
+        private final int eventCount;
+
+        private final long elapsedNanos;
+
+        Result(int eventCount, long elapsedNanos) {
+            this.eventCount = eventCount;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        /**
+         * @return Number of replayed events
+         */
+        public int getEventCount() {
+            return eventCount;
+        }
+
+        /**
+         * @return Total wall time spent replaying, waits included
+         */
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+    }
+
+    private static final Batch.EventDispatcher.Type[] TYPES = Batch.EventDispatcher.Type.values();
+
+    private EventCaptureReplayer() {
+    }
+
+    /**
+     * Replay a capture log
+     *
+     * @param file Log file
+     * @param dispatcher Dispatcher receiving the events
+     * @param recordedSpeed Whether to wait between events as recorded, or replay at maximum speed
+     * @return The replay result
+     * @throws IOException if the log can't be read or is not a capture log
+     * @throws InterruptedException if interrupted while waiting between events
+     */
+    @NonNull
+    public static Result replay(@NonNull File file,
+                                @NonNull BatchEventDispatcher dispatcher,
+                                boolean recordedSpeed) throws IOException, InterruptedException {
+        long start = System.nanoTime();
+        int count = 0;
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (input.readInt() != EventCaptureWriter.MAGIC || input.readByte() != EventCaptureWriter.FORMAT_VERSION) {
+                throw new IOException("Not a Piano dispatcher capture log");
+            }
+            long previousTimestamp = -1;
+            while (true) {
+                try {
+                    input.readInt(); // Record length, records are read field by field
+                } catch (EOFException e) {
+                    break;
+                }
+                long timestamp = input.readLong();
+                Batch.EventDispatcher.Type type = TYPES[input.readByte()];
+                boolean positiveAction = input.readBoolean();
+                String trackingId = readString(input);
+                String deeplink = readString(input);
+                String webViewAnalyticsId = readString(input);
+                String[] customValues = new String[AbstractPianoDispatcher.ATTRIBUTION_KEYS.length];
+                for (int i = 0; i < customValues.length; i++) {
+                    customValues[i] = readString(input);
+                }
+
+                if (recordedSpeed && previousTimestamp >= 0 && timestamp > previousTimestamp) {
+                    Thread.sleep(timestamp - previousTimestamp);
+                }
+                previousTimestamp = timestamp;
+                dispatcher.dispatchEvent(type, new CapturedPayload(trackingId, deeplink, webViewAnalyticsId, positiveAction, customValues));
+                count++;
+            }
+        }
+        return new Result(count, System.nanoTime() - start);
+    }
+
+    @Nullable
+    private static String readString(@NonNull DataInputStream input) throws IOException {
+        return input.readBoolean() ? input.readUTF() : null;
+    }
+
+    /**
+     * Payload rebuilt from a capture record
+     */
+    private static final class CapturedPayload implements Batch.EventDispatcher.Payload {
+
+        @Nullable
+        private final String trackingId;
+
+        @Nullable
+        private final String deeplink;
+
+        @Nullable
+        private final String webViewAnalyticsId;
+
+        private final boolean positiveAction;
+
+        @NonNull
+        private final String[] customValues;
+
+        CapturedPayload(@Nullable String trackingId,
+                        @Nullable String deeplink,
+                        @Nullable String webViewAnalyticsId,
+                        boolean positiveAction,
+                        @NonNull String[] customValues) {
+            this.trackingId = trackingId;
+            this.deeplink = deeplink;
+            this.webViewAnalyticsId = webViewAnalyticsId;
+            this.positiveAction = positiveAction;
+            this.customValues = customValues;
+        }
+
+        @Nullable
+        @Override
+        public String getTrackingId() {
+            return trackingId;
+        }
+
+        @Nullable
+        @Override
+        public String getDeeplink() {
+            return deeplink;
+        }
+
+        @Override
+        public boolean isPositiveAction() {
+            return positiveAction;
+        }
+
+        @Nullable
+        @Override
+        public String getCustomValue(@NonNull String key) {
+            for (int i = 0; i < AbstractPianoDispatcher.ATTRIBUTION_KEYS.length; i++) {
+                if (AbstractPianoDispatcher.ATTRIBUTION_KEYS[i].equals(key)) {
+                    return customValues[i];
+                }
+            }
+            return null;
+        }
+
+        @Nullable
+        @Override
+        public BatchMessage getMessagingPayload() {
+            return null;
+        }
+
+        @Nullable
+        @Override
+        public BatchPushPayload getPushPayload() {
+            return null;
+        }
+
+        @Nullable
+        @Override
+        public String getWebViewAnalyticsID() {
+            return webViewAnalyticsId;
+        }
+    }
+}
@@ -0,0 +1,243 @@
+package com.batch.android.dispatcher.piano;
+
+import android.net.Uri;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.batch.android.Batch;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UTFDataFormatException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Capture the incoming Batch events into a compact binary log.
+ * <p>
+ * Each record holds the payload fields read by the dispatcher and a timestamp, so the real
+ * traffic can be replayed offline with {@link EventCaptureReplayer}.
+ * <p>
+ * File layout: {@link #MAGIC}, {@link #FORMAT_VERSION}, then records prefixed by their length
+ * (int). A record contains the timestamp (long), the type ordinal (byte), the positive action flag,
+ * the tracking id, deeplink, webview analytics id and the custom values of
+ * {@link AbstractPianoDispatcher#ATTRIBUTION_KEYS}. Strings are written as a presence flag
+ * followed by modified UTF-8.
+ * <p>
+ * When PII hashing is enabled, the webview analytics id is replaced by a SHA-256 digest and the deeplink
+ * is reduced to a hashed host and the attribution tags the dispatcher reads. The tracking id is kept
+ * as is: it identifies a Batch campaign, and the dispatcher falls back to it as the campaign.
+ * <p>
+ * Records holding a string longer than 65535 UTF-8 bytes can't be written and are skipped.
+ */
+public final class EventCaptureWriter implements Closeable {
+
+    static final int MAGIC = 0x42504443; // "BPDC"
+    static final byte FORMAT_VERSION = 1;
+
+    @NonNull
+    private final DataOutputStream output;
+
+    private final long maxBytes;
+
+    private final boolean hashPii;
+
+    @NonNull
+    private final ByteArrayOutputStream recordBytes = new ByteArrayOutputStream(256);
+
+    @NonNull
+    private final DataOutputStream record = new DataOutputStream(recordBytes);
+
+    private long writtenBytes;
+
+    private int capturedCount;
+
+    private int skippedCount;
+
+    private boolean closed;
+
+    /**
+     * Constructor
+     *
+     * @param file Log file, overwritten if it exists
+     * @param maxBytes Size cap of the log, capture stops once reached
+     * @param hashPii Whether the webview analytics id and deeplinks should be hashed
+     * @throws IOException if the file can't be opened
+     */
+    public EventCaptureWriter(@NonNull File file, long maxBytes, boolean hashPii) throws IOException {
+        this.maxBytes = maxBytes;
+        this.hashPii = hashPii;
+        this.output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+        output.writeInt(MAGIC);
+        output.writeByte(FORMAT_VERSION);
+        writtenBytes = output.size();
+    }
+
+    /**
+     * Capture an incoming Batch event
+     *
+     * @param type Batch event type
+     * @param payload Batch event payload
+     */
+    public synchronized void capture(@NonNull Batch.EventDispatcher.Type type, @NonNull Batch.EventDispatcher.Payload payload) {
+        if (closed || writtenBytes >= maxBytes) {
+            return;
+        }
+        try {
+            recordBytes.reset();
+            record.writeLong(System.currentTimeMillis());
+            record.writeByte(type.ordinal());
+            record.writeBoolean(payload.isPositiveAction());
+            writeString(payload.getTrackingId());
+            writeString(hashPii ? redactDeeplink(payload.getDeeplink()) : payload.getDeeplink());
+            writeString(hashPii ? hash(payload.getWebViewAnalyticsID()) : payload.getWebViewAnalyticsID());
+            for (String key : AbstractPianoDispatcher.ATTRIBUTION_KEYS) {
+                writeString(payload.getCustomValue(key));
+            }
+            int length = recordBytes.size();
+            if (writtenBytes + 4 + length > maxBytes) {
+                // Keep the log readable: never write a truncated record
+                writtenBytes = maxBytes;
+                output.flush();
+                return;
+            }
+            output.writeInt(length);
+            recordBytes.writeTo(output);
+            writtenBytes += 4 + length;
+            capturedCount++;
+        } catch (UTFDataFormatException e) {
+            // Only this record is too large, the log is left untouched
+            skippedCount++;
+            Log.w("Batch", "PianoDispatcher - Skipping a captured event holding a value too large to be written");
+        } catch (IOException e) {
+            Log.e("Batch", "PianoDispatcher - Error while capturing event, stopping capture", e);
+            close();
+        }
+    }
+
+    /**
+     * Get the number of captured events
+     *
+     * @return The captured event count
+     */
+    public synchronized int getCapturedCount() {
+        return capturedCount;
+    }
+
+    /**
+     * Get the number of events skipped because a value is too large to be captured
+     *
+     * @return The skipped event count
+     */
+    public synchronized int getSkippedCount() {
+        return skippedCount;
+    }
+
+    /**
+     * Whether the size cap has been reached
+     *
+     * @return True if no more events will be captured
+     */
+    public synchronized boolean isFull() {
+        return writtenBytes >= maxBytes;
+    }
+
+    /**
+     * Flush and close the log
+     */
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            output.close();
+        } catch (IOException e) {
+            Log.e("Batch", "PianoDispatcher - Error while closing capture log", e);
+        }
+    }
+
+    private void writeString(@Nullable String value) throws IOException {
+        record.writeBoolean(value != null);
+        if (value != null) {
+            record.writeUTF(value);
+        }
+    }
+
+    /**
+     * Keep only what the dispatcher reads from a deeplink: whether it is hierarchical
+     * and the attribution tags of its query and fragment.
+     *
+     * @param deeplink Original deeplink
+     * @return The redacted deeplink
+     */
+    @Nullable
+    private static String redactDeeplink(@Nullable String deeplink) {
+        if (deeplink == null) {
+            return null;
+        }
+        Uri uri = Uri.parse(deeplink.trim());
+        if (!uri.isHierarchical()) {
+            return "opaque:" + hash(deeplink);
+        }
+        StringBuilder builder = new StringBuilder("https://").append(hash(uri.getHost())).append('/');
+        String query = filterParameters(uri.getEncodedQuery());
+        if (!query.isEmpty()) {
+            builder.append('?').append(query);
+        }
+        String fragment = filterParameters(uri.getEncodedFragment());
+        if (!fragment.isEmpty()) {
+            builder.append('#').append(fragment);
+        }
+        return builder.toString();
+    }
+
+    @NonNull
+    private static String filterParameters(@Nullable String parameters) {
+        if (parameters == null || parameters.isEmpty()) {
+            return "";
+        }
+        StringBuilder builder = new StringBuilder();
+        for (String parameter : parameters.split("&")) {
+            int separator = parameter.indexOf('=');
+            String key = separator >= 0 ? parameter.substring(0, separator) : parameter;
+            for (String attributionKey : AbstractPianoDispatcher.ATTRIBUTION_KEYS) {
+                if (attributionKey.equalsIgnoreCase(key)) {
+                    if (builder.length() > 0) {
+                        builder.append('&');
+                    }
+                    builder.append(parameter);
+                    break;
+                }
+            }
+        }
+        return builder.toString();
+    }
+
+    @Nullable
+    private static String hash(@Nullable String value) {
+        if (value == null) {
+            return null;
+        }
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(value.getBytes(StandardCharsets.UTF_8));
+            StringBuilder builder = new StringBuilder(16);
+            for (int i = 0; i < 8; i++) {
+                builder.append(Character.forDigit((digest[i] >> 4) & 0xF, 16))
+                        .append(Character.forDigit(digest[i] & 0xF, 16));
+            }
+            return builder.toString();
+        } catch (NoSuchAlgorithmException e) {
+            return "";
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package com.batch.android.dispatcher.piano;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Sink keeping the mapped events in memory, mostly useful for tests and benchmarks.
+ */
+public class InMemoryPianoEventSink implements PianoEventSink {
+
+    @NonNull
+    private final List<BatchPianoEvent> events = new ArrayList<>();
+
+    @Override
+    public synchronized void send(@NonNull List<BatchPianoEvent> events) {
+        this.events.addAll(events);
+    }
+
+    /**
+     * Get a copy of the received events
+     *
+     * @return The events, in order
+     */
+    @NonNull
+    public synchronized List<BatchPianoEvent> getEvents() {
+        return new ArrayList<>(events);
+    }
+
+    /**
+     * Get the number of received events
+     *
+     * @return The event count
+     */
+    public synchronized int size() {
+        return events.size();
+    }
+
+    /**
+     * Forget the received events
+     */
+    public synchronized void clear() {
+        events.clear();
+    }
+}
@@ -0,0 +1,222 @@
+package com.batch.android.dispatcher.piano;
+
+import android.os.Looper;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.batch.android.Batch;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Watchdog reporting the Batch events dispatched on the main thread for longer than a budget.
+ * <p>
+ * The last violations are kept in a bounded report, and can be forwarded to your own
+ * monitoring with a {@link Listener}.
+ */
+public final class MainThreadWatchdog {
+
+    /**
+     * Default budget: 1ms
+     */
+    public static final long DEFAULT_BUDGET_MICROS = 1000;
+
+    /**
+     * Default number of violations kept in the report
+     */
+    public static final int DEFAULT_REPORT_SIZE = 32;
+
+    /**
+     * A dispatch that ran on the main thread for longer than the budget
+     */
+    public static final class Violation {
+
+        @NonNull
+        private final Batch.EventDispatcher.Type type;
+
+        private final long timestamp;
+
+        private final long resolutionMicros;
+
+        private final long sendMicros;
+
+        private final int deeplinkLength;
+
+        Violation(@NonNull Batch.EventDispatcher.Type type,
+                  long timestamp,
+                  long resolutionMicros,
+                  long sendMicros,
+                  int deeplinkLength) {
+            this.type = type;
+            this.timestamp = timestamp;
+            this.resolutionMicros = resolutionMicros;
+            this.sendMicros = sendMicros;
+            this.deeplinkLength = deeplinkLength;
+        }
+
+        @NonNull
+        public Batch.EventDispatcher.Type getType() {
+            return type;
+        }
+
+        /**
+         * @return Wall-clock time of the violation, in milliseconds
+         */
+        public long getTimestamp() {
+            return timestamp;
+        }
+
+        /**
+         * @return Time spent resolving the attribution and mapping the events, in microseconds
+         */
+        public long getResolutionMicros() {
+            return resolutionMicros;
+        }
+
+        /**
+         * @return Time spent handing the events to the Piano SDK, sink or deferred store, in microseconds
+         */
+        public long getSendMicros() {
+            return sendMicros;
+        }
+
+        /**
+         * @return Total time spent in the dispatcher, in microseconds
+         */
+        public long getDurationMicros() {
+            return resolutionMicros + sendMicros;
+        }
+
+        /**
+         * @return Length of the Batch event's deeplink, 0 if it has none
+         */
+        public int getDeeplinkLength() {
+            return deeplinkLength;
+        }
+
+        @NonNull
+        @Override
+        public String toString() {
+            return "Violation{" +
+                    "type=" + type +
+                    ", timestamp=" + timestamp +
+                    ", resolutionMicros=" + resolutionMicros +
+                    ", sendMicros=" + sendMicros +
+                    ", deeplinkLength=" + deeplinkLength +
+                    '}';
+        }
+    }
+
+    /**
+     * Listener notified of each violation, on the main thread
+     */
+    public interface Listener {
+        void onViolation(@NonNull Violation violation);
+    }
+
+    private final long budgetNanos;
+
+    private final int reportSize;
+
+    /**
+     * Last violations, oldest first
+     */
+    @NonNull
+    private final ArrayDeque<Violation> report;
+
+    @NonNull
+    private final AtomicLong violationCount = new AtomicLong();
+
+    @Nullable
+    private volatile Listener listener;
+
+    /**
+     * Constructor
+     *
+     * @param budgetMicros Maximum time a dispatch may spend on the main thread, in microseconds
+     * @param reportSize Number of violations kept in the report
+     */
+    public MainThreadWatchdog(long budgetMicros, int reportSize) {
+        if (budgetMicros < 0 || reportSize <= 0) {
+            throw new IllegalArgumentException("Budget must be positive and report size greater than 0");
+        }
+        this.budgetNanos = TimeUnit.MICROSECONDS.toNanos(budgetMicros);
+        this.reportSize = reportSize;
+        this.report = new ArrayDeque<>(reportSize);
+    }
+
+    public void setListener(@Nullable Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Check a dispatch against the budget
+     *
+     * @param type Batch event type
+     * @param payload Batch event payload
+     * @param startNanos Time at which the dispatch started
+     * @param resolvedNanos Time at which the events were resolved and mapped
+     * @param endNanos Time at which the dispatch ended
+     */
+    void check(@NonNull Batch.EventDispatcher.Type type,
+               @NonNull Batch.EventDispatcher.Payload payload,
+               long startNanos,
+               long resolvedNanos,
+               long endNanos) {
+        if (endNanos - startNanos <= budgetNanos || Looper.myLooper() != Looper.getMainLooper()) {
+            return;
+        }
+        String deeplink = payload.getDeeplink();
+        Violation violation = new Violation(type,
+                System.currentTimeMillis(),
+                TimeUnit.NANOSECONDS.toMicros(resolvedNanos - startNanos),
+                TimeUnit.NANOSECONDS.toMicros(endNanos - resolvedNanos),
+                deeplink != null ? deeplink.length() : 0);
+        violationCount.incrementAndGet();
+        synchronized (report) {
+            if (report.size() == reportSize) {
+                report.pollFirst();
+            }
+            report.addLast(violation);
+        }
+        Listener listener = this.listener;
+        if (listener != null) {
+            try {
+                listener.onViolation(violation);
+            } catch (RuntimeException e) {
+                Log.e("Batch", "PianoDispatcher - Main thread watchdog listener failed", e);
+            }
+        }
+    }
+
+    /**
+     * Get the last violations
+     *
+     * @return The violations, oldest first
+     */
+    @NonNull
+    public List<Violation> getViolations() {
+        synchronized (report) {
+            return new ArrayList<>(report);
+        }
+    }
+
+    /**
+     * Get the number of violations since the watchdog has been enabled
+     *
+     * @return The violation count, including the ones no longer in the report
+     */
+    public long getViolationCount() {
+        return violationCount.get();
+    }
+
+    public long getBudgetMicros() {
+        return TimeUnit.NANOSECONDS.toMicros(budgetNanos);
+    }
+}
@@ -0,0 +1,263 @@
+package com.batch.android.dispatcher.piano;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.batch.android.Batch;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * SDK-neutral Piano event, built once by {@link AbstractPianoDispatcher} and then lowered
+ * to the event class of the Piano SDK, or to a {@link BatchPianoEvent} for sinks and publishers.
+ * <p>
+ * Known properties are held in fixed slots rather than a map. Optional slots are null when
+ * the property must not be sent, so lowering steps don't have to check anything.
+ * Its content is only visible to the dispatcher implementations.
+ */
+public final class MappedPianoEvent {
+
+    /**
+     * Batch event type this event was mapped from
+     */
+    @NonNull
+    final Batch.EventDispatcher.Type batchType;
+
+    /**
+     * Whether this is a custom event, or an On-site Ads event
+     */
+    final boolean custom;
+
+    /**
+     * Piano event name
+     */
+    @NonNull
+    final String name;
+
+    /**
+     * Null if the budget truncated it down to nothing
+     */
+    @Nullable
+    final String campaign;
+
+    /**
+     * Null if the budget truncated it down to nothing
+     */
+    @Nullable
+    final String medium;
+
+    /**
+     * Null if the budget truncated it down to nothing
+     */
+    @Nullable
+    final String source;
+
+    /**
+     * Custom events only, null if empty
+     */
+    @Nullable
+    final String content;
+
+    /**
+     * Custom events only, null if empty
+     */
+    @Nullable
+    final String trackingId;
+
+    /**
+     * Custom messaging events only, null if empty
+     */
+    @Nullable
+    final String webViewAnalyticsId;
+
+    /**
+     * Wall-clock time at which the Batch event happened
+     */
+    final long eventTime;
+
+    /**
+     * Whether {@link #eventTime} is sent as {@link AbstractPianoDispatcher#EVENT_TIME}
+     */
+    final boolean hasEventTime;
+
+    /**
+     * Static context properties shared by every event, null if there is none
+     */
+    @Nullable
+    final PianoContextProperties contextProperties;
+
+    /**
+     * Names of the custom properties, validated against the Piano Data Model if any
+     */
+    @NonNull
+    final PianoDataModel.Keys keys;
+
+    /**
+     * Number of properties of the lowered event
+     */
+    final int propertyCount;
+
+    private MappedPianoEvent(@NonNull Batch.EventDispatcher.Type batchType,
+                             boolean custom,
+                             @NonNull String name,
+                             @Nullable String campaign,
+                             @Nullable String medium,
+                             @Nullable String source,
+                             @Nullable String content,
+                             @Nullable String trackingId,
+                             @Nullable String webViewAnalyticsId,
+                             long eventTime,
+                             boolean hasEventTime,
+                             @Nullable PianoContextProperties contextProperties,
+                             @NonNull PianoDataModel.Keys keys) {
+        this.batchType = batchType;
+        this.custom = custom;
+        this.name = name;
+        this.campaign = campaign;
+        this.medium = medium;
+        this.source = source;
+        this.content = content;
+        this.trackingId = trackingId;
+        this.webViewAnalyticsId = webViewAnalyticsId;
+        this.eventTime = eventTime;
+        this.hasEventTime = hasEventTime;
+        this.contextProperties = contextProperties;
+        this.keys = keys;
+        int count = contextProperties != null ? contextProperties.size() : 0;
+        if (custom) {
+            count += (campaign != null && keys.campaign != null ? 1 : 0)
+                    + (medium != null && keys.medium != null ? 1 : 0)
+                    + (source != null && keys.source != null ? 1 : 0)
+                    + (keys.sourceForce != null ? 1 : 0)
+                    + (content != null && keys.content != null ? 1 : 0)
+                    + (trackingId != null && keys.trackingId != null ? 1 : 0)
+                    + (webViewAnalyticsId != null && keys.webViewAnalyticsId != null ? 1 : 0);
+        } else {
+            count += 1 + (campaign != null ? 1 : 0) + (medium != null ? 1 : 0) + (source != null ? 1 : 0);
+        }
+        this.propertyCount = count + (hasEventTime && keys.eventTime != null ? 1 : 0);
+    }
+
+    @NonNull
+    static MappedPianoEvent onSiteAds(@NonNull Batch.EventDispatcher.Type batchType,
+                                      @NonNull String name,
+                                      @NonNull String campaign,
+                                      @NonNull String medium,
+                                      @NonNull String source,
+                                      long eventTime,
+                                      boolean hasEventTime,
+                                      @Nullable PianoContextProperties contextProperties,
+                                      @NonNull PianoDataModel.Keys keys) {
+        return new MappedPianoEvent(batchType, false, name, campaign, medium, source,
+                null, null, null, eventTime, hasEventTime, contextProperties, keys);
+    }
+
+    @NonNull
+    static MappedPianoEvent custom(@NonNull Batch.EventDispatcher.Type batchType,
+                                   @NonNull String name,
+                                   @NonNull String campaign,
+                                   @NonNull String medium,
+                                   @NonNull String source,
+                                   @Nullable String content,
+                                   @Nullable String trackingId,
+                                   @Nullable String webViewAnalyticsId,
+                                   long eventTime,
+                                   boolean hasEventTime,
+                                   @Nullable PianoContextProperties contextProperties,
+                                   @NonNull PianoDataModel.Keys keys) {
+        return new MappedPianoEvent(batchType, true, name, campaign, medium, source,
+                emptyToNull(content),
+                emptyToNull(trackingId),
+                batchType.isMessagingEvent() ? emptyToNull(webViewAnalyticsId) : null,
+                eventTime, hasEventTime, contextProperties, keys);
+    }
+
+    /**
+     * Copy this event with other attribution values
+     *
+     * @return A new event, other values are unchanged. Null values are not sent.
+     */
+    @NonNull
+    MappedPianoEvent withAttribution(@Nullable String campaign,
+                                     @Nullable String medium,
+                                     @Nullable String source,
+                                     @Nullable String content) {
+        return new MappedPianoEvent(batchType, custom, name, campaign, medium, source,
+                emptyToNull(content), trackingId, webViewAnalyticsId, eventTime, hasEventTime, contextProperties, keys);
+    }
+
+    /**
+     * Lower this event to a property map, as sent to the Java Piano SDK or exposed by {@link BatchPianoEvent}
+     *
+     * @return A new, exactly sized map
+     */
+    @NonNull
+    Map<String, Object> toPropertyMap() {
+        Map<String, Object> properties = new HashMap<>(propertyCount * 4 / 3 + 1);
+        if (contextProperties != null) {
+            properties.putAll(contextProperties.getProperties());
+        }
+        if (custom) {
+            putIfDeclared(properties, keys.campaign, campaign);
+            putIfDeclared(properties, keys.medium, medium);
+            putIfDeclared(properties, keys.source, source);
+            putIfDeclared(properties, keys.sourceForce, true);
+            putIfDeclared(properties, keys.trackingId, trackingId);
+            putIfDeclared(properties, keys.content, content);
+            putIfDeclared(properties, keys.webViewAnalyticsId, webViewAnalyticsId);
+        } else {
+            properties.put(AbstractPianoDispatcher.ON_SITE_TYPE, AbstractPianoDispatcher.ON_SITE_TYPE_PUBLISHER);
+            putIfDeclared(properties, AbstractPianoDispatcher.ON_SITE_ADVERTISER, source);
+            putIfDeclared(properties, AbstractPianoDispatcher.ON_SITE_CAMPAIGN, campaign);
+            putIfDeclared(properties, AbstractPianoDispatcher.ON_SITE_FORMAT, medium);
+        }
+        if (hasEventTime) {
+            putIfDeclared(properties, keys.eventTime, eventTime);
+        }
+        return properties;
+    }
+
+    /**
+     * Get the number of properties of this event that are not sent because they are not declared
+     *
+     * @return The count
+     */
+    int getUndeclaredPropertyCount() {
+        if (keys == PianoDataModel.Keys.DEFAULT) {
+            return 0;
+        }
+        int count = hasEventTime && keys.eventTime == null ? 1 : 0;
+        if (custom) {
+            count += (keys.campaign == null ? 1 : 0)
+                    + (keys.medium == null ? 1 : 0)
+                    + (keys.source == null ? 1 : 0)
+                    + (keys.sourceForce == null ? 1 : 0)
+                    + (content != null && keys.content == null ? 1 : 0)
+                    + (trackingId != null && keys.trackingId == null ? 1 : 0)
+                    + (webViewAnalyticsId != null && keys.webViewAnalyticsId == null ? 1 : 0);
+        }
+        return count;
+    }
+
+    private static void putIfDeclared(@NonNull Map<String, Object> properties, @Nullable String key, @Nullable Object value) {
+        if (key != null && value != null) {
+            properties.put(key, value);
+        }
+    }
+
+    /**
+     * Lower this event to its public SDK-neutral representation
+     *
+     * @return The event
+     */
+    @NonNull
+    BatchPianoEvent toBatchPianoEvent() {
+        return new BatchPianoEvent(batchType, name, toPropertyMap(), System.currentTimeMillis());
+    }
+
+    @Nullable
+    private static String emptyToNull(@Nullable String value) {
+        return value == null || value.isEmpty() ? null : value;
+    }
+}
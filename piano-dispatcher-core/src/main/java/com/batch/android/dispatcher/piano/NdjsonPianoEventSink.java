@@ -0,0 +1,76 @@
+package com.batch.android.dispatcher.piano;
+
+import androidx.annotation.NonNull;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Sink appending the mapped events to a file, as newline delimited JSON.
+ * <p>
+ * Each line is an object like:
+ * {@code {"type":"NOTIFICATION_OPEN","name":"publisher.click","ts":1700000000000,"properties":{...}}}
+ */
+public class NdjsonPianoEventSink implements PianoEventSink, Closeable {
+
+    @NonNull
+    private final Writer writer;
+
+    /**
+     * Constructor
+     *
+     * @param file File to append to, created if needed
+     * @throws IOException if the file cannot be opened
+     */
+    public NdjsonPianoEventSink(@NonNull File file) throws IOException {
+        this.writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file, true), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Write the events, flushing the file once all of them are written
+     *
+     * @throws IllegalStateException if the events cannot be written
+     */
+    @Override
+    public synchronized void send(@NonNull List<BatchPianoEvent> events) {
+        try {
+            for (BatchPianoEvent event : events) {
+                writer.write(toJSON(event).toString());
+                writer.write('\n');
+            }
+            writer.flush();
+        } catch (IOException | JSONException e) {
+            throw new IllegalStateException("Could not write events", e);
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        writer.close();
+    }
+
+    @NonNull
+    static JSONObject toJSON(@NonNull BatchPianoEvent event) throws JSONException {
+        JSONObject properties = new JSONObject();
+        for (Map.Entry<String, Object> property : event.getProperties().entrySet()) {
+            properties.put(property.getKey(), property.getValue());
+        }
+        JSONObject json = new JSONObject();
+        json.put("type", event.getBatchType().name());
+        json.put("name", event.getName());
+        json.put("ts", event.getTimestamp());
+        json.put("properties", properties);
+        return json;
+    }
+}
@@ -0,0 +1,87 @@
+package com.batch.android.dispatcher.piano;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * Attribution resolved from a Batch event: the values sent as campaign, medium, source and content.
+ */
+public final class PianoAttribution {
+
+    @NonNull
+    private final String campaign;
+
+    @NonNull
+    private final String medium;
+
+    @NonNull
+    private final String source;
+
+    @Nullable
+    private final String content;
+
+    public PianoAttribution(@NonNull String campaign,
+                            @NonNull String medium,
+                            @NonNull String source,
+                            @Nullable String content) {
+        this.campaign = campaign;
+        this.medium = medium;
+        this.source = source;
+        this.content = content;
+    }
+
+    @NonNull
+    public String getCampaign() {
+        return campaign;
+    }
+
+    @NonNull
+    public String getMedium() {
+        return medium;
+    }
+
+    @NonNull
+    public String getSource() {
+        return source;
+    }
+
+    @Nullable
+    public String getContent() {
+        return content;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof PianoAttribution)) {
+            return false;
+        }
+        PianoAttribution that = (PianoAttribution) o;
+        return campaign.equals(that.campaign)
+                && medium.equals(that.medium)
+                && source.equals(that.source)
+                && (content == null ? that.content == null : content.equals(that.content));
+    }
+
+    @Override
+    public int hashCode() {
+        int result = campaign.hashCode();
+        result = 31 * result + medium.hashCode();
+        result = 31 * result + source.hashCode();
+        result = 31 * result + (content != null ? content.hashCode() : 0);
+        return result;
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return "PianoAttribution{" +
+                "campaign='" + campaign + '\'' +
+                ", medium='" + medium + '\'' +
+                ", source='" + source + '\'' +
+                ", content='" + content + '\'' +
+                '}';
+    }
+}
@@ -0,0 +1,21 @@
+package com.batch.android.dispatcher.piano;
+
+import androidx.annotation.NonNull;
+
+import com.batch.android.Batch;
+
+/**
+ * Resolves the attribution of a Batch event
+ */
+public interface PianoAttributionEngine {
+
+    /**
+     * Resolve the attribution of a Batch event
+     *
+     * @param type Batch event type
+     * @param payload Batch event payload
+     * @return The attribution
+     */
+    @NonNull
+    PianoAttribution resolve(@NonNull Batch.EventDispatcher.Type type, @NonNull Batch.EventDispatcher.Payload payload);
+}
@@ -0,0 +1,233 @@
+package com.batch.android.dispatcher.piano;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Circuit breaker around the Piano SDK sends.
+ * <p>
+ * After {@link #getFailureThreshold()} consecutive failures, the circuit opens and the dispatcher
+ * stops building and sending events for {@link #getCooldownMillis()}. Then a single dispatch is
+ * allowed to probe the SDK: the circuit closes if it succeeds, or opens again if it fails.
+ */
+public final class PianoCircuitBreaker {
+
+    /**
+     * Default number of consecutive failures before opening the circuit
+     */
+    public static final int DEFAULT_FAILURE_THRESHOLD = 5;
+
+    /**
+     * Default time the circuit stays open before probing
+     */
+    public static final long DEFAULT_COOLDOWN_MILLIS = 30_000;
+
+    /**
+     * Circuit state
+     */
+    public enum State {
+        /**
+         * Events are sent normally
+         */
+        CLOSED,
+
+        /**
+         * Events are skipped until the cooldown expires
+         */
+        OPEN,
+
+        /**
+         * A probe dispatch is running, other events are skipped
+         */
+        HALF_OPEN,
+    }
+
+    /**
+     * Listener notified of state transitions
+     */
+    public interface Listener {
+        /**
+         * Called when the circuit changes state
+         *
+         * @param from Previous state
+         * @param to New state
+         * @param consecutiveFailures Consecutive failure count at the time of the transition
+         * @param lastFailure Last failure, if any
+         */
+        void onStateChanged(@NonNull State from, @NonNull State to, int consecutiveFailures, @Nullable Throwable lastFailure);
+    }
+
+    @NonNull
+    private final AtomicReference<State> state = new AtomicReference<>(State.CLOSED);
+
+    @NonNull
+    private final AtomicInteger consecutiveFailures = new AtomicInteger();
+
+    @NonNull
+    private final AtomicLong totalFailures = new AtomicLong();
+
+    @NonNull
+    private final AtomicLong skippedDispatches = new AtomicLong();
+
+    /**
+     * Elapsed realtime at which the circuit has been opened
+     */
+    @NonNull
+    private final AtomicLong openedAt = new AtomicLong();
+
+    private volatile int failureThreshold = DEFAULT_FAILURE_THRESHOLD;
+
+    private volatile long cooldownMillis = DEFAULT_COOLDOWN_MILLIS;
+
+    @Nullable
+    private volatile Listener listener;
+
+    /**
+     * Set the number of consecutive failures before opening the circuit
+     *
+     * @param failureThreshold Threshold, must be greater than 0
+     */
+    public void setFailureThreshold(int failureThreshold) {
+        if (failureThreshold <= 0) {
+            throw new IllegalArgumentException("failureThreshold must be greater than 0");
+        }
+        this.failureThreshold = failureThreshold;
+    }
+
+    public int getFailureThreshold() {
+        return failureThreshold;
+    }
+
+    /**
+     * Set how long the circuit stays open before probing the SDK again
+     *
+     * @param cooldownMillis Cooldown in milliseconds
+     */
+    public void setCooldownMillis(long cooldownMillis) {
+        if (cooldownMillis < 0) {
+            throw new IllegalArgumentException("cooldownMillis must not be negative");
+        }
+        this.cooldownMillis = cooldownMillis;
+    }
+
+    public long getCooldownMillis() {
+        return cooldownMillis;
+    }
+
+    /**
+     * Set a listener notified of state transitions
+     *
+     * @param listener The listener or null to remove it
+     */
+    public void setListener(@Nullable Listener listener) {
+        this.listener = listener;
+    }
+
+    @NonNull
+    public State getState() {
+        return state.get();
+    }
+
+    public int getConsecutiveFailures() {
+        return consecutiveFailures.get();
+    }
+
+    public long getTotalFailures() {
+        return totalFailures.get();
+    }
+
+    /**
+     * Get the number of dispatches skipped because the circuit was not closed
+     *
+     * @return The skipped dispatch count
+     */
+    public long getSkippedDispatches() {
+        return skippedDispatches.get();
+    }
+
+    /**
+     * Whether a dispatch may build and send its events.
+     * <p>
+     * When this returns true, the caller must report the outcome with
+     * {@link #onSuccess()} or {@link #onFailure(Throwable)}, or {@link #release()} if nothing was sent.
+     *
+     * @return True if the dispatch should go on
+     */
+    boolean allowRequest() {
+        State current = state.get();
+        if (current == State.CLOSED) {
+            return true;
+        }
+        if (current == State.OPEN
+                && SystemClock.elapsedRealtime() - openedAt.get() >= cooldownMillis
+                && transition(State.OPEN, State.HALF_OPEN, null)) {
+            return true;
+        }
+        skippedDispatches.incrementAndGet();
+        return false;
+    }
+
+    /**
+     * Report that an allowed dispatch sent nothing.
+     * <p>
+     * A probe that sent nothing proves nothing: the circuit opens again, keeping its opening time,
+     * so the next dispatch probes the SDK right away instead of being skipped forever.
+     */
+    void release() {
+        if (state.get() == State.HALF_OPEN) {
+            transition(State.HALF_OPEN, State.OPEN, null);
+        }
+    }
+
+    /**
+     * Report a successful send
+     */
+    void onSuccess() {
+        consecutiveFailures.set(0);
+        if (state.get() == State.HALF_OPEN) {
+            transition(State.HALF_OPEN, State.CLOSED, null);
+        }
+    }
+
+    /**
+     * Report a failed send
+     *
+     * @param error The error thrown by the Piano SDK
+     */
+    void onFailure(@NonNull Throwable error) {
+        totalFailures.incrementAndGet();
+        int failures = consecutiveFailures.incrementAndGet();
+        State current = state.get();
+        if (current == State.HALF_OPEN) {
+            open(State.HALF_OPEN, error);
+        } else if (current == State.CLOSED && failures >= failureThreshold) {
+            open(State.CLOSED, error);
+        }
+    }
+
+    private void open(@NonNull State from, @NonNull Throwable error) {
+        openedAt.set(SystemClock.elapsedRealtime());
+        if (transition(from, State.OPEN, error)) {
+            Log.e("Batch", "PianoDispatcher - Piano SDK failed " + consecutiveFailures.get() +
+                    " times in a row, pausing dispatch for " + cooldownMillis + "ms", error);
+        }
+    }
+
+    private boolean transition(@NonNull State from, @NonNull State to, @Nullable Throwable error) {
+        if (!state.compareAndSet(from, to)) {
+            return false;
+        }
+        Listener l = listener;
+        if (l != null) {
+            l.onStateChanged(from, to, consecutiveFailures.get(), error);
+        }
+        return true;
+    }
+}
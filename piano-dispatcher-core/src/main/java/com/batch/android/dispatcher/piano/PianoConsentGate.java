@@ -0,0 +1,221 @@
+package com.batch.android.dispatcher.piano;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.batch.android.Batch;
+
+import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Consent gate skipping the events Piano would drop because of the visitor privacy mode.
+ * <p>
+ * The privacy mode is read from the Piano SDK when the gate is created and on {@link #refresh()},
+ * never per event: dispatching only reads a cached channel mask. Call {@link #refresh()} or
+ * {@link #onPrivacyModeChanged(String)} whenever your app changes the Piano privacy mode.
+ * <p>
+ * Default rules follow Piano's default privacy configuration: nothing is sent in "optout" mode,
+ * and only On-site Ads events ("publisher.*") are sent in "exempt" mode. Other modes, or an
+ * unknown mode, let every channel through. Adjust them with {@link #setAllowedChannels} if your
+ * Piano privacy modes are customized.
+ */
+public final class PianoConsentGate {
+
+    /**
+     * Reads the current privacy mode from the Piano SDK
+     */
+    public interface PrivacyModeReader {
+        /**
+         * @return The privacy mode (eg: "optin", "optout") or null if unknown
+         */
+        @Nullable
+        String readPrivacyMode();
+    }
+
+    public static final String MODE_OPTOUT = "optout";
+
+    public static final String MODE_EXEMPT = "exempt";
+
+    private static final Batch.EventDispatcher.Type[] TYPES = Batch.EventDispatcher.Type.values();
+
+    @Nullable
+    private final PrivacyModeReader reader;
+
+    /**
+     * Allowed channels per lowercase privacy mode, guarded by this
+     */
+    @NonNull
+    private final Map<String, Integer> rules = new HashMap<>();
+
+    @Nullable
+    private volatile String privacyMode;
+
+    /**
+     * Channels allowed by the current privacy mode
+     */
+    private volatile int allowedChannels = PianoEventFilter.ALL_CHANNELS;
+
+    /**
+     * Skipped Batch events, indexed by type ordinal
+     */
+    @NonNull
+    private final AtomicLongArray skippedCounts = new AtomicLongArray(TYPES.length);
+
+    /**
+     * Constructor
+     *
+     * @param reader Reads the privacy mode on refresh, null if it is only set with {@link #onPrivacyModeChanged(String)}
+     */
+    public PianoConsentGate(@Nullable PrivacyModeReader reader) {
+        this.reader = reader;
+        rules.put(MODE_OPTOUT, 0);
+        rules.put(MODE_EXEMPT, PianoEventFilter.Channel.ON_SITE_ADS.mask);
+        refresh();
+    }
+
+    /**
+     * Set the channels allowed in a privacy mode
+     *
+     * @param mode Piano privacy mode
+     * @param channels Allowed channels, none to drop every event
+     */
+    public void setAllowedChannels(@NonNull String mode, @NonNull PianoEventFilter.Channel... channels) {
+        int mask = 0;
+        for (PianoEventFilter.Channel channel : channels) {
+            mask |= channel.mask;
+        }
+        synchronized (this) {
+            rules.put(mode.toLowerCase(Locale.US), mask);
+            updateAllowedChannels(privacyMode);
+        }
+    }
+
+    /**
+     * Read the privacy mode from the Piano SDK again
+     */
+    public void refresh() {
+        if (reader == null) {
+            return;
+        }
+        String mode;
+        try {
+            mode = reader.readPrivacyMode();
+        } catch (Exception e) {
+            Log.e("Batch", "PianoDispatcher - Could not read the Piano privacy mode", e);
+            mode = null;
+        }
+        onPrivacyModeChanged(mode);
+    }
+
+    /**
+     * Set the current privacy mode, without reading it from the Piano SDK
+     *
+     * @param mode Piano privacy mode, null if unknown
+     */
+    public synchronized void onPrivacyModeChanged(@Nullable String mode) {
+        privacyMode = mode != null ? mode.toLowerCase(Locale.US) : null;
+        updateAllowedChannels(privacyMode);
+    }
+
+    private void updateAllowedChannels(@Nullable String mode) {
+        Integer mask = mode != null ? rules.get(mode) : null;
+        allowedChannels = mask != null ? mask : PianoEventFilter.ALL_CHANNELS;
+    }
+
+    /**
+     * Get the cached privacy mode
+     *
+     * @return The privacy mode or null if unknown
+     */
+    @Nullable
+    public String getPrivacyMode() {
+        return privacyMode;
+    }
+
+    /**
+     * Restrict channels to those allowed by the current privacy mode
+     *
+     * @param type Batch event type
+     * @param channels Channels the event would be sent to
+     * @param count Whether a skipped event is counted
+     * @return The allowed channels, 0 if the event is skipped
+     */
+    int filter(@NonNull Batch.EventDispatcher.Type type, int channels, boolean count) {
+        int allowed = channels & allowedChannels;
+        if (allowed == 0 && count) {
+            skippedCounts.incrementAndGet(type.ordinal());
+        }
+        return allowed;
+    }
+
+    /**
+     * Get the number of Batch events skipped because of the privacy mode
+     *
+     * @param type Batch event type
+     * @return The count
+     */
+    public long getSkippedCount(@NonNull Batch.EventDispatcher.Type type) {
+        return skippedCounts.get(type.ordinal());
+    }
+
+    /**
+     * Get the number of Batch events skipped because of the privacy mode, whatever their type
+     *
+     * @return The count
+     */
+    public long getSkippedCount() {
+        long count = 0;
+        for (int i = 0; i < TYPES.length; i++) {
+            count += skippedCounts.get(i);
+        }
+        return count;
+    }
+
+    /**
+     * Create a reader calling a chain of getters on a Piano SDK instance.
+     * <p>
+     * Methods are resolved by reflection on each read, which only happens on refresh, so the gate
+     * works with any SDK version and simply reports an unknown mode if the API is missing.
+     *
+     * @param target Piano SDK instance provider
+     * @param getters Names of the no-arg methods to call in sequence
+     * @return The reader
+     */
+    @NonNull
+    static PrivacyModeReader reflectiveReader(@NonNull final TargetProvider target, @NonNull final String... getters) {
+        return () -> {
+            Object value = target.get();
+            for (String getter : getters) {
+                if (value == null) {
+                    return null;
+                }
+                Method method;
+                try {
+                    method = value.getClass().getMethod(getter);
+                } catch (NoSuchMethodException e) {
+                    return null;
+                }
+                try {
+                    value = method.invoke(value);
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+            return value != null ? value.toString() : null;
+        };
+    }
+
+    /**
+     * Provides the Piano SDK instance a reflective reader starts from
+     */
+    interface TargetProvider {
+        @Nullable
+        Object get();
+    }
+}
@@ -0,0 +1,171 @@
+package com.batch.android.dispatcher.piano;
+
+import android.content.Context;
+import android.content.pm.InstallSourceInfo;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
+import android.os.Build;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.batch.android.BatchEventDispatcher;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Static context properties appended to every Piano event sent by the dispatcher.
+ * <p>
+ * The block is computed once, usually by the registrar, then shared by all events: the legacy SDK
+ * receives it as a map fragment copied into each event, and the Kotlin SDK as prebuilt properties.
+ * Note: the properties must be declared in your Piano Data Model.
+ */
+public final class PianoContextProperties {
+
+    public static final String APP_VERSION = "batch_app_version";
+    public static final String DISPATCHER_NAME = "batch_dispatcher_name";
+    public static final String DISPATCHER_VERSION = "batch_dispatcher_version";
+    public static final String SDK_VERSION = "batch_sdk_version";
+    public static final String INSTALL_CHANNEL = "batch_install_channel";
+
+    @NonNull
+    private final Map<String, Object> properties;
+
+    /**
+     * UTF-8 size of the property names and values, counted by {@link PianoPayloadBudget}
+     */
+    final int utf8Size;
+
+    /**
+     * Lowered form of this block, cached by the dispatcher implementation
+     */
+    @Nullable
+    volatile Object lowered;
+
+    private PianoContextProperties(@NonNull Map<String, Object> properties) {
+        this.properties = Collections.unmodifiableMap(properties);
+        int size = 0;
+        for (Map.Entry<String, Object> property : properties.entrySet()) {
+            size += PianoPayloadBudget.utf8Length(property.getKey())
+                    + PianoPayloadBudget.utf8Length(String.valueOf(property.getValue()));
+        }
+        this.utf8Size = size;
+    }
+
+    /**
+     * Get the context properties
+     *
+     * @return An unmodifiable map
+     */
+    @NonNull
+    public Map<String, Object> getProperties() {
+        return properties;
+    }
+
+    public int size() {
+        return properties.size();
+    }
+
+    /**
+     * Create a builder holding the default context of an app: app version, dispatcher name and version,
+     * Batch SDK version and install channel, when available.
+     *
+     * @param context Application context
+     * @param dispatcher The dispatcher the properties are attached to
+     * @return The builder, to add app specific properties
+     */
+    @NonNull
+    public static Builder collect(@NonNull Context context, @NonNull BatchEventDispatcher dispatcher) {
+        Builder builder = new Builder()
+                .put(DISPATCHER_NAME, dispatcher.getName())
+                .put(DISPATCHER_VERSION, dispatcher.getVersion())
+                .put(SDK_VERSION, getBatchSdkVersion())
+                .put(INSTALL_CHANNEL, getInstallChannel(context));
+        try {
+            PackageInfo packageInfo = context.getPackageManager().getPackageInfo(context.getPackageName(), 0);
+            builder.put(APP_VERSION, packageInfo.versionName);
+        } catch (PackageManager.NameNotFoundException e) {
+            // Not sent
+        }
+        return builder;
+    }
+
+    /**
+     * Get the Batch SDK version, not part of its public API
+     *
+     * @return The version or null if it could not be read
+     */
+    @Nullable
+    private static String getBatchSdkVersion() {
+        try {
+            Object version = Class.forName("com.batch.android.core.Parameters").getField("SDK_VERSION").get(null);
+            return version != null ? version.toString() : null;
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    /**
+     * Get the package name of the app that installed this app (eg: "com.android.vending")
+     *
+     * @param context Application context
+     * @return The installer or null if unknown
+     */
+    @Nullable
+    @SuppressWarnings("deprecation")
+    private static String getInstallChannel(@NonNull Context context) {
+        try {
+            PackageManager packageManager = context.getPackageManager();
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.R) {
+                InstallSourceInfo info = packageManager.getInstallSourceInfo(context.getPackageName());
+                return info.getInstallingPackageName();
+            }
+            return packageManager.getInstallerPackageName(context.getPackageName());
+        } catch (Exception e) {
+            Log.w("Batch", "PianoDispatcher - Could not read the install channel", e);
+            return null;
+        }
+    }
+
+    /**
+     * Builder of a context property block
+     */
+    public static final class Builder {
+
+        @NonNull
+        private final Map<String, Object> properties = new HashMap<>();
+
+        /**
+         * Add a property
+         *
+         * @param name Piano property name
+         * @param value String, Boolean, Integer, Long or Double value, null to skip the property
+         * @return This builder
+         */
+        @NonNull
+        public Builder put(@NonNull String name, @Nullable Object value) {
+            if (value == null || (value instanceof String && ((String) value).isEmpty())) {
+                return this;
+            }
+            if (!(value instanceof String || value instanceof Boolean || value instanceof Integer
+                    || value instanceof Long || value instanceof Double)) {
+                throw new IllegalArgumentException("Unsupported property value: " + value);
+            }
+            properties.put(name, value);
+            return this;
+        }
+
+        /**
+         * Build the immutable block
+         *
+         * @return The context properties
+         */
+        @NonNull
+        public PianoContextProperties build() {
+            return new PianoContextProperties(new HashMap<>(properties));
+        }
+    }
+}
@@ -0,0 +1,360 @@
+package com.batch.android.dispatcher.piano;
+
+import android.content.Context;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.batch.android.Batch;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Piano Data Model, compiled from its JSON export to validate custom events locally.
+ * <p>
+ * Piano rejects undeclared custom events and properties server-side, after the network round trip.
+ * With a data model, the dispatcher drops undeclared custom events and properties before sending them,
+ * or renames them when the model maps them to declared names. Names are resolved once when the model
+ * is set, so dispatching only reads precomputed names.
+ * <p>
+ * Expected format:
+ * <pre>
+ * {
+ *   "events": ["batch_notification_open", {"name": "batch_in_app_show"}],
+ *   "properties": ["src_campaign", {"key": "batch_tracking_id", "type": "string"}, "event_time"],
+ *   "renames": {"batch_event_time": "event_time"}
+ * }
+ * </pre>
+ * Rename targets must be declared too, otherwise the renamed event or property is dropped.
+ * <p>
+ * The data model only applies to custom events and their context properties. On-site Ads events
+ * and properties are standard Piano ones: they are never validated, and keep every context property
+ * and the default event time property.
+ */
+public final class PianoDataModel {
+
+    private static final Batch.EventDispatcher.Type[] TYPES = Batch.EventDispatcher.Type.values();
+
+    /**
+     * Names of the custom event properties, null when a property must not be sent
+     */
+    static final class Keys {
+
+        static final Keys DEFAULT = new Keys(
+                AbstractPianoDispatcher.CAMPAIGN,
+                AbstractPianoDispatcher.MEDIUM,
+                AbstractPianoDispatcher.SOURCE,
+                AbstractPianoDispatcher.SOURCE_FORCE,
+                AbstractPianoDispatcher.CONTENT,
+                AbstractPianoDispatcher.BATCH_TRACKING_ID,
+                AbstractPianoDispatcher.BATCH_WEBVIEW_ANALYTICS_ID,
+                AbstractPianoDispatcher.EVENT_TIME);
+
+        @Nullable
+        final String campaign;
+
+        @Nullable
+        final String medium;
+
+        @Nullable
+        final String source;
+
+        @Nullable
+        final String sourceForce;
+
+        @Nullable
+        final String content;
+
+        @Nullable
+        final String trackingId;
+
+        @Nullable
+        final String webViewAnalyticsId;
+
+        @Nullable
+        final String eventTime;
+
+        Keys(@Nullable String campaign,
+             @Nullable String medium,
+             @Nullable String source,
+             @Nullable String sourceForce,
+             @Nullable String content,
+             @Nullable String trackingId,
+             @Nullable String webViewAnalyticsId,
+             @Nullable String eventTime) {
+            this.campaign = campaign;
+            this.medium = medium;
+            this.source = source;
+            this.sourceForce = sourceForce;
+            this.content = content;
+            this.trackingId = trackingId;
+            this.webViewAnalyticsId = webViewAnalyticsId;
+            this.eventTime = eventTime;
+        }
+    }
+
+    /**
+     * A data model bound to a dispatcher: event names and context properties resolved once
+     */
+    static final class Binding {
+
+        @NonNull
+        final PianoDataModel model;
+
+        /**
+         * Custom event names indexed by Batch event type ordinal, null when the event is dropped
+         */
+        @NonNull
+        final String[] eventNames;
+
+        @Nullable
+        final PianoContextProperties contextProperties;
+
+        /**
+         * Number of context properties left out of {@link #contextProperties} because they are not declared
+         */
+        final int droppedContextPropertyCount;
+
+        Binding(@NonNull PianoDataModel model,
+                @NonNull String[] eventNames,
+                @Nullable PianoContextProperties contextProperties,
+                int droppedContextPropertyCount) {
+            this.model = model;
+            this.eventNames = eventNames;
+            this.contextProperties = contextProperties;
+            this.droppedContextPropertyCount = droppedContextPropertyCount;
+        }
+    }
+
+    @NonNull
+    private final Set<String> events;
+
+    @NonNull
+    private final Set<String> properties;
+
+    @NonNull
+    private final Map<String, String> renames;
+
+    /**
+     * Compiled custom event property names
+     */
+    @NonNull
+    final Keys keys;
+
+    @NonNull
+    private final AtomicLongArray droppedEvents = new AtomicLongArray(TYPES.length);
+
+    @NonNull
+    private final AtomicLong droppedProperties = new AtomicLong();
+
+    private PianoDataModel(@NonNull Set<String> events,
+                           @NonNull Set<String> properties,
+                           @NonNull Map<String, String> renames) {
+        this.events = events;
+        this.properties = properties;
+        this.renames = renames;
+        this.keys = new Keys(
+                resolveProperty(AbstractPianoDispatcher.CAMPAIGN),
+                resolveProperty(AbstractPianoDispatcher.MEDIUM),
+                resolveProperty(AbstractPianoDispatcher.SOURCE),
+                resolveProperty(AbstractPianoDispatcher.SOURCE_FORCE),
+                resolveProperty(AbstractPianoDispatcher.CONTENT),
+                resolveProperty(AbstractPianoDispatcher.BATCH_TRACKING_ID),
+                resolveProperty(AbstractPianoDispatcher.BATCH_WEBVIEW_ANALYTICS_ID),
+                resolveProperty(AbstractPianoDispatcher.EVENT_TIME));
+    }
+
+    /**
+     * Compile a data model from its JSON export
+     *
+     * @param json The data model
+     * @return The compiled data model
+     * @throws JSONException if the JSON is invalid
+     */
+    @NonNull
+    public static PianoDataModel parse(@NonNull String json) throws JSONException {
+        JSONObject root = new JSONObject(json);
+        Set<String> events = readNames(root.optJSONArray("events"), "name");
+        Set<String> properties = readNames(root.optJSONArray("properties"), "key");
+        Map<String, String> renames = new HashMap<>();
+        JSONObject renamesObject = root.optJSONObject("renames");
+        if (renamesObject != null) {
+            JSONArray names = renamesObject.names();
+            if (names != null) {
+                for (int i = 0; i < names.length(); i++) {
+                    String name = names.getString(i);
+                    renames.put(name, renamesObject.getString(name));
+                }
+            }
+        }
+        return new PianoDataModel(events, properties, renames);
+    }
+
+    /**
+     * Compile a data model from a JSON asset
+     *
+     * @param context Application context
+     * @param assetName Name of the asset
+     * @return The compiled data model
+     * @throws IOException if the asset can't be read
+     * @throws JSONException if the JSON is invalid
+     */
+    @NonNull
+    public static PianoDataModel fromAsset(@NonNull Context context, @NonNull String assetName) throws IOException, JSONException {
+        try (InputStream input = context.getAssets().open(assetName)) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = input.read(buffer)) != -1) {
+                bytes.write(buffer, 0, read);
+            }
+            return parse(new String(bytes.toByteArray(), StandardCharsets.UTF_8));
+        }
+    }
+
+    @NonNull
+    private static Set<String> readNames(@Nullable JSONArray array, @NonNull String nameKey) throws JSONException {
+        Set<String> names = new HashSet<>();
+        if (array == null) {
+            return names;
+        }
+        for (int i = 0; i < array.length(); i++) {
+            Object entry = array.get(i);
+            if (entry instanceof JSONObject) {
+                JSONObject object = (JSONObject) entry;
+                String name = object.has(nameKey) ? object.getString(nameKey) : object.optString("name", null);
+                if (name != null) {
+                    names.add(name);
+                }
+            } else if (entry instanceof String) {
+                names.add((String) entry);
+            }
+        }
+        return names;
+    }
+
+    /**
+     * Resolve a custom event name
+     *
+     * @param name Event name sent by the dispatcher
+     * @return The declared name to send, or null if neither the event nor its rename target is declared
+     */
+    @Nullable
+    public String resolveEvent(@NonNull String name) {
+        String renamed = renames.get(name);
+        if (renamed != null) {
+            return events.contains(renamed) ? renamed : null;
+        }
+        return events.contains(name) ? name : null;
+    }
+
+    /**
+     * Resolve a custom event property name
+     *
+     * @param key Property name sent by the dispatcher
+     * @return The declared name to send, or null if neither the property nor its rename target is declared
+     */
+    @Nullable
+    public String resolveProperty(@NonNull String key) {
+        String renamed = renames.get(key);
+        if (renamed != null) {
+            return properties.contains(renamed) ? renamed : null;
+        }
+        return properties.contains(key) ? key : null;
+    }
+
+    /**
+     * Get the names of the dispatcher properties that are not declared and will never be sent
+     *
+     * @return The property names
+     */
+    @NonNull
+    public List<String> getDroppedPropertyNames() {
+        List<String> dropped = new ArrayList<>();
+        String[] names = {
+                AbstractPianoDispatcher.CAMPAIGN, AbstractPianoDispatcher.MEDIUM, AbstractPianoDispatcher.SOURCE,
+                AbstractPianoDispatcher.SOURCE_FORCE, AbstractPianoDispatcher.CONTENT, AbstractPianoDispatcher.BATCH_TRACKING_ID,
+                AbstractPianoDispatcher.BATCH_WEBVIEW_ANALYTICS_ID, AbstractPianoDispatcher.EVENT_TIME
+        };
+        for (String name : names) {
+            if (resolveProperty(name) == null) {
+                dropped.add(name);
+            }
+        }
+        return Collections.unmodifiableList(dropped);
+    }
+
+    /**
+     * Bind this data model to a dispatcher
+     *
+     * @param dispatcher The dispatcher, giving the custom event names
+     * @param contextProperties The dispatcher's context properties, if any
+     * @return The binding
+     */
+    @NonNull
+    Binding bind(@NonNull AbstractPianoDispatcher dispatcher, @Nullable PianoContextProperties contextProperties) {
+        String[] eventNames = new String[TYPES.length];
+        for (Batch.EventDispatcher.Type type : TYPES) {
+            eventNames[type.ordinal()] = resolveEvent(dispatcher.getPianoEventName(type));
+        }
+        PianoContextProperties validatedContext = null;
+        int droppedContextProperties = 0;
+        if (contextProperties != null) {
+            PianoContextProperties.Builder builder = new PianoContextProperties.Builder();
+            for (Map.Entry<String, Object> property : contextProperties.getProperties().entrySet()) {
+                String key = resolveProperty(property.getKey());
+                if (key != null) {
+                    builder.put(key, property.getValue());
+                } else {
+                    droppedContextProperties++;
+                }
+            }
+            validatedContext = builder.build();
+        }
+        return new Binding(this, eventNames, validatedContext, droppedContextProperties);
+    }
+
+    void onEventDropped(@NonNull Batch.EventDispatcher.Type type) {
+        droppedEvents.incrementAndGet(type.ordinal());
+    }
+
+    void onPropertiesDropped(int count) {
+        droppedProperties.addAndGet(count);
+    }
+
+    /**
+     * Get the number of custom events dropped because they are not declared
+     *
+     * @param type Batch event type
+     * @return The count
+     */
+    public long getDroppedEventCount(@NonNull Batch.EventDispatcher.Type type) {
+        return droppedEvents.get(type.ordinal());
+    }
+
+    /**
+     * Get the number of properties dropped from the sent custom events because they are not declared,
+     * context properties included
+     *
+     * @return The count
+     */
+    public long getDroppedPropertyCount() {
+        return droppedProperties.get();
+    }
+}
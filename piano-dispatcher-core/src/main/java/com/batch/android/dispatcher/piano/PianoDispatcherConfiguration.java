@@ -0,0 +1,265 @@
+package com.batch.android.dispatcher.piano;
+
+import android.os.Bundle;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * Configuration applied by the registrars to the dispatcher they create.
+ * <p>
+ * It is read from {@link #GENERATED_CLASS_NAME} when the app generates it at build time
+ * with the `com.batch.android.piano-dispatcher` Gradle plugin, which skips the meta-data IPC
+ * on startup. Otherwise it is read from Android's manifest meta-data.
+ * <p>
+ * Generated classes extend this class and override the defaults in their constructor.
+ */
+public class PianoDispatcherConfiguration {
+
+    /**
+     * Name of the configuration class generated at build time
+     */
+    public static final String GENERATED_CLASS_NAME = "com.batch.android.dispatcher.piano.GeneratedPianoDispatcherConfiguration";
+
+    /**
+     * Meta-data name to enable custom events
+     */
+    private static final String CUSTOM_EVENT_ENABLED_METADATA = "com.batch.android.dispatcher.piano.enable_custom_events";
+
+    /**
+     * Meta-data name to enable On-Site Ads events
+     */
+    private static final String ONSITE_AD_EVENT_ENABLED_METADATA = "com.batch.android.dispatcher.piano.enable_onsite_ad_events";
+
+    /**
+     * Meta-data name to enable utm tracking
+     */
+    private static final String UTM_TRACKING_ENABLED_METADATA = "com.batch.android.dispatcher.piano.enable_utm_tracking";
+
+    /**
+     * Meta-data name to send events to both the legacy and the new Piano SDKs
+     */
+    private static final String DUAL_DISPATCH_ENABLED_METADATA = "com.batch.android.dispatcher.piano.enable_dual_dispatch";
+
+    /**
+     * Meta-data name to set the event filter rules, see {@link PianoEventFilter#parse(String)}
+     */
+    private static final String FILTER_RULES_METADATA = "com.batch.android.dispatcher.piano.filter_rules";
+
+    /**
+     * Meta-data name to set the flight recorder size (0 = disabled)
+     */
+    private static final String FLIGHT_RECORDER_SIZE_METADATA = "com.batch.android.dispatcher.piano.flight_recorder_size";
+
+    /**
+     * Meta-data name to defer low-priority events to a WorkManager job
+     */
+    private static final String DEFERRED_DELIVERY_ENABLED_METADATA = "com.batch.android.dispatcher.piano.enable_deferred_delivery";
+
+    /**
+     * Meta-data name to set the delay before replaying deferred events, in minutes
+     */
+    private static final String DEFERRED_DELIVERY_DELAY_METADATA = "com.batch.android.dispatcher.piano.deferred_delivery_delay_minutes";
+
+    /**
+     * Meta-data name to set the main thread dispatch budget in microseconds (0 = watchdog disabled)
+     */
+    private static final String MAIN_THREAD_BUDGET_METADATA = "com.batch.android.dispatcher.piano.main_thread_budget_us";
+
+    /**
+     * Meta-data name to set the maximum size of an attribution value in bytes (0 = no limit)
+     */
+    private static final String MAX_PROPERTY_BYTES_METADATA = "com.batch.android.dispatcher.piano.max_property_bytes";
+
+    /**
+     * Meta-data name to set the maximum size of an event in bytes (0 = no limit)
+     */
+    private static final String MAX_EVENT_BYTES_METADATA = "com.batch.android.dispatcher.piano.max_event_bytes";
+
+    /**
+     * Meta-data name to skip the events dropped by the Piano privacy mode
+     */
+    private static final String CONSENT_GATE_ENABLED_METADATA = "com.batch.android.dispatcher.piano.enable_consent_gate";
+
+    /**
+     * Meta-data name to append static context properties to every event
+     */
+    private static final String CONTEXT_PROPERTIES_ENABLED_METADATA = "com.batch.android.dispatcher.piano.enable_context_properties";
+
+    /**
+     * Meta-data name of the asset holding the Piano Data Model export
+     */
+    private static final String DATA_MODEL_ASSET_METADATA = "com.batch.android.dispatcher.piano.data_model_asset";
+
+    /**
+     * Meta-data name to set the number of sharded dispatch workers (0 = dispatch on the caller's thread)
+     */
+    private static final String SHARD_COUNT_METADATA = "com.batch.android.dispatcher.piano.sharded_dispatch_shards";
+
+    /**
+     * Meta-data name to set the capacity of each sharded dispatch worker queue
+     */
+    private static final String SHARD_QUEUE_CAPACITY_METADATA = "com.batch.android.dispatcher.piano.sharded_dispatch_queue_capacity";
+
+    /**
+     * Meta-data name to degrade analytics fidelity under load, with the default thresholds
+     */
+    private static final String LOAD_SHEDDING_ENABLED_METADATA = "com.batch.android.dispatcher.piano.enable_load_shedding";
+
+    protected boolean customEventsEnabled = false;
+
+    protected boolean onSiteAdsEventsEnabled = true;
+
+    protected boolean utmTrackingEnabled = true;
+
+    protected boolean dualDispatchEnabled = false;
+
+    @Nullable
+    protected String filterRules = null;
+
+    protected int flightRecorderSize = 0;
+
+    protected boolean deferredDeliveryEnabled = false;
+
+    protected int deferredDeliveryDelayMinutes = (int) DeferredEventChannel.DEFAULT_DELAY_MINUTES;
+
+    protected int mainThreadBudgetMicros = 0;
+
+    protected int maxPropertyBytes = 0;
+
+    protected int maxEventBytes = 0;
+
+    protected boolean consentGateEnabled = false;
+
+    protected boolean contextPropertiesEnabled = false;
+
+    @Nullable
+    protected String dataModelAsset = null;
+
+    protected int shardCount = 0;
+
+    protected int shardQueueCapacity = ShardedDispatchExecutor.DEFAULT_QUEUE_CAPACITY;
+
+    protected boolean loadSheddingEnabled = false;
+
+    public boolean isCustomEventsEnabled() {
+        return customEventsEnabled;
+    }
+
+    public boolean isOnSiteAdsEventsEnabled() {
+        return onSiteAdsEventsEnabled;
+    }
+
+    public boolean isUTMTrackingEnabled() {
+        return utmTrackingEnabled;
+    }
+
+    public boolean isDualDispatchEnabled() {
+        return dualDispatchEnabled;
+    }
+
+    @Nullable
+    public String getFilterRules() {
+        return filterRules;
+    }
+
+    public int getFlightRecorderSize() {
+        return flightRecorderSize;
+    }
+
+    public boolean isDeferredDeliveryEnabled() {
+        return deferredDeliveryEnabled;
+    }
+
+    public int getDeferredDeliveryDelayMinutes() {
+        return deferredDeliveryDelayMinutes;
+    }
+
+    public int getMainThreadBudgetMicros() {
+        return mainThreadBudgetMicros;
+    }
+
+    public int getMaxPropertyBytes() {
+        return maxPropertyBytes;
+    }
+
+    public int getMaxEventBytes() {
+        return maxEventBytes;
+    }
+
+    public boolean isConsentGateEnabled() {
+        return consentGateEnabled;
+    }
+
+    public boolean isContextPropertiesEnabled() {
+        return contextPropertiesEnabled;
+    }
+
+    @Nullable
+    public String getDataModelAsset() {
+        return dataModelAsset;
+    }
+
+    public int getShardCount() {
+        return shardCount;
+    }
+
+    public int getShardQueueCapacity() {
+        return shardQueueCapacity;
+    }
+
+    public boolean isLoadSheddingEnabled() {
+        return loadSheddingEnabled;
+    }
+
+    /**
+     * Load the configuration generated at build time
+     *
+     * @return The generated configuration or null if the app does not have one
+     */
+    @Nullable
+    static PianoDispatcherConfiguration loadGenerated() {
+        try {
+            Class<?> generatedClass = Class.forName(GENERATED_CLASS_NAME);
+            return (PianoDispatcherConfiguration) generatedClass.getDeclaredConstructor().newInstance();
+        } catch (ClassNotFoundException e) {
+            return null;
+        } catch (Exception e) {
+            Log.e("Batch", "PianoDispatcher - Could not load the generated configuration, falling back on meta-data", e);
+            return null;
+        }
+    }
+
+    /**
+     * Read the configuration from Android's manifest meta-data
+     *
+     * @param metaData Application meta-data, if any
+     * @return The configuration, with default values for missing meta-data
+     */
+    @NonNull
+    static PianoDispatcherConfiguration fromMetaData(@Nullable Bundle metaData) {
+        PianoDispatcherConfiguration configuration = new PianoDispatcherConfiguration();
+        if (metaData == null) {
+            return configuration;
+        }
+        configuration.customEventsEnabled = metaData.getBoolean(CUSTOM_EVENT_ENABLED_METADATA, configuration.customEventsEnabled);
+        configuration.onSiteAdsEventsEnabled = metaData.getBoolean(ONSITE_AD_EVENT_ENABLED_METADATA, configuration.onSiteAdsEventsEnabled);
+        configuration.utmTrackingEnabled = metaData.getBoolean(UTM_TRACKING_ENABLED_METADATA, configuration.utmTrackingEnabled);
+        configuration.dualDispatchEnabled = metaData.getBoolean(DUAL_DISPATCH_ENABLED_METADATA, configuration.dualDispatchEnabled);
+        configuration.filterRules = metaData.getString(FILTER_RULES_METADATA);
+        configuration.flightRecorderSize = metaData.getInt(FLIGHT_RECORDER_SIZE_METADATA, configuration.flightRecorderSize);
+        configuration.deferredDeliveryEnabled = metaData.getBoolean(DEFERRED_DELIVERY_ENABLED_METADATA, configuration.deferredDeliveryEnabled);
+        configuration.deferredDeliveryDelayMinutes = metaData.getInt(DEFERRED_DELIVERY_DELAY_METADATA, configuration.deferredDeliveryDelayMinutes);
+        configuration.mainThreadBudgetMicros = metaData.getInt(MAIN_THREAD_BUDGET_METADATA, configuration.mainThreadBudgetMicros);
+        configuration.maxPropertyBytes = metaData.getInt(MAX_PROPERTY_BYTES_METADATA, configuration.maxPropertyBytes);
+        configuration.maxEventBytes = metaData.getInt(MAX_EVENT_BYTES_METADATA, configuration.maxEventBytes);
+        configuration.consentGateEnabled = metaData.getBoolean(CONSENT_GATE_ENABLED_METADATA, configuration.consentGateEnabled);
+        configuration.contextPropertiesEnabled = metaData.getBoolean(CONTEXT_PROPERTIES_ENABLED_METADATA, configuration.contextPropertiesEnabled);
+        configuration.dataModelAsset = metaData.getString(DATA_MODEL_ASSET_METADATA);
+        configuration.shardCount = metaData.getInt(SHARD_COUNT_METADATA, configuration.shardCount);
+        configuration.shardQueueCapacity = metaData.getInt(SHARD_QUEUE_CAPACITY_METADATA, configuration.shardQueueCapacity);
+        configuration.loadSheddingEnabled = metaData.getBoolean(LOAD_SHEDDING_ENABLED_METADATA, configuration.loadSheddingEnabled);
+        return configuration;
+    }
+}
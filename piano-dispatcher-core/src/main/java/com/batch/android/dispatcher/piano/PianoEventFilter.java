@@ -0,0 +1,302 @@
+package com.batch.android.dispatcher.piano;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.batch.android.Batch;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Precompiled rules dropping Batch events before any parsing.
+ * <p>
+ * Rules are compiled into a type × channel bitmask and a prefix trie over tracking ids, so a
+ * rejected event costs a few array reads. Build it with {@link Builder} or parse it from the
+ * manifest meta-data syntax with {@link #parse(String)}.
+ */
+public final class PianoEventFilter {
+
+    /**
+     * Output channels of the dispatcher
+     */
+    public enum Channel {
+        ON_SITE_ADS(1),
+        CUSTOM(2);
+
+        final int mask;
+
+        Channel(int mask) {
+            this.mask = mask;
+        }
+    }
+
+    /**
+     * Mask of every channel
+     */
+    static final int ALL_CHANNELS = 3;
+
+    /**
+     * Allowed channels, indexed by Batch event type ordinal
+     */
+    @NonNull
+    private final int[] allowedChannels;
+
+    /**
+     * Root of the rejected tracking id prefixes trie, null if there is no prefix rule
+     */
+    @Nullable
+    private final TrieNode rejectedPrefixes;
+
+    @NonNull
+    private final AtomicLong rejectedCount = new AtomicLong();
+
+    private PianoEventFilter(@NonNull int[] allowedChannels, @Nullable TrieNode rejectedPrefixes) {
+        this.allowedChannels = allowedChannels;
+        this.rejectedPrefixes = rejectedPrefixes;
+    }
+
+    /**
+     * Get the channels allowed for a Batch event type
+     *
+     * @param type Batch event type
+     * @return A mask of {@link Channel}
+     */
+    int getAllowedChannels(@NonNull Batch.EventDispatcher.Type type) {
+        return allowedChannels[type.ordinal()];
+    }
+
+    /**
+     * Whether events with this tracking id must be dropped
+     *
+     * @param trackingId Batch tracking id
+     * @return True if the tracking id starts with a rejected prefix
+     */
+    boolean rejectsTrackingId(@Nullable String trackingId) {
+        TrieNode node = rejectedPrefixes;
+        if (node == null || trackingId == null) {
+            return false;
+        }
+        for (int i = 0, length = trackingId.length(); i < length; i++) {
+            node = node.child(trackingId.charAt(i));
+            if (node == null) {
+                return false;
+            }
+            if (node.terminal) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Count an event rejected by this filter
+     */
+    void onRejected() {
+        rejectedCount.incrementAndGet();
+    }
+
+    /**
+     * Get the number of Batch events entirely dropped by this filter
+     *
+     * @return The rejected event count
+     */
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+
+    /**
+     * Parse filter rules from their meta-data representation.
+     * <p>
+     * Rules are separated by ';'. Supported rules:
+     * <ul>
+     *     <li>{@code drop:<TYPE>:<onsite|custom|all>} drops a channel for a Batch event type,
+     *     eg: {@code drop:MESSAGING_CLOSE:custom}. Use {@code *} as type to match every type.</li>
+     *     <li>{@code drop_tracking_id:<prefix>} drops every event whose tracking id starts with the prefix,
+     *     eg: {@code drop_tracking_id:test_}</li>
+     * </ul>
+     * Invalid rules are ignored and logged.
+     *
+     * @param rules Rules
+     * @return The compiled filter
+     */
+    @NonNull
+    public static PianoEventFilter parse(@NonNull String rules) {
+        Builder builder = new Builder();
+        for (String rule : rules.split(";")) {
+            rule = rule.trim();
+            if (rule.isEmpty()) {
+                continue;
+            }
+            String[] parts = rule.split(":", 3);
+            try {
+                if (parts.length == 3 && "drop".equals(parts[0])) {
+                    List<Channel> channels = parseChannels(parts[2].trim());
+                    String type = parts[1].trim();
+                    for (Channel channel : channels) {
+                        if ("*".equals(type)) {
+                            for (Batch.EventDispatcher.Type t : Batch.EventDispatcher.Type.values()) {
+                                builder.drop(t, channel);
+                            }
+                        } else {
+                            builder.drop(Batch.EventDispatcher.Type.valueOf(type), channel);
+                        }
+                    }
+                } else if (parts.length >= 2 && "drop_tracking_id".equals(parts[0])) {
+                    builder.dropTrackingIdPrefix(rule.substring("drop_tracking_id:".length()));
+                } else {
+                    throw new IllegalArgumentException("Unknown rule");
+                }
+            } catch (IllegalArgumentException e) {
+                Log.e("Batch", "PianoDispatcher - Ignoring invalid filter rule: " + rule);
+            }
+        }
+        return builder.build();
+    }
+
+    @NonNull
+    private static List<Channel> parseChannels(@NonNull String value) {
+        switch (value) {
+            case "onsite":
+                return Arrays.asList(Channel.ON_SITE_ADS);
+            case "custom":
+                return Arrays.asList(Channel.CUSTOM);
+            case "all":
+                return Arrays.asList(Channel.values());
+            default:
+                throw new IllegalArgumentException("Unknown channel");
+        }
+    }
+
+    /**
+     * Builder of {@link PianoEventFilter}
+     */
+    public static final class Builder {
+
+        @NonNull
+        private final int[] allowedChannels;
+
+        @NonNull
+        private final List<String> prefixes = new ArrayList<>();
+
+        public Builder() {
+            allowedChannels = new int[Batch.EventDispatcher.Type.values().length];
+            Arrays.fill(allowedChannels, ALL_CHANNELS);
+        }
+
+        /**
+         * Drop a channel for a Batch event type
+         *
+         * @param type Batch event type
+         * @param channel Channel to drop
+         * @return This builder
+         */
+        @NonNull
+        public Builder drop(@NonNull Batch.EventDispatcher.Type type, @NonNull Channel channel) {
+            allowedChannels[type.ordinal()] &= ~channel.mask;
+            return this;
+        }
+
+        /**
+         * Drop every event whose tracking id starts with a prefix
+         *
+         * @param prefix Tracking id prefix, must not be empty
+         * @return This builder
+         */
+        @NonNull
+        public Builder dropTrackingIdPrefix(@NonNull String prefix) {
+            if (prefix.isEmpty()) {
+                throw new IllegalArgumentException("prefix must not be empty");
+            }
+            prefixes.add(prefix);
+            return this;
+        }
+
+        /**
+         * Compile the rules
+         *
+         * @return The filter
+         */
+        @NonNull
+        public PianoEventFilter build() {
+            TrieNode.Mutable root = null;
+            if (!prefixes.isEmpty()) {
+                root = new TrieNode.Mutable();
+                for (String prefix : prefixes) {
+                    TrieNode.Mutable node = root;
+                    for (int i = 0; i < prefix.length(); i++) {
+                        node = node.child(prefix.charAt(i));
+                    }
+                    node.terminal = true;
+                }
+            }
+            return new PianoEventFilter(allowedChannels.clone(), root != null ? root.compile() : null);
+        }
+    }
+
+    /**
+     * Compiled trie node, children are looked up with a binary search on sorted labels
+     */
+    private static final class TrieNode {
+
+        @NonNull
+        private final char[] labels;
+
+        @NonNull
+        private final TrieNode[] children;
+
+        private final boolean terminal;
+
+        private TrieNode(@NonNull char[] labels, @NonNull TrieNode[] children, boolean terminal) {
+            this.labels = labels;
+            this.children = children;
+            this.terminal = terminal;
+        }
+
+        @Nullable
+        TrieNode child(char label) {
+            int index = Arrays.binarySearch(labels, label);
+            return index >= 0 ? children[index] : null;
+        }
+
+        /**
+         * Trie node used while building
+         */
+        private static final class Mutable {
+
+            @NonNull
+            private final TreeMap<Character, Mutable> children = new TreeMap<>();
+
+            private boolean terminal;
+
+            @NonNull
+            Mutable child(char label) {
+                Mutable child = children.get(label);
+                if (child == null) {
+                    child = new Mutable();
+                    children.put(label, child);
+                }
+                return child;
+            }
+
+            @NonNull
+            TrieNode compile() {
+                char[] labels = new char[children.size()];
+                TrieNode[] compiled = new TrieNode[children.size()];
+                int i = 0;
+                for (Map.Entry<Character, Mutable> entry : children.entrySet()) {
+                    labels[i] = entry.getKey();
+                    compiled[i] = entry.getValue().compile();
+                    i++;
+                }
+                return new TrieNode(labels, compiled, terminal);
+            }
+        }
+    }
+}
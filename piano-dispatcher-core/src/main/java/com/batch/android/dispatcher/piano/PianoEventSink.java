@@ -0,0 +1,25 @@
+package com.batch.android.dispatcher.piano;
+
+import androidx.annotation.NonNull;
+
+import java.util.List;
+
+/**
+ * Destination of the events mapped by the dispatcher.
+ * <p>
+ * Dispatchers send to the Piano SDK they have been built for by default. Setting a sink with
+ * {@link AbstractPianoDispatcher#setEventSink(PianoEventSink)} redirects the mapped events,
+ * for instance to your own pipeline, to a file or to memory for tests and benchmarks.
+ * <p>
+ * Sinks may be called from several threads. A {@link RuntimeException} thrown by a sink
+ * counts as a failed send for the dispatcher's circuit breaker.
+ */
+public interface PianoEventSink {
+
+    /**
+     * Send events
+     *
+     * @param events Events mapped from a single Batch event, or from a whole buffer, in order
+     */
+    void send(@NonNull List<BatchPianoEvent> events);
+}
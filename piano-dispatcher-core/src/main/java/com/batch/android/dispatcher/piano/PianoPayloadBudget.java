@@ -0,0 +1,321 @@
+package com.batch.android.dispatcher.piano;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Byte budget enforced on the mapped Piano events.
+ * <p>
+ * Attribution values come from deeplinks and custom payloads and may be arbitrarily long.
+ * Each free-form value (campaign, medium, source, content) is truncated to a maximum UTF-8 size,
+ * then content, campaign, medium and source are shortened in this order until the whole event fits.
+ * A value truncated down to an empty string is not sent at all.
+ * Identifiers (tracking id, webview analytics id) are never truncated, and context properties
+ * and property names always count towards the event size.
+ * <p>
+ * Sizes are computed from the UTF-16 chars without encoding anything: strings that obviously fit
+ * are not even scanned, and truncation never splits a surrogate pair.
+ * <p>
+ * The size of every emitted event is recorded in a histogram whose buckets are powers of two
+ * in bytes: bucket n counts sizes in [2^(n-1), 2^n) bytes.
+ */
+public final class PianoPayloadBudget {
+
+    /**
+     * Default maximum size of a property value, in bytes
+     */
+    public static final int DEFAULT_MAX_PROPERTY_BYTES = 1024;
+
+    /**
+     * Default maximum size of an event, in bytes
+     */
+    public static final int DEFAULT_MAX_EVENT_BYTES = 4096;
+
+    /**
+     * Number of size buckets, the last one also counts every larger event (32KB and more)
+     */
+    public static final int BUCKET_COUNT = 17;
+
+    /**
+     * Maximum number of UTF-8 bytes of a single UTF-16 char
+     */
+    private static final int MAX_BYTES_PER_CHAR = 3;
+
+    private final int maxPropertyBytes;
+
+    private final int maxEventBytes;
+
+    @NonNull
+    private final AtomicLongArray sizeBuckets = new AtomicLongArray(BUCKET_COUNT);
+
+    @NonNull
+    private final AtomicLong truncatedProperties = new AtomicLong();
+
+    @NonNull
+    private final AtomicLong truncatedEvents = new AtomicLong();
+
+    /**
+     * Constructor
+     *
+     * @param maxPropertyBytes Maximum size of a property value in bytes, usually {@link #DEFAULT_MAX_PROPERTY_BYTES}
+     * @param maxEventBytes Maximum size of an event in bytes, usually {@link #DEFAULT_MAX_EVENT_BYTES}
+     */
+    public PianoPayloadBudget(int maxPropertyBytes, int maxEventBytes) {
+        if (maxPropertyBytes <= 0 || maxEventBytes <= 0) {
+            throw new IllegalArgumentException("Budgets must be positive");
+        }
+        this.maxPropertyBytes = maxPropertyBytes;
+        this.maxEventBytes = maxEventBytes;
+    }
+
+    public int getMaxPropertyBytes() {
+        return maxPropertyBytes;
+    }
+
+    public int getMaxEventBytes() {
+        return maxEventBytes;
+    }
+
+    /**
+     * Get the number of property values truncated so far
+     *
+     * @return The count
+     */
+    public long getTruncatedPropertyCount() {
+        return truncatedProperties.get();
+    }
+
+    /**
+     * Get the number of events with at least one truncated property so far
+     *
+     * @return The count
+     */
+    public long getTruncatedEventCount() {
+        return truncatedEvents.get();
+    }
+
+    /**
+     * Get a copy of the histogram of the emitted event sizes
+     *
+     * @return The bucket counts
+     */
+    @NonNull
+    public long[] getSizeBuckets() {
+        long[] buckets = new long[BUCKET_COUNT];
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            buckets[i] = sizeBuckets.get(i);
+        }
+        return buckets;
+    }
+
+    /**
+     * Enforce the budget on a mapped event and record its size
+     *
+     * @param event The mapped event
+     * @return The same event if it fits, a truncated copy otherwise
+     */
+    @NonNull
+    MappedPianoEvent apply(@NonNull MappedPianoEvent event) {
+        // Values whose property is not declared in the data model are not sent, so they don't count
+        String campaignKey = event.campaign != null ? attributionKey(event, event.keys.campaign, AbstractPianoDispatcher.ON_SITE_CAMPAIGN) : null;
+        String mediumKey = event.medium != null ? attributionKey(event, event.keys.medium, AbstractPianoDispatcher.ON_SITE_FORMAT) : null;
+        String sourceKey = event.source != null ? attributionKey(event, event.keys.source, AbstractPianoDispatcher.ON_SITE_ADVERTISER) : null;
+        String contentKey = event.content != null ? event.keys.content : null;
+
+        // A value truncated down to nothing is dropped, along with its property name
+        String campaign = campaignKey != null ? shorten(event.campaign, maxPropertyBytes) : event.campaign;
+        String medium = mediumKey != null ? shorten(event.medium, maxPropertyBytes) : event.medium;
+        String source = sourceKey != null ? shorten(event.source, maxPropertyBytes) : event.source;
+        String content = contentKey != null ? shorten(event.content, maxPropertyBytes) : event.content;
+        campaignKey = campaign != null ? campaignKey : null;
+        mediumKey = medium != null ? mediumKey : null;
+        sourceKey = source != null ? sourceKey : null;
+        contentKey = content != null ? contentKey : null;
+
+        int contentBytes = contentKey != null ? keyLength(contentKey) + utf8Length(content) : 0;
+        int campaignBytes = campaignKey != null ? keyLength(campaignKey) + utf8Length(campaign) : 0;
+        int mediumBytes = mediumKey != null ? keyLength(mediumKey) + utf8Length(medium) : 0;
+        int sourceBytes = sourceKey != null ? keyLength(sourceKey) + utf8Length(source) : 0;
+        int excess = fixedBytes(event) + contentBytes + campaignBytes + mediumBytes + sourceBytes - maxEventBytes;
+        if (contentKey != null && excess > 0) {
+            content = shorten(content, Math.max(0, contentBytes - keyLength(contentKey) - excess));
+            excess -= contentBytes - (content != null ? keyLength(contentKey) + utf8Length(content) : 0);
+        }
+        if (campaignKey != null && excess > 0) {
+            campaign = shorten(campaign, Math.max(0, campaignBytes - keyLength(campaignKey) - excess));
+            excess -= campaignBytes - (campaign != null ? keyLength(campaignKey) + utf8Length(campaign) : 0);
+        }
+        if (mediumKey != null && excess > 0) {
+            medium = shorten(medium, Math.max(0, mediumBytes - keyLength(mediumKey) - excess));
+            excess -= mediumBytes - (medium != null ? keyLength(mediumKey) + utf8Length(medium) : 0);
+        }
+        if (sourceKey != null && excess > 0) {
+            source = shorten(source, Math.max(0, sourceBytes - keyLength(sourceKey) - excess));
+            excess -= sourceBytes - (source != null ? keyLength(sourceKey) + utf8Length(source) : 0);
+        }
+
+        int truncated = campaign != event.campaign ? 1 : 0;
+        truncated += medium != event.medium ? 1 : 0;
+        truncated += source != event.source ? 1 : 0;
+        truncated += content != event.content ? 1 : 0;
+        recordSize(maxEventBytes + excess);
+        if (truncated == 0) {
+            return event;
+        }
+        truncatedProperties.addAndGet(truncated);
+        truncatedEvents.incrementAndGet();
+        return event.withAttribution(campaign, medium, source, content);
+    }
+
+    /**
+     * Get the name an attribution value is sent under
+     *
+     * @param event The mapped event
+     * @param customKey Name of the property on custom events, null if it is not declared
+     * @param onSiteKey Name of the property on On-site Ads events
+     * @return The name, null if the value is not sent
+     */
+    @Nullable
+    private static String attributionKey(@NonNull MappedPianoEvent event,
+                                         @Nullable String customKey,
+                                         @NonNull String onSiteKey) {
+        return event.custom ? customKey : onSiteKey;
+    }
+
+    /**
+     * Size of the parts of an event that are never truncated: name, context properties,
+     * identifiers and non string values, with their property names.
+     * Attribution values and their names are counted by {@link #apply(MappedPianoEvent)}.
+     */
+    private static int fixedBytes(@NonNull MappedPianoEvent event) {
+        int size = utf8Length(event.name);
+        if (event.contextProperties != null) {
+            size += event.contextProperties.utf8Size;
+        }
+        PianoDataModel.Keys keys = event.keys;
+        if (event.custom) {
+            if (keys.sourceForce != null) {
+                // "true"
+                size += utf8Length(keys.sourceForce) + 4;
+            }
+            if (event.trackingId != null && keys.trackingId != null) {
+                size += utf8Length(keys.trackingId) + utf8Length(event.trackingId);
+            }
+            if (event.webViewAnalyticsId != null && keys.webViewAnalyticsId != null) {
+                size += utf8Length(keys.webViewAnalyticsId) + utf8Length(event.webViewAnalyticsId);
+            }
+        } else {
+            size += AbstractPianoDispatcher.ON_SITE_TYPE.length()
+                    + AbstractPianoDispatcher.ON_SITE_TYPE_PUBLISHER.length();
+        }
+        if (event.hasEventTime && keys.eventTime != null) {
+            size += utf8Length(keys.eventTime) + digitCount(event.eventTime);
+        }
+        return size;
+    }
+
+    /**
+     * Truncate a value, dropping it if nothing is left
+     *
+     * @return The same instance if it fits, a truncated copy otherwise, null if it was truncated down to nothing
+     */
+    @Nullable
+    private static String shorten(@NonNull String value, int maxBytes) {
+        String truncated = truncate(value, maxBytes);
+        return truncated != value && truncated.isEmpty() ? null : truncated;
+    }
+
+    private static int keyLength(@Nullable String key) {
+        return key != null ? utf8Length(key) : 0;
+    }
+
+    private static int digitCount(long value) {
+        int count = value < 0 ? 2 : 1;
+        for (value /= 10; value != 0; value /= 10) {
+            count++;
+        }
+        return count;
+    }
+
+    private void recordSize(int size) {
+        int bucket = size <= 0 ? 0 : Math.min(BUCKET_COUNT - 1, 32 - Integer.numberOfLeadingZeros(size));
+        sizeBuckets.incrementAndGet(bucket);
+    }
+
+    /**
+     * Get the UTF-8 size of a string without encoding it
+     *
+     * @param value The string
+     * @return The size in bytes
+     */
+    static int utf8Length(@NonNull String value) {
+        int length = value.length();
+        int size = length;
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c >= 0x80) {
+                if (c < 0x800) {
+                    size += 1;
+                } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+                    // 4 bytes for 2 chars
+                    size += 2;
+                    i++;
+                } else {
+                    size += 2;
+                }
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Truncate a string to a maximum UTF-8 size, on a code point boundary
+     *
+     * @param value The string
+     * @param maxBytes Maximum size in bytes
+     * @return The same instance if it fits, a truncated copy otherwise
+     */
+    @NonNull
+    static String truncate(@NonNull String value, int maxBytes) {
+        int length = value.length();
+        if (length * MAX_BYTES_PER_CHAR <= maxBytes) {
+            return value;
+        }
+        int size = 0;
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            int charBytes;
+            int charCount = 1;
+            if (c < 0x80) {
+                charBytes = 1;
+            } else if (c < 0x800) {
+                charBytes = 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+                charBytes = 4;
+                charCount = 2;
+            } else {
+                charBytes = 3;
+            }
+            if (size + charBytes > maxBytes) {
+                return value.substring(0, i);
+            }
+            size += charBytes;
+            i += charCount - 1;
+        }
+        return value;
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return "PianoPayloadBudget{" +
+                "maxPropertyBytes=" + maxPropertyBytes +
+                ", maxEventBytes=" + maxEventBytes +
+                ", truncatedProperties=" + truncatedProperties.get() +
+                ", truncatedEvents=" + truncatedEvents.get() +
+                '}';
+    }
+}
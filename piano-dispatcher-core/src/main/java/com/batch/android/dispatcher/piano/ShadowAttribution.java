@@ -0,0 +1,367 @@
+package com.batch.android.dispatcher.piano;
+
+import android.net.Uri;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.batch.android.Batch;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Shadow mode running a candidate attribution engine next to the current one on live traffic.
+ * <p>
+ * On a sampled fraction of the dispatched events, both engines resolve the attribution on a
+ * background thread and their results are compared. Mismatches are kept in a bounded report with
+ * redacted inputs and only the names of the differing attribution fields: deeplink query and fragment
+ * values, custom values, tracking ids and resolved attribution values are never kept.
+ * The attribution of the current engine is always the one sent to Piano.
+ */
+public final class ShadowAttribution {
+
+    /**
+     * Default number of mismatches kept in the report
+     */
+    public static final int DEFAULT_REPORT_SIZE = 32;
+
+    /**
+     * Maximum number of comparisons waiting for the background thread, extra ones are dropped
+     */
+    private static final int QUEUE_CAPACITY = 64;
+
+    /**
+     * A Batch event both engines resolved differently
+     */
+    public static final class Mismatch {
+
+        @NonNull
+        private final Batch.EventDispatcher.Type type;
+
+        @Nullable
+        private final String redactedDeeplink;
+
+        @NonNull
+        private final List<String> customKeys;
+
+        @NonNull
+        private final List<String> differingFields;
+
+        Mismatch(@NonNull Batch.EventDispatcher.Type type,
+                 @Nullable String redactedDeeplink,
+                 @NonNull List<String> customKeys,
+                 @NonNull List<String> differingFields) {
+            this.type = type;
+            this.redactedDeeplink = redactedDeeplink;
+            this.customKeys = customKeys;
+            this.differingFields = differingFields;
+        }
+
+        @NonNull
+        public Batch.EventDispatcher.Type getType() {
+            return type;
+        }
+
+        /**
+         * @return The deeplink with its query and fragment values removed, null if the event has none
+         */
+        @Nullable
+        public String getRedactedDeeplink() {
+            return redactedDeeplink;
+        }
+
+        /**
+         * @return The attribution keys present in the custom payload, without their values
+         */
+        @NonNull
+        public List<String> getCustomKeys() {
+            return customKeys;
+        }
+
+        /**
+         * @return The attribution fields both engines resolved differently, among campaign, medium,
+         * source and content, without their values
+         */
+        @NonNull
+        public List<String> getDifferingFields() {
+            return differingFields;
+        }
+
+        @NonNull
+        @Override
+        public String toString() {
+            return "Mismatch{" +
+                    "type=" + type +
+                    ", redactedDeeplink='" + redactedDeeplink + '\'' +
+                    ", customKeys=" + customKeys +
+                    ", differingFields=" + differingFields +
+                    '}';
+        }
+    }
+
+    @NonNull
+    private final PianoAttributionEngine current;
+
+    @NonNull
+    private final PianoAttributionEngine candidate;
+
+    private final double sampleRate;
+
+    private final int reportSize;
+
+    @NonNull
+    private final ThreadPoolExecutor executor;
+
+    /**
+     * Last mismatches, oldest first
+     */
+    @NonNull
+    private final ArrayDeque<Mismatch> report;
+
+    @NonNull
+    private final AtomicLong comparedCount = new AtomicLong();
+
+    @NonNull
+    private final AtomicLong mismatchCount = new AtomicLong();
+
+    @NonNull
+    private final AtomicLong droppedCount = new AtomicLong();
+
+    @NonNull
+    private final AtomicLong failedCount = new AtomicLong();
+
+    /**
+     * Sum of the current engine resolution times, in nanoseconds
+     */
+    @NonNull
+    private final AtomicLong currentNanos = new AtomicLong();
+
+    /**
+     * Sum of the candidate engine resolution times, in nanoseconds
+     */
+    @NonNull
+    private final AtomicLong candidateNanos = new AtomicLong();
+
+    /**
+     * Constructor
+     *
+     * @param current The engine whose attribution is sent
+     * @param candidate The engine to evaluate
+     * @param sampleRate Fraction of the events compared, between 0 and 1
+     * @param reportSize Number of mismatches kept in the report
+     */
+    public ShadowAttribution(@NonNull PianoAttributionEngine current,
+                             @NonNull PianoAttributionEngine candidate,
+                             double sampleRate,
+                             int reportSize) {
+        if (sampleRate < 0 || sampleRate > 1 || reportSize <= 0) {
+            throw new IllegalArgumentException("Sample rate must be between 0 and 1 and report size greater than 0");
+        }
+        this.current = current;
+        this.candidate = candidate;
+        this.sampleRate = sampleRate;
+        this.reportSize = reportSize;
+        this.report = new ArrayDeque<>(reportSize);
+        this.executor = new ThreadPoolExecutor(1, 1, 30, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(QUEUE_CAPACITY),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "batch-piano-shadow-attribution");
+                    thread.setDaemon(true);
+                    thread.setPriority(Thread.MIN_PRIORITY);
+                    return thread;
+                });
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    public double getSampleRate() {
+        return sampleRate;
+    }
+
+    /**
+     * Compare both engines on a Batch event if it is sampled, on the background thread
+     *
+     * @param type Batch event type
+     * @param payload Batch event payload
+     */
+    void offer(@NonNull Batch.EventDispatcher.Type type, @NonNull Batch.EventDispatcher.Payload payload) {
+        if (sampleRate < 1 && ThreadLocalRandom.current().nextDouble() >= sampleRate) {
+            return;
+        }
+        try {
+            executor.execute(() -> compare(type, payload));
+        } catch (RejectedExecutionException e) {
+            droppedCount.incrementAndGet();
+        }
+    }
+
+    /**
+     * Resolve the attribution with both engines and record the result
+     *
+     * @param type Batch event type
+     * @param payload Batch event payload
+     */
+    void compare(@NonNull Batch.EventDispatcher.Type type, @NonNull Batch.EventDispatcher.Payload payload) {
+        PianoAttribution currentAttribution;
+        PianoAttribution candidateAttribution;
+        long currentElapsed;
+        long candidateElapsed;
+        try {
+            long start = System.nanoTime();
+            currentAttribution = current.resolve(type, payload);
+            long resolved = System.nanoTime();
+            candidateAttribution = candidate.resolve(type, payload);
+            currentElapsed = resolved - start;
+            candidateElapsed = System.nanoTime() - resolved;
+        } catch (RuntimeException e) {
+            if (failedCount.incrementAndGet() == 1) {
+                Log.e("Batch", "PianoDispatcher - Shadow attribution failed", e);
+            }
+            return;
+        }
+        comparedCount.incrementAndGet();
+        currentNanos.addAndGet(currentElapsed);
+        candidateNanos.addAndGet(candidateElapsed);
+        if (currentAttribution.equals(candidateAttribution)) {
+            return;
+        }
+        mismatchCount.incrementAndGet();
+        Mismatch mismatch = new Mismatch(type, redact(payload.getDeeplink()), getCustomKeys(payload),
+                getDifferingFields(currentAttribution, candidateAttribution));
+        synchronized (report) {
+            if (report.size() == reportSize) {
+                report.pollFirst();
+            }
+            report.addLast(mismatch);
+        }
+    }
+
+    /**
+     * Remove the query and fragment values of a deeplink, keeping the parameter names
+     *
+     * @param deeplink The deeplink
+     * @return The redacted deeplink
+     */
+    @Nullable
+    static String redact(@Nullable String deeplink) {
+        if (deeplink == null) {
+            return null;
+        }
+        Uri uri = Uri.parse(deeplink.trim());
+        if (!uri.isHierarchical()) {
+            return uri.getScheme() + ":*";
+        }
+        StringBuilder builder = new StringBuilder();
+        if (uri.getScheme() != null) {
+            builder.append(uri.getScheme()).append("://");
+        }
+        if (uri.getAuthority() != null) {
+            builder.append(uri.getAuthority());
+        }
+        if (uri.getPath() != null) {
+            builder.append(uri.getPath());
+        }
+        char separator = '?';
+        for (String name : uri.getQueryParameterNames()) {
+            builder.append(separator).append(name).append("=*");
+            separator = '&';
+        }
+        if (uri.getFragment() != null) {
+            builder.append("#*");
+        }
+        return builder.toString();
+    }
+
+    @NonNull
+    private static List<String> getCustomKeys(@NonNull Batch.EventDispatcher.Payload payload) {
+        List<String> keys = new ArrayList<>(0);
+        for (String key : AbstractPianoDispatcher.ATTRIBUTION_KEYS) {
+            if (payload.getCustomValue(key) != null) {
+                keys.add(key);
+            }
+        }
+        return keys;
+    }
+
+    @NonNull
+    private static List<String> getDifferingFields(@NonNull PianoAttribution current,
+                                                   @NonNull PianoAttribution candidate) {
+        List<String> fields = new ArrayList<>(4);
+        if (!Objects.equals(current.getCampaign(), candidate.getCampaign())) {
+            fields.add("campaign");
+        }
+        if (!Objects.equals(current.getMedium(), candidate.getMedium())) {
+            fields.add("medium");
+        }
+        if (!Objects.equals(current.getSource(), candidate.getSource())) {
+            fields.add("source");
+        }
+        if (!Objects.equals(current.getContent(), candidate.getContent())) {
+            fields.add("content");
+        }
+        return fields;
+    }
+
+    /**
+     * Get the last mismatches
+     *
+     * @return The mismatches, oldest first
+     */
+    @NonNull
+    public List<Mismatch> getMismatches() {
+        synchronized (report) {
+            return new ArrayList<>(report);
+        }
+    }
+
+    public long getComparedCount() {
+        return comparedCount.get();
+    }
+
+    public long getMismatchCount() {
+        return mismatchCount.get();
+    }
+
+    /**
+     * @return Number of sampled events not compared because the background thread was lagging behind
+     */
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    /**
+     * @return Number of comparisons that failed because an engine threw
+     */
+    public long getFailedCount() {
+        return failedCount.get();
+    }
+
+    /**
+     * Get the mean resolution time difference between both engines
+     *
+     * @return Candidate minus current mean time in nanoseconds, negative if the candidate is faster
+     */
+    public long getMeanDeltaNanos() {
+        long compared = comparedCount.get();
+        if (compared == 0) {
+            return 0;
+        }
+        return (candidateNanos.get() - currentNanos.get()) / compared;
+    }
+
+    /**
+     * Stop the background thread, pending comparisons are dropped
+     */
+    void shutdown() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,403 @@
+package com.batch.android.dispatcher.piano;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.batch.android.Batch;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Executes dispatches on N single-threaded workers, partitioned by tracking id.
+ * <p>
+ * All the events of a campaign go to the same worker and are dispatched in order (eg: a display
+ * always precedes its open), while different campaigns are dispatched in parallel. Each worker has
+ * a bounded lock-free queue: when it is full, events are dropped rather than blocking the caller.
+ * <p>
+ * When an executor replaces another one, its workers only start once the previous workers have
+ * drained their queues, and the events still submitted to the previous executor are forwarded to
+ * the new one. Without a new executor, they are dispatched on the caller's thread once the previous
+ * workers are done. Either way, the events of a campaign keep their order.
+ */
+public final class ShardedDispatchExecutor {
+
+    /**
+     * Default capacity of each worker queue
+     */
+    public static final int DEFAULT_QUEUE_CAPACITY = 1024;
+
+    /**
+     * Dispatches a Batch event on a worker thread
+     */
+    interface Target {
+        void dispatch(@NonNull Batch.EventDispatcher.Type type,
+                      @NonNull Batch.EventDispatcher.Payload payload,
+                      long startNanos,
+                      long eventTime);
+    }
+
+    private static final class Task {
+
+        @NonNull
+        final Batch.EventDispatcher.Type type;
+
+        @NonNull
+        final Batch.EventDispatcher.Payload payload;
+
+        /**
+         * {@link System#nanoTime()} when the event has been queued
+         */
+        final long startNanos;
+
+        /**
+         * Wall-clock time when the event has been queued
+         */
+        final long eventTime;
+
+        Task(@NonNull Batch.EventDispatcher.Type type,
+             @NonNull Batch.EventDispatcher.Payload payload,
+             long startNanos,
+             long eventTime) {
+            this.type = type;
+            this.payload = payload;
+            this.startNanos = startNanos;
+            this.eventTime = eventTime;
+        }
+    }
+
+    private final class Shard implements Runnable {
+
+        @NonNull
+        final ConcurrentLinkedQueue<Task> queue = new ConcurrentLinkedQueue<>();
+
+        /**
+         * Queued and running tasks, bounds the queue
+         */
+        @NonNull
+        final AtomicInteger pending = new AtomicInteger();
+
+        @NonNull
+        final AtomicLong enqueued = new AtomicLong();
+
+        @NonNull
+        final Thread thread;
+
+        volatile boolean parked = false;
+
+        Shard(int index) {
+            thread = new Thread(this, "batch-piano-shard-" + index);
+            thread.setDaemon(true);
+        }
+
+        /**
+         * Queue a task
+         *
+         * @return {@link #OFFERED}, {@link #FULL} or {@link #STOPPED}
+         */
+        int offer(@NonNull Task task) {
+            if (pending.incrementAndGet() > queueCapacity) {
+                pending.decrementAndGet();
+                return FULL;
+            }
+            // Checked after counting the task, so the worker can't exit before it is queued
+            if (!running) {
+                pending.decrementAndGet();
+                return STOPPED;
+            }
+            queue.offer(task);
+            enqueued.incrementAndGet();
+            if (parked) {
+                LockSupport.unpark(thread);
+            }
+            return OFFERED;
+        }
+
+        @Override
+        public void run() {
+            ShardedDispatchExecutor previous = predecessor;
+            if (previous != null) {
+                // Events of the previous workers come first
+                previous.awaitTermination();
+                predecessor = null;
+            }
+            while (true) {
+                Task task = queue.poll();
+                if (task == null) {
+                    if (!running && pending.get() == 0) {
+                        return;
+                    }
+                    parked = true;
+                    // Check again to not miss a task offered before the flag was visible
+                    if (queue.isEmpty() && (running || pending.get() > 0)) {
+                        LockSupport.parkNanos(this, TimeUnit.SECONDS.toNanos(1));
+                    }
+                    parked = false;
+                    continue;
+                }
+                try {
+                    target.dispatch(task.type, task.payload, task.startNanos, task.eventTime);
+                } catch (RuntimeException e) {
+                    Log.e("Batch", "PianoDispatcher - Sharded dispatch failed", e);
+                } finally {
+                    pending.decrementAndGet();
+                }
+            }
+        }
+    }
+
+    private static final int OFFERED = 0;
+
+    private static final int FULL = 1;
+
+    private static final int STOPPED = 2;
+
+    @NonNull
+    private final Target target;
+
+    /**
+     * Executor replaced by this one, whose workers must be done before these ones start
+     */
+    @Nullable
+    private volatile ShardedDispatchExecutor predecessor;
+
+    /**
+     * Executor replacing this one once shut down, null to dispatch on the caller's thread
+     */
+    @Nullable
+    private volatile ShardedDispatchExecutor successor;
+
+    private final int queueCapacity;
+
+    @NonNull
+    private final Shard[] shards;
+
+    @NonNull
+    private final AtomicLong droppedCount = new AtomicLong();
+
+    private volatile boolean running = true;
+
+    /**
+     * Constructor, starts the worker threads
+     *
+     * @param target Dispatches the events on the workers
+     * @param shardCount Number of workers
+     * @param queueCapacity Capacity of each worker queue
+     */
+    ShardedDispatchExecutor(@NonNull Target target, int shardCount, int queueCapacity) {
+        this(target, shardCount, queueCapacity, null);
+    }
+
+    /**
+     * Constructor, starts the worker threads
+     *
+     * @param target Dispatches the events on the workers
+     * @param shardCount Number of workers
+     * @param queueCapacity Capacity of each worker queue
+     * @param predecessor Executor replaced by this one, the workers wait for it to be drained
+     */
+    ShardedDispatchExecutor(@NonNull Target target,
+                            int shardCount,
+                            int queueCapacity,
+                            @Nullable ShardedDispatchExecutor predecessor) {
+        if (shardCount <= 0 || queueCapacity <= 0) {
+            throw new IllegalArgumentException("Shard count and queue capacity must be greater than 0");
+        }
+        this.target = target;
+        this.predecessor = predecessor;
+        this.queueCapacity = queueCapacity;
+        this.shards = new Shard[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            shards[i] = new Shard(i);
+            shards[i].thread.start();
+        }
+    }
+
+    /**
+     * Get the worker index of a tracking id
+     *
+     * @param trackingId Batch tracking id, events without one all go to the first worker
+     * @param shardCount Number of workers
+     * @return The worker index
+     */
+    static int shardOf(@Nullable String trackingId, int shardCount) {
+        if (trackingId == null) {
+            return 0;
+        }
+        int hash = trackingId.hashCode();
+        // Spread the bits, String hashes of similar ids differ in their low bits only
+        hash ^= (hash >>> 16);
+        return (hash & 0x7fffffff) % shardCount;
+    }
+
+    /**
+     * Queue a Batch event on the worker of its tracking id
+     *
+     * @param type Batch event type
+     * @param payload Batch event payload
+     * @param startNanos {@link System#nanoTime()} when the event entered the dispatcher
+     * @param eventTime Wall-clock time at which the event entered the dispatcher
+     * @return False if the event has been dropped
+     */
+    boolean execute(@NonNull Batch.EventDispatcher.Type type,
+                    @NonNull Batch.EventDispatcher.Payload payload,
+                    long startNanos,
+                    long eventTime) {
+        Shard shard = shards[shardOf(payload.getTrackingId(), shards.length)];
+        int result = running ? shard.offer(new Task(type, payload, startNanos, eventTime)) : STOPPED;
+        if (result == FULL) {
+            if (droppedCount.incrementAndGet() == 1) {
+                Log.w("Batch", "PianoDispatcher - Sharded dispatch is lagging behind, dropping events");
+            }
+            return false;
+        }
+        if (result == STOPPED) {
+            ShardedDispatchExecutor next = successor;
+            if (next != null) {
+                return next.execute(type, payload, startNanos, eventTime);
+            }
+            // Sharded dispatch has been disabled, dispatch inline after the queued events
+            awaitTermination();
+            target.dispatch(type, payload, startNanos, eventTime);
+        }
+        return true;
+    }
+
+    public int getShardCount() {
+        return shards.length;
+    }
+
+    /**
+     * Get the number of events waiting or being dispatched on each worker
+     *
+     * @return The queue depths, indexed by worker
+     */
+    @NonNull
+    public int[] getQueueDepths() {
+        int[] depths = new int[shards.length];
+        for (int i = 0; i < shards.length; i++) {
+            depths[i] = shards[i].pending.get();
+        }
+        return depths;
+    }
+
+    /**
+     * Get the number of events waiting or being dispatched on all workers
+     *
+     * @return The backlog
+     */
+    int getBacklog() {
+        int backlog = 0;
+        for (Shard shard : shards) {
+            backlog += shard.pending.get();
+        }
+        return backlog;
+    }
+
+    /**
+     * Get the number of events queued on each worker so far
+     *
+     * @return The counts, indexed by worker
+     */
+    @NonNull
+    public long[] getEnqueuedCounts() {
+        long[] counts = new long[shards.length];
+        for (int i = 0; i < shards.length; i++) {
+            counts[i] = shards[i].enqueued.get();
+        }
+        return counts;
+    }
+
+    /**
+     * Get the load imbalance between workers: the busiest worker's event count divided by the mean.
+     *
+     * @return 1 when the load is perfectly balanced, up to the shard count when a single worker gets everything
+     */
+    public double getImbalance() {
+        long max = 0;
+        long total = 0;
+        for (long count : getEnqueuedCounts()) {
+            max = Math.max(max, count);
+            total += count;
+        }
+        if (total == 0) {
+            return 1;
+        }
+        return max / ((double) total / shards.length);
+    }
+
+    /**
+     * @return Number of events dropped because a worker queue was full
+     */
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    /**
+     * Wait until every queued event has been dispatched
+     *
+     * @param timeout Maximum time to wait
+     * @param unit Unit of the timeout
+     * @return True if every worker is idle
+     */
+    public boolean awaitIdle(long timeout, @NonNull TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        for (Shard shard : shards) {
+            while (shard.pending.get() > 0) {
+                if (System.nanoTime() >= deadline) {
+                    return false;
+                }
+                Thread.sleep(1);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Wait until the workers have exited, after {@link #shutdown}
+     * <p>
+     * Returns right away when called from one of the workers.
+     */
+    void awaitTermination() {
+        for (Shard shard : shards) {
+            if (shard.thread == Thread.currentThread()) {
+                return;
+            }
+        }
+        try {
+            for (Shard shard : shards) {
+                shard.thread.join();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Stop accepting events, workers exit once their queue is drained.
+     * Events submitted afterwards are dispatched on the caller's thread, after the queued ones.
+     */
+    void shutdown() {
+        shutdown(null);
+    }
+
+    /**
+     * Stop accepting events, workers exit once their queue is drained
+     *
+     * @param successor Executor receiving the events submitted afterwards, null to dispatch them
+     *                  on the caller's thread after the queued ones
+     */
+    void shutdown(@Nullable ShardedDispatchExecutor successor) {
+        // Set before stopping, so that a stopped executor always knows where to forward events
+        this.successor = successor;
+        running = false;
+        for (Shard shard : shards) {
+            LockSupport.unpark(shard.thread);
+        }
+    }
+}
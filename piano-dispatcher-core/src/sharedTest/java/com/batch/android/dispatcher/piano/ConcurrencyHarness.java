@@ -0,0 +1,85 @@
+package com.batch.android.dispatcher.piano;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs an operation from several threads released at the same time by a {@link CyclicBarrier},
+ * collecting every error thrown.
+ */
+public final class ConcurrencyHarness {
+
+    public interface Operation {
+        /**
+         * @param thread Index of the calling thread
+         * @param iteration Index of the call in this thread
+         */
+        void run(int thread, int iteration) throws Exception;
+    }
+
+    public static final class Result {
+        public final int threads;
+        public final int operations;
+        public final long elapsedNanos;
+        public final List<Throwable> errors;
+
+        Result(int threads, int operations, long elapsedNanos, List<Throwable> errors) {
+            this.threads = threads;
+            this.operations = operations;
+            this.elapsedNanos = elapsedNanos;
+            this.errors = errors;
+        }
+
+        public double getOperationsPerSecond() {
+            return operations * (double) TimeUnit.SECONDS.toNanos(1) / Math.max(1, elapsedNanos);
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "%d thread(s): %d ops in %.1f ms, %.0f ops/s",
+                    threads, operations, elapsedNanos / 1e6, getOperationsPerSecond());
+        }
+    }
+
+    private ConcurrencyHarness() {
+    }
+
+    /**
+     * Run the operation {@code iterations} times on each of {@code threads} threads
+     */
+    public static Result run(int threads, int iterations, Operation operation) throws InterruptedException {
+        List<Throwable> errors = Collections.synchronizedList(new ArrayList<>());
+        // The last party is the calling thread, so that timing starts when every worker is ready
+        CyclicBarrier start = new CyclicBarrier(threads + 1);
+        List<Thread> workers = new ArrayList<>(threads);
+        for (int t = 0; t < threads; t++) {
+            final int thread = t;
+            Thread worker = new Thread(() -> {
+                try {
+                    start.await();
+                    for (int i = 0; i < iterations; i++) {
+                        operation.run(thread, i);
+                    }
+                } catch (Throwable e) {
+                    errors.add(e);
+                }
+            }, "stress-" + t);
+            workers.add(worker);
+            worker.start();
+        }
+        try {
+            start.await();
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+        long startNanos = System.nanoTime();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        return new Result(threads, threads * iterations, System.nanoTime() - startNanos, errors);
+    }
+}
@@ -0,0 +1,88 @@
+package com.batch.android.dispatcher.piano;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+public class AdaptiveLoadShedderTest {
+
+    private static final int ALL = PianoEventFilter.ALL_CHANNELS;
+
+    private static final int ON_SITE_ADS = PianoEventFilter.Channel.ON_SITE_ADS.mask;
+
+    private static void recordInterval(AdaptiveLoadShedder shedder, long costMicros, int backlog) {
+        for (int i = 0; i < AdaptiveLoadShedder.EVALUATION_INTERVAL; i++) {
+            shedder.record(TimeUnit.MICROSECONDS.toNanos(costMicros), backlog);
+        }
+    }
+
+    @Test
+    public void testStepsUpAndDown() {
+        AdaptiveLoadShedder shedder = new AdaptiveLoadShedder(2000, 500, 100, 10);
+        List<int[]> changes = new ArrayList<>();
+        shedder.setListener((previousLevel, level, averageCostMicros, backlog) -> changes.add(new int[]{previousLevel, level}));
+
+        recordInterval(shedder, 100, 0);
+        Assert.assertEquals(AdaptiveLoadShedder.LEVEL_NONE, shedder.getLevel());
+
+        recordInterval(shedder, 10_000, 0);
+        Assert.assertEquals(AdaptiveLoadShedder.LEVEL_CUSTOM_CLICKS_ONLY, shedder.getLevel());
+        recordInterval(shedder, 10_000, 0);
+        Assert.assertEquals(AdaptiveLoadShedder.LEVEL_SAMPLE_IMPRESSIONS, shedder.getLevel());
+        recordInterval(shedder, 10_000, 0);
+        Assert.assertEquals(AdaptiveLoadShedder.LEVEL_SAMPLE_IMPRESSIONS, shedder.getLevel());
+
+        // A cheap dispatch with a large backlog does not step down
+        recordInterval(shedder, 100, 50);
+        Assert.assertEquals(AdaptiveLoadShedder.LEVEL_SAMPLE_IMPRESSIONS, shedder.getLevel());
+        recordInterval(shedder, 100, 0);
+        Assert.assertEquals(AdaptiveLoadShedder.LEVEL_CUSTOM_CLICKS_ONLY, shedder.getLevel());
+        recordInterval(shedder, 100, 0);
+        Assert.assertEquals(AdaptiveLoadShedder.LEVEL_NONE, shedder.getLevel());
+
+        Assert.assertEquals(4, changes.size());
+        Assert.assertArrayEquals(new int[]{0, 1}, changes.get(0));
+        Assert.assertArrayEquals(new int[]{1, 0}, changes.get(3));
+    }
+
+    @Test
+    public void testBacklogStepsUp() {
+        AdaptiveLoadShedder shedder = new AdaptiveLoadShedder(2000, 500, 100, 10);
+        recordInterval(shedder, 100, 500);
+        Assert.assertEquals(AdaptiveLoadShedder.LEVEL_CUSTOM_CLICKS_ONLY, shedder.getLevel());
+    }
+
+    @Test
+    public void testFilter() {
+        AdaptiveLoadShedder shedder = new AdaptiveLoadShedder(2000, 500, 100, 10);
+        Assert.assertEquals(ALL, shedder.filter(ALL, false, true, true));
+
+        recordInterval(shedder, 10_000, 0);
+        // Custom events are only kept for clicks
+        Assert.assertEquals(ALL, shedder.filter(ALL, true, false, true));
+        Assert.assertEquals(ON_SITE_ADS, shedder.filter(ALL, false, true, true));
+        Assert.assertEquals(1, shedder.getShedCount(AdaptiveLoadShedder.LEVEL_CUSTOM_CLICKS_ONLY));
+        // Replayed events have already been counted
+        Assert.assertEquals(ON_SITE_ADS, shedder.filter(ALL, false, true, false));
+        Assert.assertEquals(1, shedder.getShedCount(AdaptiveLoadShedder.LEVEL_CUSTOM_CLICKS_ONLY));
+
+        recordInterval(shedder, 10_000, 0);
+        int kept = 0;
+        for (int i = 0; i < AdaptiveLoadShedder.IMPRESSION_SAMPLING * 10; i++) {
+            if (shedder.filter(ALL, false, true, true) != 0) {
+                kept++;
+            }
+        }
+        Assert.assertEquals(10, kept);
+        Assert.assertEquals(AdaptiveLoadShedder.IMPRESSION_SAMPLING * 10, shedder.getShedCount(AdaptiveLoadShedder.LEVEL_SAMPLE_IMPRESSIONS));
+        Assert.assertEquals(ALL, shedder.filter(ALL, true, false, true));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidThresholds() {
+        new AdaptiveLoadShedder(500, 2000, 100, 10);
+    }
+}
@@ -0,0 +1,80 @@
+package com.batch.android.dispatcher.piano;
+
+import android.os.Build;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import com.batch.android.Batch;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@RunWith(AndroidJUnit4.class)
+@Config(sdk = Build.VERSION_CODES.S)
+public class CompactEventBufferTest {
+
+    @Test
+    public void testRoundTrip() {
+        CompactEventBuffer buffer = new CompactEventBuffer();
+        buffer.append(Batch.EventDispatcher.Type.NOTIFICATION_OPEN, "campaign", "push", "Batch", null, "tracking_id", null, 42L);
+        buffer.append(Batch.EventDispatcher.Type.MESSAGING_WEBVIEW_CLICK, "campaign", "in-app", "Batch", "content", null, "webview_id", 43L);
+        Assert.assertEquals(2, buffer.size());
+
+        List<String> decoded = new ArrayList<>();
+        int drained = buffer.drain((type, campaign, medium, source, content, trackingId, webViewAnalyticsId, timestamp) ->
+                decoded.add(type + "|" + campaign + "|" + medium + "|" + source + "|" + content + "|" + trackingId + "|" + webViewAnalyticsId + "|" + timestamp));
+
+        Assert.assertEquals(2, drained);
+        Assert.assertEquals("NOTIFICATION_OPEN|campaign|push|Batch|null|tracking_id|null|42", decoded.get(0));
+        Assert.assertEquals("MESSAGING_WEBVIEW_CLICK|campaign|in-app|Batch|content|null|webview_id|43", decoded.get(1));
+        Assert.assertEquals(0, buffer.size());
+        Assert.assertEquals(0, buffer.getByteFootprint());
+    }
+
+    @Test
+    public void testForEachKeepsEvents() {
+        CompactEventBuffer buffer = new CompactEventBuffer();
+        buffer.append(Batch.EventDispatcher.Type.NOTIFICATION_OPEN, "campaign", "push", "Batch", null, "tracking_id", null, 42L);
+        List<String> decoded = new ArrayList<>();
+        Assert.assertEquals(1, buffer.forEach((type, campaign, medium, source, content, trackingId, webViewAnalyticsId, timestamp) ->
+                decoded.add(campaign)));
+        Assert.assertEquals(1, buffer.size());
+        Assert.assertEquals(1, buffer.drain((type, campaign, medium, source, content, trackingId, webViewAnalyticsId, timestamp) ->
+                decoded.add(campaign)));
+        Assert.assertEquals(2, decoded.size());
+        Assert.assertEquals(0, buffer.size());
+    }
+
+    @Test
+    public void testRepeatedStringsAreStoredOnce() {
+        CompactEventBuffer buffer = new CompactEventBuffer();
+        String campaign = "a_very_long_campaign_name_pasted_by_marketing";
+        for (int i = 0; i < 1000; i++) {
+            buffer.append(Batch.EventDispatcher.Type.NOTIFICATION_DISPLAY, campaign, "push", "Batch", null, campaign, null, i);
+        }
+        // type + timestamp + 6 one byte indexes
+        Assert.assertEquals(1000 * 15, buffer.getEncodedByteCount());
+        Assert.assertTrue(buffer.getByteFootprint() < 1000 * campaign.length());
+    }
+
+    @Test
+    public void testSpansSeveralChunks() {
+        CompactEventBuffer buffer = new CompactEventBuffer();
+        int count = CompactEventBuffer.CHUNK_SIZE;
+        for (int i = 0; i < count; i++) {
+            buffer.append(Batch.EventDispatcher.Type.MESSAGING_SHOW, "campaign_" + i, "in-app", "Batch", null, null, null, i);
+        }
+        final long[] expectedTimestamp = {0};
+        int drained = buffer.drain((type, campaign, medium, source, content, trackingId, webViewAnalyticsId, timestamp) -> {
+            Assert.assertEquals(expectedTimestamp[0], timestamp);
+            Assert.assertEquals("campaign_" + timestamp, campaign);
+            expectedTimestamp[0]++;
+        });
+        Assert.assertEquals(count, drained);
+    }
+}
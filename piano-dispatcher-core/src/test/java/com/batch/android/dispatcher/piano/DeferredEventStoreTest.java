@@ -0,0 +1,90 @@
+package com.batch.android.dispatcher.piano;
+
+import android.content.Context;
+import android.os.Build;
+
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import com.batch.android.Batch;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+@RunWith(AndroidJUnit4.class)
+@Config(sdk = Build.VERSION_CODES.S)
+public class DeferredEventStoreTest {
+
+    private Context context;
+    private DeferredEventStore store;
+
+    @Before
+    public void setUp() {
+        context = ApplicationProvider.getApplicationContext();
+        store = new DeferredEventStore(context);
+    }
+
+    @After
+    public void tearDown() {
+        store.drainInto(new CompactEventBuffer());
+    }
+
+    private static String repeat(String value, int count) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            builder.append(value);
+        }
+        return builder.toString();
+    }
+
+    @Test
+    public void testOversizedValueIsTruncated() {
+        Assert.assertTrue(store.append(Batch.EventDispatcher.Type.NOTIFICATION_DISMISS, "campaign", "push", "Batch",
+                repeat("x", 70000), "tracking_id", null, 42L));
+        Assert.assertTrue(store.append(Batch.EventDispatcher.Type.NOTIFICATION_DISMISS, "next", "push", "Batch",
+                null, null, null, 43L));
+
+        CompactEventBuffer buffer = new CompactEventBuffer();
+        Assert.assertEquals(2, store.drainInto(buffer));
+        List<String> contents = new ArrayList<>();
+        List<String> campaigns = new ArrayList<>();
+        buffer.forEach((type, campaign, medium, source, content, trackingId, webViewAnalyticsId, timestamp) -> {
+            campaigns.add(campaign);
+            contents.add(content);
+        });
+        Assert.assertEquals(DeferredEventStore.MAX_UTF_BYTES, contents.get(0).length());
+        Assert.assertEquals("next", campaigns.get(1));
+        Assert.assertTrue(store.isEmpty());
+    }
+
+    @Test
+    public void testTruncateUtfKeepsSurrogatePairs() {
+        String value = repeat("é", DeferredEventStore.MAX_UTF_BYTES / 2 - 1) + repeat("😀", 10);
+        String truncated = DeferredEventStore.truncateUtf(value);
+        Assert.assertFalse(Character.isHighSurrogate(truncated.charAt(truncated.length() - 1)));
+        Assert.assertSame("short", DeferredEventStore.truncateUtf("short"));
+    }
+
+    @Test
+    public void testInvalidRecordEndsTheFile() throws Exception {
+        Assert.assertTrue(store.append(Batch.EventDispatcher.Type.NOTIFICATION_DISMISS, "campaign", "push", "Batch",
+                null, null, null, 42L));
+        try (FileOutputStream output = new FileOutputStream(new File(context.getNoBackupFilesDir(), DeferredEventStore.FILE_NAME), true)) {
+            output.write(new byte[]{(byte) 0xFF, 1, 2, 3});
+        }
+
+        CompactEventBuffer buffer = new CompactEventBuffer();
+        Assert.assertEquals(1, store.drainInto(buffer));
+        Assert.assertEquals(1, buffer.size());
+        Assert.assertTrue(store.isEmpty());
+    }
+}
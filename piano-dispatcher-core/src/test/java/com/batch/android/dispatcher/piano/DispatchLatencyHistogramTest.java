@@ -0,0 +1,34 @@
+package com.batch.android.dispatcher.piano;
+
+import com.batch.android.Batch;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class DispatchLatencyHistogramTest {
+
+    @Test
+    public void testBuckets() {
+        Assert.assertEquals(0, DispatchLatencyHistogram.bucketOf(999));
+        Assert.assertEquals(1, DispatchLatencyHistogram.bucketOf(1_000));
+        Assert.assertEquals(2, DispatchLatencyHistogram.bucketOf(2_000));
+        Assert.assertEquals(2, DispatchLatencyHistogram.bucketOf(3_999));
+        Assert.assertEquals(11, DispatchLatencyHistogram.bucketOf(1_024_000));
+        Assert.assertEquals(DispatchLatencyHistogram.BUCKET_COUNT - 1, DispatchLatencyHistogram.bucketOf(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void testPercentiles() {
+        DispatchLatencyHistogram histogram = new DispatchLatencyHistogram();
+        for (int i = 0; i < 99; i++) {
+            histogram.record(Batch.EventDispatcher.Type.NOTIFICATION_OPEN, 3_000);
+        }
+        histogram.record(Batch.EventDispatcher.Type.NOTIFICATION_OPEN, 1_000_000);
+
+        Assert.assertEquals(100, histogram.getCount(Batch.EventDispatcher.Type.NOTIFICATION_OPEN));
+        Assert.assertEquals(0, histogram.getCount(Batch.EventDispatcher.Type.MESSAGING_SHOW));
+        Assert.assertEquals(4, histogram.getPercentileMicros(Batch.EventDispatcher.Type.NOTIFICATION_OPEN, 50));
+        Assert.assertEquals(1024, histogram.getPercentileMicros(Batch.EventDispatcher.Type.NOTIFICATION_OPEN, 100));
+        Assert.assertEquals("NOTIFICATION_OPEN 4:99,1024:1\n", histogram.dump());
+    }
+}
@@ -0,0 +1,69 @@
+package com.batch.android.dispatcher.piano;
+
+import android.os.Build;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import com.batch.android.Batch;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@RunWith(AndroidJUnit4.class)
+@Config(sdk = Build.VERSION_CODES.S)
+public class MainThreadWatchdogTest {
+
+    private static final TestEventPayload PAYLOAD = new TestEventPayload("campaign", "https://batch.com", null);
+
+    private static final long MS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    @Test
+    public void testViolationOnMainThread() {
+        MainThreadWatchdog watchdog = new MainThreadWatchdog(MainThreadWatchdog.DEFAULT_BUDGET_MICROS, 4);
+        List<MainThreadWatchdog.Violation> notified = new ArrayList<>();
+        watchdog.setListener(notified::add);
+
+        // Within budget
+        watchdog.check(Batch.EventDispatcher.Type.MESSAGING_SHOW, PAYLOAD, 0, MS / 2, MS);
+        Assert.assertEquals(0, watchdog.getViolationCount());
+
+        watchdog.check(Batch.EventDispatcher.Type.MESSAGING_SHOW, PAYLOAD, 0, MS, 3 * MS);
+        Assert.assertEquals(1, watchdog.getViolationCount());
+        Assert.assertEquals(1, notified.size());
+        MainThreadWatchdog.Violation violation = watchdog.getViolations().get(0);
+        Assert.assertEquals(Batch.EventDispatcher.Type.MESSAGING_SHOW, violation.getType());
+        Assert.assertEquals(1000, violation.getResolutionMicros());
+        Assert.assertEquals(2000, violation.getSendMicros());
+        Assert.assertEquals(3000, violation.getDurationMicros());
+        Assert.assertEquals("https://batch.com".length(), violation.getDeeplinkLength());
+    }
+
+    @Test
+    public void testBackgroundThreadIsIgnored() throws InterruptedException {
+        MainThreadWatchdog watchdog = new MainThreadWatchdog(0, 4);
+        Thread thread = new Thread(() ->
+                watchdog.check(Batch.EventDispatcher.Type.NOTIFICATION_OPEN, PAYLOAD, 0, MS, 10 * MS));
+        thread.start();
+        thread.join();
+        Assert.assertEquals(0, watchdog.getViolationCount());
+    }
+
+    @Test
+    public void testReportIsBounded() {
+        MainThreadWatchdog watchdog = new MainThreadWatchdog(0, 2);
+        watchdog.check(Batch.EventDispatcher.Type.NOTIFICATION_OPEN, PAYLOAD, 0, MS, 2 * MS);
+        watchdog.check(Batch.EventDispatcher.Type.NOTIFICATION_DISPLAY, PAYLOAD, 0, MS, 2 * MS);
+        watchdog.check(Batch.EventDispatcher.Type.MESSAGING_CLICK, PAYLOAD, 0, MS, 2 * MS);
+        Assert.assertEquals(3, watchdog.getViolationCount());
+        List<MainThreadWatchdog.Violation> violations = watchdog.getViolations();
+        Assert.assertEquals(2, violations.size());
+        Assert.assertEquals(Batch.EventDispatcher.Type.NOTIFICATION_DISPLAY, violations.get(0).getType());
+        Assert.assertEquals(Batch.EventDispatcher.Type.MESSAGING_CLICK, violations.get(1).getType());
+    }
+}
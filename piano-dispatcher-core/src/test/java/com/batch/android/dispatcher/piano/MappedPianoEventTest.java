@@ -0,0 +1,65 @@
+package com.batch.android.dispatcher.piano;
+
+import com.batch.android.Batch;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+public class MappedPianoEventTest {
+
+    @Test
+    public void testOnSiteAdsPropertyMap() {
+        MappedPianoEvent event = MappedPianoEvent.onSiteAds(Batch.EventDispatcher.Type.MESSAGING_CLICK,
+                "publisher.click", "campaign", "in-app", "Batch", 42L, true, null, PianoDataModel.Keys.DEFAULT);
+        Map<String, Object> expected = new HashMap<>();
+        expected.put("onsitead_type", "Publisher");
+        expected.put("onsitead_advertiser", "Batch");
+        expected.put("onsitead_campaign", "campaign");
+        expected.put("onsitead_format", "in-app");
+        expected.put("batch_event_time", 42L);
+        Assert.assertEquals(expected, event.toPropertyMap());
+        Assert.assertEquals(expected.size(), event.propertyCount);
+    }
+
+    @Test
+    public void testCustomOptionalSlots() {
+        MappedPianoEvent push = MappedPianoEvent.custom(Batch.EventDispatcher.Type.NOTIFICATION_OPEN,
+                "batch_notification_open", "campaign", "push", "Batch", "", "tracking_id", "webview_id", 42L, false, null, PianoDataModel.Keys.DEFAULT);
+        // Empty values and webview ids of non messaging events are not sent
+        Assert.assertNull(push.content);
+        Assert.assertNull(push.webViewAnalyticsId);
+        Map<String, Object> expected = new HashMap<>();
+        expected.put("src_campaign", "campaign");
+        expected.put("src_medium", "push");
+        expected.put("src_source", "Batch");
+        expected.put("src_force", true);
+        expected.put("batch_tracking_id", "tracking_id");
+        Assert.assertEquals(expected, push.toPropertyMap());
+        Assert.assertEquals(expected.size(), push.propertyCount);
+
+        MappedPianoEvent inApp = MappedPianoEvent.custom(Batch.EventDispatcher.Type.MESSAGING_WEBVIEW_CLICK,
+                "batch_in_app_webview_click", "campaign", "in-app", "Batch", "content", null, "webview_id", 42L, false, null, PianoDataModel.Keys.DEFAULT);
+        Assert.assertEquals("webview_id", inApp.toPropertyMap().get("batch_webview_analytics_id"));
+        Assert.assertEquals("content", inApp.toPropertyMap().get("src_content"));
+        Assert.assertEquals(6, inApp.propertyCount);
+    }
+
+    @Test
+    public void testContextProperties() {
+        PianoContextProperties context = new PianoContextProperties.Builder()
+                .put(PianoContextProperties.APP_VERSION, "1.2.3")
+                .put(PianoContextProperties.DISPATCHER_VERSION, 2)
+                .build();
+        MappedPianoEvent event = MappedPianoEvent.custom(Batch.EventDispatcher.Type.NOTIFICATION_OPEN,
+                "batch_notification_open", "campaign", "push", "Batch", null, null, null, 42L, false, context, PianoDataModel.Keys.DEFAULT);
+        Map<String, Object> properties = event.toPropertyMap();
+        Assert.assertEquals("1.2.3", properties.get("batch_app_version"));
+        Assert.assertEquals(2, properties.get("batch_dispatcher_version"));
+        Assert.assertEquals("campaign", properties.get("src_campaign"));
+        Assert.assertEquals(properties.size(), event.propertyCount);
+        Assert.assertSame(context, event.withAttribution("other", "push", "Batch", null).contextProperties);
+    }
+}
@@ -0,0 +1,85 @@
+package com.batch.android.dispatcher.piano;
+
+import android.os.Build;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowSystemClock;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+@RunWith(AndroidJUnit4.class)
+@Config(sdk = Build.VERSION_CODES.S)
+public class PianoCircuitBreakerTest {
+
+    private PianoCircuitBreaker breaker;
+
+    private List<PianoCircuitBreaker.State> transitions;
+
+    @Before
+    public void setUp() {
+        breaker = new PianoCircuitBreaker();
+        breaker.setFailureThreshold(2);
+        breaker.setCooldownMillis(1000);
+        transitions = new ArrayList<>();
+        breaker.setListener((from, to, consecutiveFailures, lastFailure) -> transitions.add(to));
+    }
+
+    @Test
+    public void testOpensAfterConsecutiveFailures() {
+        Assert.assertTrue(breaker.allowRequest());
+        breaker.onFailure(new IllegalStateException());
+        Assert.assertEquals(PianoCircuitBreaker.State.CLOSED, breaker.getState());
+        Assert.assertTrue(breaker.allowRequest());
+        breaker.onFailure(new IllegalStateException());
+        Assert.assertEquals(PianoCircuitBreaker.State.OPEN, breaker.getState());
+        Assert.assertFalse(breaker.allowRequest());
+        Assert.assertEquals(1, breaker.getSkippedDispatches());
+        Assert.assertEquals(2, breaker.getTotalFailures());
+    }
+
+    @Test
+    public void testSuccessResetsFailures() {
+        breaker.onFailure(new IllegalStateException());
+        breaker.onSuccess();
+        breaker.onFailure(new IllegalStateException());
+        Assert.assertEquals(PianoCircuitBreaker.State.CLOSED, breaker.getState());
+        Assert.assertEquals(1, breaker.getConsecutiveFailures());
+    }
+
+    @Test
+    public void testHalfOpenProbe() {
+        breaker.onFailure(new IllegalStateException());
+        breaker.onFailure(new IllegalStateException());
+        ShadowSystemClock.advanceBy(Duration.ofMillis(1000));
+
+        Assert.assertTrue(breaker.allowRequest());
+        Assert.assertEquals(PianoCircuitBreaker.State.HALF_OPEN, breaker.getState());
+        // Only one probe at a time
+        Assert.assertFalse(breaker.allowRequest());
+
+        breaker.onFailure(new IllegalStateException());
+        Assert.assertEquals(PianoCircuitBreaker.State.OPEN, breaker.getState());
+        ShadowSystemClock.advanceBy(Duration.ofMillis(1000));
+
+        Assert.assertTrue(breaker.allowRequest());
+        breaker.onSuccess();
+        Assert.assertEquals(PianoCircuitBreaker.State.CLOSED, breaker.getState());
+        Assert.assertEquals(0, breaker.getConsecutiveFailures());
+
+        List<PianoCircuitBreaker.State> expected = new ArrayList<>();
+        expected.add(PianoCircuitBreaker.State.OPEN);
+        expected.add(PianoCircuitBreaker.State.HALF_OPEN);
+        expected.add(PianoCircuitBreaker.State.OPEN);
+        expected.add(PianoCircuitBreaker.State.HALF_OPEN);
+        expected.add(PianoCircuitBreaker.State.CLOSED);
+        Assert.assertEquals(expected, transitions);
+    }
+}
@@ -0,0 +1,84 @@
+package com.batch.android.dispatcher.piano;
+
+import android.os.Build;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import com.batch.android.Batch;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.annotation.Config;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+@RunWith(AndroidJUnit4.class)
+@Config(sdk = Build.VERSION_CODES.S)
+public class PianoConsentGateTest {
+
+    private static final int ALL = PianoEventFilter.ALL_CHANNELS;
+
+    @Test
+    public void testDefaultRules() {
+        PianoConsentGate gate = new PianoConsentGate(null);
+        Assert.assertNull(gate.getPrivacyMode());
+        Assert.assertEquals(ALL, gate.filter(Batch.EventDispatcher.Type.NOTIFICATION_OPEN, ALL, true));
+
+        gate.onPrivacyModeChanged("OPTOUT");
+        Assert.assertEquals("optout", gate.getPrivacyMode());
+        Assert.assertEquals(0, gate.filter(Batch.EventDispatcher.Type.NOTIFICATION_OPEN, ALL, true));
+
+        gate.onPrivacyModeChanged("exempt");
+        Assert.assertEquals(PianoEventFilter.Channel.ON_SITE_ADS.mask, gate.filter(Batch.EventDispatcher.Type.NOTIFICATION_OPEN, ALL, true));
+        Assert.assertEquals(0, gate.filter(Batch.EventDispatcher.Type.NOTIFICATION_DISMISS, PianoEventFilter.Channel.CUSTOM.mask, true));
+
+        gate.onPrivacyModeChanged("optin");
+        Assert.assertEquals(ALL, gate.filter(Batch.EventDispatcher.Type.NOTIFICATION_OPEN, ALL, true));
+
+        Assert.assertEquals(1, gate.getSkippedCount(Batch.EventDispatcher.Type.NOTIFICATION_OPEN));
+        Assert.assertEquals(1, gate.getSkippedCount(Batch.EventDispatcher.Type.NOTIFICATION_DISMISS));
+        Assert.assertEquals(2, gate.getSkippedCount());
+    }
+
+    @Test
+    public void testCustomRules() {
+        PianoConsentGate gate = new PianoConsentGate(null);
+        gate.onPrivacyModeChanged("no-consent");
+        gate.setAllowedChannels("no-consent");
+        Assert.assertEquals(0, gate.filter(Batch.EventDispatcher.Type.MESSAGING_SHOW, ALL, true));
+        gate.setAllowedChannels("optout", PianoEventFilter.Channel.CUSTOM);
+        gate.onPrivacyModeChanged("optout");
+        Assert.assertEquals(PianoEventFilter.Channel.CUSTOM.mask, gate.filter(Batch.EventDispatcher.Type.MESSAGING_SHOW, ALL, true));
+    }
+
+    @Test
+    public void testReaderIsOnlyCalledOnRefresh() {
+        AtomicInteger reads = new AtomicInteger();
+        PianoConsentGate gate = new PianoConsentGate(() -> {
+            reads.incrementAndGet();
+            return "optout";
+        });
+        for (int i = 0; i < 10; i++) {
+            gate.filter(Batch.EventDispatcher.Type.MESSAGING_SHOW, ALL, true);
+        }
+        Assert.assertEquals(1, reads.get());
+        gate.refresh();
+        Assert.assertEquals(2, reads.get());
+        Assert.assertEquals(10, gate.getSkippedCount());
+    }
+
+    @Test
+    public void testReflectiveReader() {
+        Object target = new Object() {
+            @Override
+            public String toString() {
+                return "exempt";
+            }
+        };
+        PianoConsentGate.PrivacyModeReader reader = PianoConsentGate.reflectiveReader(() -> target, "toString");
+        Assert.assertEquals("exempt", reader.readPrivacyMode());
+        Assert.assertNull(PianoConsentGate.reflectiveReader(() -> target, "getMissingMode").readPrivacyMode());
+        Assert.assertNull(PianoConsentGate.reflectiveReader(() -> null, "toString").readPrivacyMode());
+    }
+}
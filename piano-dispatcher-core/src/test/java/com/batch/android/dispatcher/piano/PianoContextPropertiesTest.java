@@ -0,0 +1,71 @@
+package com.batch.android.dispatcher.piano;
+
+import android.content.Context;
+import android.os.Build;
+
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import com.batch.android.Batch;
+import com.batch.android.BatchEventDispatcher;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.annotation.Config;
+
+import java.util.Map;
+
+@RunWith(AndroidJUnit4.class)
+@Config(sdk = Build.VERSION_CODES.S)
+public class PianoContextPropertiesTest {
+
+    private static final BatchEventDispatcher DISPATCHER = new BatchEventDispatcher() {
+        @Override
+        public void dispatchEvent(Batch.EventDispatcher.Type type, Batch.EventDispatcher.Payload payload) {
+        }
+
+        @Override
+        public String getName() {
+            return "piano";
+        }
+
+        @Override
+        public int getVersion() {
+            return 2;
+        }
+    };
+
+    @Test
+    public void testCollect() {
+        Context context = ApplicationProvider.getApplicationContext();
+        PianoContextProperties properties = PianoContextProperties.collect(context, DISPATCHER)
+                .put("app_flavor", "store")
+                .build();
+        Map<String, Object> map = properties.getProperties();
+        Assert.assertEquals("piano", map.get(PianoContextProperties.DISPATCHER_NAME));
+        Assert.assertEquals(2, map.get(PianoContextProperties.DISPATCHER_VERSION));
+        Assert.assertEquals("store", map.get("app_flavor"));
+        Assert.assertEquals(map.size(), properties.size());
+    }
+
+    @Test
+    public void testBuilderSkipsEmptyValues() {
+        PianoContextProperties properties = new PianoContextProperties.Builder()
+                .put("empty", "")
+                .put("missing", null)
+                .put("flag", true)
+                .build();
+        Assert.assertEquals(1, properties.size());
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testImmutable() {
+        new PianoContextProperties.Builder().put("key", "value").build().getProperties().put("other", "value");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnsupportedValue() {
+        new PianoContextProperties.Builder().put("key", new Object());
+    }
+}
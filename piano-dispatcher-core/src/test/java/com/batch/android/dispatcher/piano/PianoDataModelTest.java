@@ -0,0 +1,72 @@
+package com.batch.android.dispatcher.piano;
+
+import android.os.Build;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import com.batch.android.Batch;
+
+import org.json.JSONException;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.annotation.Config;
+
+import java.util.Arrays;
+import java.util.Map;
+
+@RunWith(AndroidJUnit4.class)
+@Config(sdk = Build.VERSION_CODES.S)
+public class PianoDataModelTest {
+
+    private static final String DATA_MODEL = "{" +
+            "\"events\": [\"batch_notification_open\", {\"name\": \"batch_in_app_show\"}, \"push_display\"]," +
+            "\"properties\": [\"src_campaign\", \"src_medium\", \"src_source\", \"src_force\", {\"key\": \"batch_tracking_id\", \"type\": \"string\"}, \"event_time\"]," +
+            "\"renames\": {\"batch_event_time\": \"event_time\", \"batch_notification_display\": \"push_display\", " +
+            "\"batch_in_app_close\": \"in_app_close\", \"src_content\": \"content\"}" +
+            "}";
+
+    @Test
+    public void testResolve() throws JSONException {
+        PianoDataModel model = PianoDataModel.parse(DATA_MODEL);
+        Assert.assertEquals("batch_notification_open", model.resolveEvent("batch_notification_open"));
+        Assert.assertEquals("batch_in_app_show", model.resolveEvent("batch_in_app_show"));
+        Assert.assertEquals("push_display", model.resolveEvent("batch_notification_display"));
+        Assert.assertNull(model.resolveEvent("batch_notification_dismiss"));
+        // Rename targets must be declared
+        Assert.assertNull(model.resolveEvent("batch_in_app_close"));
+
+        Assert.assertEquals("batch_tracking_id", model.resolveProperty("batch_tracking_id"));
+        Assert.assertEquals("event_time", model.resolveProperty("batch_event_time"));
+        Assert.assertNull(model.resolveProperty("src_content"));
+        Assert.assertNull(model.resolveProperty("content"));
+        Assert.assertEquals(Arrays.asList("src_content", "batch_webview_analytics_id"), model.getDroppedPropertyNames());
+    }
+
+    @Test
+    public void testInvalidDataModel() {
+        Assert.assertThrows(JSONException.class, () -> PianoDataModel.parse("[\"batch_notification_open\"]"));
+    }
+
+    @Test
+    public void testCompiledKeys() throws JSONException {
+        PianoDataModel model = PianoDataModel.parse(DATA_MODEL);
+        MappedPianoEvent event = MappedPianoEvent.custom(Batch.EventDispatcher.Type.MESSAGING_WEBVIEW_CLICK,
+                "batch_in_app_webview_click", "campaign", "in-app", "Batch", "content", "tracking_id", "webview_id",
+                42L, true, null, model.keys);
+        Map<String, Object> properties = event.toPropertyMap();
+        Assert.assertEquals(6, properties.size());
+        Assert.assertEquals(6, event.propertyCount);
+        Assert.assertEquals("tracking_id", properties.get("batch_tracking_id"));
+        Assert.assertEquals(42L, properties.get("event_time"));
+        Assert.assertFalse(properties.containsKey("src_content"));
+        Assert.assertFalse(properties.containsKey("batch_webview_analytics_id"));
+        Assert.assertEquals(2, event.getUndeclaredPropertyCount());
+
+        // On-site Ads properties are standard and never dropped
+        MappedPianoEvent onSiteAds = MappedPianoEvent.onSiteAds(Batch.EventDispatcher.Type.MESSAGING_CLICK,
+                "publisher.click", "campaign", "in-app", "Batch", 42L, false, null, PianoDataModel.Keys.DEFAULT);
+        Assert.assertEquals(4, onSiteAds.toPropertyMap().size());
+        Assert.assertEquals(0, onSiteAds.getUndeclaredPropertyCount());
+    }
+}
@@ -0,0 +1,60 @@
+package com.batch.android.dispatcher.piano;
+
+import android.os.Build;
+import android.os.Bundle;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.annotation.Config;
+
+@RunWith(AndroidJUnit4.class)
+@Config(sdk = Build.VERSION_CODES.S)
+public class PianoDispatcherConfigurationTest {
+
+    @Test
+    public void testDefaults() {
+        PianoDispatcherConfiguration configuration = PianoDispatcherConfiguration.fromMetaData(null);
+        Assert.assertFalse(configuration.isCustomEventsEnabled());
+        Assert.assertTrue(configuration.isOnSiteAdsEventsEnabled());
+        Assert.assertTrue(configuration.isUTMTrackingEnabled());
+        Assert.assertFalse(configuration.isDualDispatchEnabled());
+        Assert.assertNull(configuration.getFilterRules());
+        Assert.assertEquals(0, configuration.getFlightRecorderSize());
+        Assert.assertFalse(configuration.isDeferredDeliveryEnabled());
+        Assert.assertEquals(DeferredEventChannel.DEFAULT_DELAY_MINUTES, configuration.getDeferredDeliveryDelayMinutes());
+        Assert.assertEquals(0, configuration.getMainThreadBudgetMicros());
+        Assert.assertEquals(0, configuration.getShardCount());
+        Assert.assertEquals(ShardedDispatchExecutor.DEFAULT_QUEUE_CAPACITY, configuration.getShardQueueCapacity());
+        Assert.assertFalse(configuration.isLoadSheddingEnabled());
+    }
+
+    @Test
+    public void testFromMetaData() {
+        Bundle metaData = new Bundle();
+        metaData.putBoolean("com.batch.android.dispatcher.piano.enable_custom_events", true);
+        metaData.putBoolean("com.batch.android.dispatcher.piano.enable_utm_tracking", false);
+        metaData.putString("com.batch.android.dispatcher.piano.filter_rules", "deny:type=NOTIFICATION_DISMISS");
+        metaData.putInt("com.batch.android.dispatcher.piano.flight_recorder_size", 16);
+        metaData.putInt("com.batch.android.dispatcher.piano.deferred_delivery_delay_minutes", 30);
+        metaData.putInt("com.batch.android.dispatcher.piano.sharded_dispatch_shards", 4);
+        metaData.putBoolean("com.batch.android.dispatcher.piano.enable_load_shedding", true);
+
+        PianoDispatcherConfiguration configuration = PianoDispatcherConfiguration.fromMetaData(metaData);
+        Assert.assertTrue(configuration.isCustomEventsEnabled());
+        Assert.assertTrue(configuration.isOnSiteAdsEventsEnabled());
+        Assert.assertFalse(configuration.isUTMTrackingEnabled());
+        Assert.assertEquals("deny:type=NOTIFICATION_DISMISS", configuration.getFilterRules());
+        Assert.assertEquals(16, configuration.getFlightRecorderSize());
+        Assert.assertEquals(30, configuration.getDeferredDeliveryDelayMinutes());
+        Assert.assertEquals(4, configuration.getShardCount());
+        Assert.assertTrue(configuration.isLoadSheddingEnabled());
+    }
+
+    @Test
+    public void testNoGeneratedConfiguration() {
+        Assert.assertNull(PianoDispatcherConfiguration.loadGenerated());
+    }
+}
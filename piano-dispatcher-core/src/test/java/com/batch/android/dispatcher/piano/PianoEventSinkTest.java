@@ -0,0 +1,74 @@
+package com.batch.android.dispatcher.piano;
+
+import android.os.Build;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import com.batch.android.Batch;
+
+import org.json.JSONObject;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+@RunWith(AndroidJUnit4.class)
+@Config(sdk = Build.VERSION_CODES.S)
+public class PianoEventSinkTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static BatchPianoEvent event(String name, String campaign) {
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("src_campaign", campaign);
+        properties.put("src_force", true);
+        properties.put("batch_event_time", 42L);
+        return new BatchPianoEvent(Batch.EventDispatcher.Type.NOTIFICATION_OPEN, name, properties, 1000L);
+    }
+
+    @Test
+    public void testInMemorySink() {
+        InMemoryPianoEventSink sink = new InMemoryPianoEventSink();
+        sink.send(Arrays.asList(event("publisher.click", "a"), event("batch_notification_open", "a")));
+        sink.send(Collections.singletonList(event("publisher.click", "b")));
+        Assert.assertEquals(3, sink.size());
+        Assert.assertEquals("batch_notification_open", sink.getEvents().get(1).getName());
+        sink.clear();
+        Assert.assertEquals(0, sink.size());
+    }
+
+    @Test
+    public void testNdjsonSink() throws Exception {
+        File file = folder.newFile("events.ndjson");
+        try (NdjsonPianoEventSink sink = new NdjsonPianoEventSink(file)) {
+            sink.send(Arrays.asList(event("publisher.click", "a"), event("batch_notification_open", "b")));
+        }
+        // The sink appends to existing files
+        try (NdjsonPianoEventSink sink = new NdjsonPianoEventSink(file)) {
+            sink.send(Collections.singletonList(event("publisher.click", "c\n\"quoted\"")));
+        }
+
+        List<String> lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+        Assert.assertEquals(3, lines.size());
+        JSONObject first = new JSONObject(lines.get(0));
+        Assert.assertEquals("NOTIFICATION_OPEN", first.getString("type"));
+        Assert.assertEquals("publisher.click", first.getString("name"));
+        Assert.assertEquals(1000L, first.getLong("ts"));
+        Assert.assertEquals("a", first.getJSONObject("properties").getString("src_campaign"));
+        Assert.assertTrue(first.getJSONObject("properties").getBoolean("src_force"));
+        Assert.assertEquals(42L, first.getJSONObject("properties").getLong("batch_event_time"));
+        Assert.assertEquals("c\n\"quoted\"", new JSONObject(lines.get(2)).getJSONObject("properties").getString("src_campaign"));
+    }
+}
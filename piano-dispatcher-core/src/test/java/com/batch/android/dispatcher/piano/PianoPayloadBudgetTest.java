@@ -0,0 +1,158 @@
+package com.batch.android.dispatcher.piano;
+
+import com.batch.android.Batch;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+public class PianoPayloadBudgetTest {
+
+    private static String repeat(String value, int count) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            builder.append(value);
+        }
+        return builder.toString();
+    }
+
+    @Test
+    public void testUtf8Length() {
+        for (String value : new String[]{"", "batch", "é", "€uro", "😀 smile"}) {
+            Assert.assertEquals(value, value.getBytes(StandardCharsets.UTF_8).length, PianoPayloadBudget.utf8Length(value));
+        }
+    }
+
+    @Test
+    public void testTruncate() {
+        String fits = "campaign";
+        Assert.assertSame(fits, PianoPayloadBudget.truncate(fits, 100));
+        Assert.assertEquals("abc", PianoPayloadBudget.truncate("abcdef", 3));
+        // "é" takes 2 bytes and must not be split
+        Assert.assertEquals("a", PianoPayloadBudget.truncate("aéb", 2));
+        // A surrogate pair takes 4 bytes and must not be split
+        Assert.assertEquals("a", PianoPayloadBudget.truncate("a😀", 4));
+        Assert.assertEquals("a😀", PianoPayloadBudget.truncate("a😀b", 5));
+    }
+
+    @Test
+    public void testEventWithinBudgetIsUnchanged() {
+        PianoPayloadBudget budget = new PianoPayloadBudget(PianoPayloadBudget.DEFAULT_MAX_PROPERTY_BYTES, PianoPayloadBudget.DEFAULT_MAX_EVENT_BYTES);
+        MappedPianoEvent event = MappedPianoEvent.custom(Batch.EventDispatcher.Type.NOTIFICATION_OPEN, "batch_notification_open",
+                "campaign", "push", "Batch", "content", "tracking", null, 0, false, null, PianoDataModel.Keys.DEFAULT);
+        Assert.assertSame(event, budget.apply(event));
+        Assert.assertEquals(0, budget.getTruncatedEventCount());
+        long recorded = 0;
+        for (long bucket : budget.getSizeBuckets()) {
+            recorded += bucket;
+        }
+        Assert.assertEquals(1, recorded);
+    }
+
+    @Test
+    public void testPropertyBudget() {
+        PianoPayloadBudget budget = new PianoPayloadBudget(16, PianoPayloadBudget.DEFAULT_MAX_EVENT_BYTES);
+        MappedPianoEvent event = MappedPianoEvent.custom(Batch.EventDispatcher.Type.NOTIFICATION_OPEN, "batch_notification_open",
+                repeat("c", 100), "push", "Batch", repeat("é", 100), "tracking", null, 0, false, null, PianoDataModel.Keys.DEFAULT);
+        MappedPianoEvent truncated = budget.apply(event);
+        Assert.assertEquals(repeat("c", 16), truncated.campaign);
+        Assert.assertEquals(repeat("é", 8), truncated.content);
+        Assert.assertSame(event.medium, truncated.medium);
+        Assert.assertEquals("tracking", truncated.trackingId);
+        Assert.assertEquals(2, budget.getTruncatedPropertyCount());
+        Assert.assertEquals(1, budget.getTruncatedEventCount());
+    }
+
+    @Test
+    public void testEventBudgetShortensContentFirst() {
+        PianoPayloadBudget budget = new PianoPayloadBudget(PianoPayloadBudget.DEFAULT_MAX_PROPERTY_BYTES, 200);
+        MappedPianoEvent event = MappedPianoEvent.custom(Batch.EventDispatcher.Type.NOTIFICATION_OPEN, "batch_notification_open",
+                repeat("c", 50), "push", "Batch", repeat("x", 500), "tracking", null, 0, false, null, PianoDataModel.Keys.DEFAULT);
+        MappedPianoEvent truncated = budget.apply(event);
+        Assert.assertSame(event.campaign, truncated.campaign);
+        Assert.assertNotNull(truncated.content);
+        Assert.assertTrue(truncated.content.length() < 500);
+
+        int size = truncated.name.length() + truncated.campaign.length() + truncated.medium.length()
+                + truncated.source.length() + truncated.content.length() + truncated.trackingId.length();
+        Assert.assertTrue(size < 200);
+    }
+
+    @Test
+    public void testEventBudgetCountsContextProperties() {
+        PianoContextProperties contextProperties = new PianoContextProperties.Builder()
+                .put("app_context", repeat("a", 100))
+                .build();
+        PianoPayloadBudget budget = new PianoPayloadBudget(PianoPayloadBudget.DEFAULT_MAX_PROPERTY_BYTES, 300);
+        MappedPianoEvent event = MappedPianoEvent.custom(Batch.EventDispatcher.Type.NOTIFICATION_OPEN, "batch_notification_open",
+                "campaign", "push", "Batch", repeat("x", 100), "tracking", null, 1700000000000L, true,
+                contextProperties, PianoDataModel.Keys.DEFAULT);
+        MappedPianoEvent truncated = budget.apply(event);
+        // The context block and the event time take 140 bytes, leaving 39 bytes of content
+        Assert.assertEquals(repeat("x", 39), truncated.content);
+        Assert.assertSame(event.campaign, truncated.campaign);
+        Assert.assertEquals(1, budget.getTruncatedPropertyCount());
+
+        // Every sent name and value fits in the budget
+        int size = 0;
+        for (Map.Entry<String, Object> property : truncated.toPropertyMap().entrySet()) {
+            size += PianoPayloadBudget.utf8Length(property.getKey())
+                    + PianoPayloadBudget.utf8Length(String.valueOf(property.getValue()));
+        }
+        size += PianoPayloadBudget.utf8Length(truncated.name);
+        Assert.assertEquals(300, size);
+    }
+
+    @Test
+    public void testDroppedValueNameIsNotCounted() {
+        PianoPayloadBudget budget = new PianoPayloadBudget(PianoPayloadBudget.DEFAULT_MAX_PROPERTY_BYTES, 80);
+        MappedPianoEvent event = MappedPianoEvent.custom(Batch.EventDispatcher.Type.NOTIFICATION_OPEN, "batch_notification_open",
+                repeat("c", 100), "push", "Batch", repeat("x", 100), null, null, 0, false, null, PianoDataModel.Keys.DEFAULT);
+        MappedPianoEvent truncated = budget.apply(event);
+        // Once content is dropped, its name no longer counts and the campaign keeps the space left
+        Assert.assertNull(truncated.content);
+        Assert.assertEquals("ccc", truncated.campaign);
+        Map<String, Object> properties = truncated.toPropertyMap();
+        Assert.assertFalse(properties.containsKey("src_content"));
+        Assert.assertEquals(80, sentSize(truncated.name, properties));
+    }
+
+    @Test
+    public void testValueTruncatedToNothingIsDropped() {
+        PianoPayloadBudget budget = new PianoPayloadBudget(PianoPayloadBudget.DEFAULT_MAX_PROPERTY_BYTES, 40);
+        MappedPianoEvent event = MappedPianoEvent.custom(Batch.EventDispatcher.Type.NOTIFICATION_OPEN, "batch_notification_open",
+                repeat("c", 100), "push", "Batch", repeat("x", 100), null, null, 0, false, null, PianoDataModel.Keys.DEFAULT);
+        MappedPianoEvent truncated = budget.apply(event);
+        Assert.assertNull(truncated.campaign);
+        Map<String, Object> properties = truncated.toPropertyMap();
+        Assert.assertFalse(properties.containsKey("src_campaign"));
+        Assert.assertFalse(properties.containsValue(""));
+        Assert.assertEquals(truncated.propertyCount, properties.size());
+        Assert.assertTrue(sentSize(truncated.name, properties) <= 40);
+
+        // On-site Ads values too
+        budget = new PianoPayloadBudget(1, PianoPayloadBudget.DEFAULT_MAX_EVENT_BYTES);
+        MappedPianoEvent onSiteAds = MappedPianoEvent.onSiteAds(Batch.EventDispatcher.Type.MESSAGING_SHOW, "publisher.impression",
+                "é", "in-app", "Batch", 0, false, null, PianoDataModel.Keys.DEFAULT);
+        properties = budget.apply(onSiteAds).toPropertyMap();
+        Assert.assertFalse(properties.containsKey("onsitead_campaign"));
+        Assert.assertEquals("B", properties.get("onsitead_advertiser"));
+        Assert.assertEquals(3, budget.getTruncatedPropertyCount());
+    }
+
+    private static int sentSize(String name, Map<String, Object> properties) {
+        int size = PianoPayloadBudget.utf8Length(name);
+        for (Map.Entry<String, Object> property : properties.entrySet()) {
+            size += PianoPayloadBudget.utf8Length(property.getKey())
+                    + PianoPayloadBudget.utf8Length(String.valueOf(property.getValue()));
+        }
+        return size;
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidBudget() {
+        new PianoPayloadBudget(0, 100);
+    }
+}
@@ -0,0 +1,107 @@
+package com.batch.android.dispatcher.piano;
+
+import android.os.Build;
+import android.os.Bundle;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import com.batch.android.Batch;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.annotation.Config;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+@RunWith(AndroidJUnit4.class)
+@Config(sdk = Build.VERSION_CODES.S)
+public class ShadowAttributionTest {
+
+    private static final PianoAttributionEngine CURRENT = (type, payload) ->
+            new PianoAttribution("campaign", "push", "Batch", null);
+
+    @Test
+    public void testMatch() {
+        ShadowAttribution shadow = new ShadowAttribution(CURRENT, CURRENT, 1, ShadowAttribution.DEFAULT_REPORT_SIZE);
+        shadow.compare(Batch.EventDispatcher.Type.NOTIFICATION_OPEN, new TestEventPayload("tracking", "https://batch.com", null));
+        Assert.assertEquals(1, shadow.getComparedCount());
+        Assert.assertEquals(0, shadow.getMismatchCount());
+        Assert.assertTrue(shadow.getMismatches().isEmpty());
+    }
+
+    @Test
+    public void testMismatchIsRedacted() {
+        PianoAttributionEngine candidate = (type, payload) -> new PianoAttribution("other", "push", "Batch", null);
+        ShadowAttribution shadow = new ShadowAttribution(CURRENT, candidate, 1, 1);
+        Bundle customPayload = new Bundle();
+        customPayload.putString("utm_campaign", "secret_campaign");
+        TestEventPayload payload = new TestEventPayload("tracking",
+                "https://batch.com/path?utm_campaign=secret&user=42#token=abc", customPayload);
+        shadow.compare(Batch.EventDispatcher.Type.NOTIFICATION_OPEN, payload);
+        shadow.compare(Batch.EventDispatcher.Type.MESSAGING_CLICK, payload);
+
+        Assert.assertEquals(2, shadow.getMismatchCount());
+        List<ShadowAttribution.Mismatch> mismatches = shadow.getMismatches();
+        Assert.assertEquals(1, mismatches.size());
+        ShadowAttribution.Mismatch mismatch = mismatches.get(0);
+        Assert.assertEquals(Batch.EventDispatcher.Type.MESSAGING_CLICK, mismatch.getType());
+        Assert.assertEquals("https://batch.com/path?utm_campaign=*&user=*#*", mismatch.getRedactedDeeplink());
+        Assert.assertEquals(Collections.singletonList("utm_campaign"), mismatch.getCustomKeys());
+        Assert.assertEquals(Collections.singletonList("campaign"), mismatch.getDifferingFields());
+        Assert.assertFalse(mismatch.toString().contains("secret"));
+    }
+
+    @Test
+    public void testMismatchHoldsNoTrackingIdOrCustomValue() {
+        PianoAttributionEngine current = (type, payload) -> new PianoAttribution(
+                payload.getTrackingId(), "push", "Batch", payload.getCustomValue("utm_content"));
+        PianoAttributionEngine candidate = (type, payload) -> new PianoAttribution(
+                "campaign", "push", "Batch", payload.getCustomValue("utm_content") + "_candidate");
+        ShadowAttribution shadow = new ShadowAttribution(current, candidate, 1, 1);
+        Bundle customPayload = new Bundle();
+        customPayload.putString("utm_content", "private_content");
+        shadow.compare(Batch.EventDispatcher.Type.MESSAGING_CLICK,
+                new TestEventPayload("private_tracking_id", null, customPayload));
+
+        ShadowAttribution.Mismatch mismatch = shadow.getMismatches().get(0);
+        Assert.assertEquals(Arrays.asList("campaign", "content"), mismatch.getDifferingFields());
+        Assert.assertEquals(Collections.singletonList("utm_content"), mismatch.getCustomKeys());
+        Assert.assertFalse(mismatch.toString().contains("private_tracking_id"));
+        Assert.assertFalse(mismatch.toString().contains("private_content"));
+    }
+
+    @Test
+    public void testFailingCandidate() {
+        PianoAttributionEngine candidate = (type, payload) -> {
+            throw new IllegalStateException();
+        };
+        ShadowAttribution shadow = new ShadowAttribution(CURRENT, candidate, 1, 1);
+        shadow.compare(Batch.EventDispatcher.Type.NOTIFICATION_OPEN, new TestEventPayload(null, null, null));
+        Assert.assertEquals(1, shadow.getFailedCount());
+        Assert.assertEquals(0, shadow.getComparedCount());
+    }
+
+    @Test
+    public void testSampling() throws InterruptedException {
+        ShadowAttribution never = new ShadowAttribution(CURRENT, CURRENT, 0, 1);
+        ShadowAttribution always = new ShadowAttribution(CURRENT, CURRENT, 1, 1);
+        for (int i = 0; i < 10; i++) {
+            never.offer(Batch.EventDispatcher.Type.NOTIFICATION_OPEN, new TestEventPayload(null, null, null));
+            always.offer(Batch.EventDispatcher.Type.NOTIFICATION_OPEN, new TestEventPayload(null, null, null));
+        }
+        long deadline = System.currentTimeMillis() + 1000;
+        while (always.getComparedCount() < 10 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(10, always.getComparedCount());
+        Assert.assertEquals(0, never.getComparedCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidSampleRate() {
+        new ShadowAttribution(CURRENT, CURRENT, 1.5, 1);
+    }
+}
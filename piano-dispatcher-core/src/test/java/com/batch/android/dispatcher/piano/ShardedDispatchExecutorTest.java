@@ -0,0 +1,153 @@
+package com.batch.android.dispatcher.piano;
+
+import android.os.Build;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import com.batch.android.Batch;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+@RunWith(AndroidJUnit4.class)
+@Config(sdk = Build.VERSION_CODES.S)
+public class ShardedDispatchExecutorTest {
+
+    private static final int CAMPAIGNS = 32;
+
+    private static final int EVENTS_PER_CAMPAIGN = 200;
+
+    @Test
+    public void testShardOf() {
+        Assert.assertEquals(0, ShardedDispatchExecutor.shardOf(null, 4));
+        for (int i = 0; i < 100; i++) {
+            int shard = ShardedDispatchExecutor.shardOf("campaign_" + i, 4);
+            Assert.assertTrue(shard >= 0 && shard < 4);
+            Assert.assertEquals(shard, ShardedDispatchExecutor.shardOf("campaign_" + i, 4));
+        }
+    }
+
+    @Test
+    public void testOrderIsKeptPerTrackingId() throws InterruptedException {
+        Map<String, List<String>> received = new HashMap<>();
+        ShardedDispatchExecutor executor = new ShardedDispatchExecutor((type, payload, startNanos, eventTime) -> {
+            synchronized (received) {
+                List<String> deeplinks = received.get(payload.getTrackingId());
+                if (deeplinks == null) {
+                    deeplinks = new ArrayList<>();
+                    received.put(payload.getTrackingId(), deeplinks);
+                }
+                deeplinks.add(payload.getDeeplink());
+            }
+        }, 4, CAMPAIGNS * EVENTS_PER_CAMPAIGN);
+
+        for (int i = 0; i < EVENTS_PER_CAMPAIGN; i++) {
+            for (int campaign = 0; campaign < CAMPAIGNS; campaign++) {
+                Assert.assertTrue(executor.execute(Batch.EventDispatcher.Type.NOTIFICATION_OPEN,
+                        new TestEventPayload("campaign_" + campaign, String.valueOf(i), null), 0, 0));
+            }
+        }
+        Assert.assertTrue(executor.awaitIdle(10, TimeUnit.SECONDS));
+        executor.shutdown();
+
+        Assert.assertEquals(CAMPAIGNS, received.size());
+        for (List<String> deeplinks : received.values()) {
+            Assert.assertEquals(EVENTS_PER_CAMPAIGN, deeplinks.size());
+            for (int i = 0; i < EVENTS_PER_CAMPAIGN; i++) {
+                Assert.assertEquals(String.valueOf(i), deeplinks.get(i));
+            }
+        }
+        long total = 0;
+        for (long count : executor.getEnqueuedCounts()) {
+            total += count;
+        }
+        Assert.assertEquals(CAMPAIGNS * EVENTS_PER_CAMPAIGN, total);
+        Assert.assertTrue(executor.getImbalance() >= 1 && executor.getImbalance() <= 4);
+        Assert.assertArrayEquals(new int[4], executor.getQueueDepths());
+    }
+
+    @Test
+    public void testTimestampsAreCarried() throws InterruptedException {
+        long[] received = new long[2];
+        ShardedDispatchExecutor executor = new ShardedDispatchExecutor((type, payload, startNanos, eventTime) -> {
+            received[0] = startNanos;
+            received[1] = eventTime;
+        }, 2, 4);
+        Assert.assertTrue(executor.execute(Batch.EventDispatcher.Type.NOTIFICATION_OPEN,
+                new TestEventPayload("campaign", null, null), 123L, 456L));
+        Assert.assertTrue(executor.awaitIdle(5, TimeUnit.SECONDS));
+        executor.shutdown();
+        Assert.assertEquals(123L, received[0]);
+        Assert.assertEquals(456L, received[1]);
+    }
+
+    @Test
+    public void testDropWhenFull() throws InterruptedException {
+        CountDownLatch release = new CountDownLatch(1);
+        ShardedDispatchExecutor executor = new ShardedDispatchExecutor((type, payload, startNanos, eventTime) -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, 1, 2);
+        TestEventPayload payload = new TestEventPayload("campaign", null, null);
+        Assert.assertTrue(executor.execute(Batch.EventDispatcher.Type.NOTIFICATION_OPEN, payload, 0, 0));
+        Assert.assertTrue(executor.execute(Batch.EventDispatcher.Type.NOTIFICATION_OPEN, payload, 0, 0));
+        Assert.assertFalse(executor.execute(Batch.EventDispatcher.Type.NOTIFICATION_OPEN, payload, 0, 0));
+        Assert.assertEquals(1, executor.getDroppedCount());
+        Assert.assertEquals(2, executor.getQueueDepths()[0]);
+
+        release.countDown();
+        Assert.assertTrue(executor.awaitIdle(5, TimeUnit.SECONDS));
+        executor.shutdown();
+        // Once shut down, events are dispatched on the caller's thread
+        Assert.assertTrue(executor.execute(Batch.EventDispatcher.Type.NOTIFICATION_OPEN, payload, 0, 0));
+        Assert.assertEquals(1, executor.getDroppedCount());
+    }
+
+    @Test
+    public void testOrderIsKeptWhenReplaced() {
+        List<String> received = new ArrayList<>();
+        ShardedDispatchExecutor.Target target = (type, payload, startNanos, eventTime) -> {
+            try {
+                // Slow enough for the queues to still hold events when the executor is replaced
+                Thread.sleep(1);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            synchronized (received) {
+                received.add(payload.getDeeplink());
+            }
+        };
+        ShardedDispatchExecutor first = new ShardedDispatchExecutor(target, 2, 1024);
+        for (int i = 0; i < 50; i++) {
+            first.execute(Batch.EventDispatcher.Type.NOTIFICATION_OPEN, new TestEventPayload("campaign", String.valueOf(i), null), 0, 0);
+        }
+        ShardedDispatchExecutor second = new ShardedDispatchExecutor(target, 4, 1024, first);
+        first.shutdown(second);
+        for (int i = 50; i < 100; i++) {
+            // Events still submitted to the previous executor are forwarded
+            ShardedDispatchExecutor executor = i % 2 == 0 ? first : second;
+            executor.execute(Batch.EventDispatcher.Type.NOTIFICATION_OPEN, new TestEventPayload("campaign", String.valueOf(i), null), 0, 0);
+        }
+        second.shutdown();
+        for (int i = 100; i < 150; i++) {
+            second.execute(Batch.EventDispatcher.Type.NOTIFICATION_OPEN, new TestEventPayload("campaign", String.valueOf(i), null), 0, 0);
+        }
+
+        Assert.assertEquals(150, received.size());
+        for (int i = 0; i < 150; i++) {
+            Assert.assertEquals(String.valueOf(i), received.get(i));
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package com.batch.android.dispatcher.piano.gradle;
+
+import org.gradle.api.DefaultTask;
+import org.gradle.api.GradleException;
+import org.gradle.api.file.DirectoryProperty;
+import org.gradle.api.provider.Property;
+import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.Optional;
+import org.gradle.api.tasks.OutputDirectory;
+import org.gradle.api.tasks.TaskAction;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+/**
+ * Writes the GeneratedPianoDispatcherConfiguration source for a variant
+ */
+public abstract class GeneratePianoDispatcherConfigurationTask extends DefaultTask {
+
+    @Input
+    @Optional
+    public abstract Property<Boolean> getCustomEvents();
+
+    @Input
+    @Optional
+    public abstract Property<Boolean> getOnSiteAdsEvents();
+
+    @Input
+    @Optional
+    public abstract Property<Boolean> getUtmTracking();
+
+    @Input
+    @Optional
+    public abstract Property<Boolean> getDualDispatch();
+
+    @Input
+    @Optional
+    public abstract Property<String> getFilterRules();
+
+    @Input
+    @Optional
+    public abstract Property<Integer> getFlightRecorderSize();
+
+    @Input
+    @Optional
+    public abstract Property<Boolean> getDeferredDelivery();
+
+    @Input
+    @Optional
+    public abstract Property<Integer> getDeferredDeliveryDelayMinutes();
+
+    @Input
+    @Optional
+    public abstract Property<Integer> getMainThreadBudgetMicros();
+
+    @Input
+    @Optional
+    public abstract Property<Integer> getMaxPropertyBytes();
+
+    @Input
+    @Optional
+    public abstract Property<Integer> getMaxEventBytes();
+
+    @Input
+    @Optional
+    public abstract Property<Boolean> getConsentGate();
+
+    @Input
+    @Optional
+    public abstract Property<Boolean> getContextProperties();
+
+    @Input
+    @Optional
+    public abstract Property<String> getDataModelAsset();
+
+    @Input
+    @Optional
+    public abstract Property<Integer> getShardedDispatchShards();
+
+    @Input
+    @Optional
+    public abstract Property<Integer> getShardedDispatchQueueCapacity();
+
+    @Input
+    @Optional
+    public abstract Property<Boolean> getLoadShedding();
+
+    @OutputDirectory
+    public abstract DirectoryProperty getOutputDirectory();
+
+    @TaskAction
+    public void generate() {
+        String source = new PianoDispatcherConfigurationGenerator()
+                .set("customEventsEnabled", getCustomEvents().getOrNull())
+                .set("onSiteAdsEventsEnabled", getOnSiteAdsEvents().getOrNull())
+                .set("utmTrackingEnabled", getUtmTracking().getOrNull())
+                .set("dualDispatchEnabled", getDualDispatch().getOrNull())
+                .set("filterRules", getFilterRules().getOrNull())
+                .set("flightRecorderSize", getFlightRecorderSize().getOrNull())
+                .set("deferredDeliveryEnabled", getDeferredDelivery().getOrNull())
+                .set("deferredDeliveryDelayMinutes", getDeferredDeliveryDelayMinutes().getOrNull())
+                .set("mainThreadBudgetMicros", getMainThreadBudgetMicros().getOrNull())
+                .set("maxPropertyBytes", getMaxPropertyBytes().getOrNull())
+                .set("maxEventBytes", getMaxEventBytes().getOrNull())
+                .set("consentGateEnabled", getConsentGate().getOrNull())
+                .set("contextPropertiesEnabled", getContextProperties().getOrNull())
+                .set("dataModelAsset", getDataModelAsset().getOrNull())
+                .set("shardCount", getShardedDispatchShards().getOrNull())
+                .set("shardQueueCapacity", getShardedDispatchQueueCapacity().getOrNull())
+                .set("loadSheddingEnabled", getLoadShedding().getOrNull())
+                .generate();
+        File packageDir = new File(getOutputDirectory().get().getAsFile(),
+                PianoDispatcherConfigurationGenerator.PACKAGE_NAME.replace('.', File.separatorChar));
+        File file = new File(packageDir, PianoDispatcherConfigurationGenerator.CLASS_NAME + ".java");
+        try {
+            Files.createDirectories(packageDir.toPath());
+            Files.write(file.toPath(), source.getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            throw new GradleException("Could not write " + file, e);
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package com.batch.android.dispatcher.piano.gradle;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Generates the source of the dispatcher configuration class.
+ * <p>
+ * The generated class extends PianoDispatcherConfiguration and only assigns the values
+ * set by the app, so the dispatcher defaults stay in one place.
+ */
+public final class PianoDispatcherConfigurationGenerator {
+
+    /**
+     * Package of the generated class, must match PianoDispatcherConfiguration.GENERATED_CLASS_NAME
+     */
+    public static final String PACKAGE_NAME = "com.batch.android.dispatcher.piano";
+
+    /**
+     * Simple name of the generated class, must match PianoDispatcherConfiguration.GENERATED_CLASS_NAME
+     */
+    public static final String CLASS_NAME = "GeneratedPianoDispatcherConfiguration";
+
+    /**
+     * Values to assign, keyed by configuration field name
+     */
+    private final Map<String, Object> values = new LinkedHashMap<>();
+
+    /**
+     * Set a configuration field value
+     *
+     * @param field Field name in PianoDispatcherConfiguration
+     * @param value Boolean, Integer or String value, null to keep the default
+     * @return This generator
+     */
+    public PianoDispatcherConfigurationGenerator set(String field, Object value) {
+        if (value != null) {
+            values.put(field, value);
+        }
+        return this;
+    }
+
+    /**
+     * Generate the Java source of the configuration class
+     *
+     * @return The Java source
+     */
+    public String generate() {
+        StringBuilder builder = new StringBuilder();
+        builder.append("package ").append(PACKAGE_NAME).append(";\n\n")
+                .append("/**\n * Generated by the Batch Piano Dispatcher Gradle plugin, do not edit.\n */\n")
+                .append("public final class ").append(CLASS_NAME).append(" extends PianoDispatcherConfiguration {\n\n")
+                .append("    public ").append(CLASS_NAME).append("() {\n");
+        for (Map.Entry<String, Object> entry : values.entrySet()) {
+            builder.append("        ").append(entry.getKey()).append(" = ")
+                    .append(toLiteral(entry.getValue())).append(";\n");
+        }
+        builder.append("    }\n}\n");
+        return builder.toString();
+    }
+
+    /**
+     * Convert a value to a Java literal
+     *
+     * @param value Boolean, Integer or String value
+     * @return The Java literal
+     */
+    static String toLiteral(Object value) {
+        if (value instanceof String) {
+            String string = (String) value;
+            StringBuilder literal = new StringBuilder(string.length() + 2).append('"');
+            for (int i = 0; i < string.length(); i++) {
+                char c = string.charAt(i);
+                switch (c) {
+                    case '"':
+                        literal.append("\\\"");
+                        break;
+                    case '\\':
+                        literal.append("\\\\");
+                        break;
+                    case '\n':
+                        literal.append("\\n");
+                        break;
+                    case '\r':
+                        literal.append("\\r");
+                        break;
+                    case '\t':
+                        literal.append("\\t");
+                        break;
+                    default:
+                        if (c < 0x20 || c > 0x7e) {
+                            literal.append(String.format("\\u%04x", (int) c));
+                        } else {
+                            literal.append(c);
+                        }
+                }
+            }
+            return literal.append('"').toString();
+        }
+        if (value instanceof Boolean || value instanceof Integer) {
+            return value.toString();
+        }
+        throw new IllegalArgumentException("Unsupported configuration value: " + value);
+    }
+}
@@ -0,0 +1,50 @@
+package com.batch.android.dispatcher.piano.gradle;
+
+import org.gradle.api.provider.Property;
+
+/**
+ * DSL block configuring the dispatcher at build time:
+ * <pre>
+ * batchPianoDispatcher {
+ *     customEvents = true
+ *     flightRecorderSize = 32
+ * }
+ * </pre>
+ * Unset values keep the dispatcher defaults.
+ */
+public abstract class PianoDispatcherExtension {
+
+    public abstract Property<Boolean> getCustomEvents();
+
+    public abstract Property<Boolean> getOnSiteAdsEvents();
+
+    public abstract Property<Boolean> getUtmTracking();
+
+    public abstract Property<Boolean> getDualDispatch();
+
+    public abstract Property<String> getFilterRules();
+
+    public abstract Property<Integer> getFlightRecorderSize();
+
+    public abstract Property<Boolean> getDeferredDelivery();
+
+    public abstract Property<Integer> getDeferredDeliveryDelayMinutes();
+
+    public abstract Property<Integer> getMainThreadBudgetMicros();
+
+    public abstract Property<Integer> getMaxPropertyBytes();
+
+    public abstract Property<Integer> getMaxEventBytes();
+
+    public abstract Property<Boolean> getConsentGate();
+
+    public abstract Property<Boolean> getContextProperties();
+
+    public abstract Property<String> getDataModelAsset();
+
+    public abstract Property<Integer> getShardedDispatchShards();
+
+    public abstract Property<Integer> getShardedDispatchQueueCapacity();
+
+    public abstract Property<Boolean> getLoadShedding();
+}
@@ -0,0 +1,69 @@
+package com.batch.android.dispatcher.piano.gradle;
+
+import com.android.build.api.variant.AndroidComponentsExtension;
+
+import org.gradle.api.GradleException;
+import org.gradle.api.Plugin;
+import org.gradle.api.Project;
+import org.gradle.api.tasks.TaskProvider;
+
+/**
+ * Gradle plugin generating the dispatcher configuration at build time.
+ * <p>
+ * The dispatcher then reads it from a class instead of querying the PackageManager
+ * for the manifest meta-data on startup. Apply it after the Android application plugin:
+ * <pre>
+ * plugins {
+ *     id 'com.android.application'
+ *     id 'com.batch.android.piano-dispatcher'
+ * }
+ * </pre>
+ */
+public class PianoDispatcherPlugin implements Plugin<Project> {
+
+    @Override
+    public void apply(Project project) {
+        PianoDispatcherExtension extension = project.getExtensions()
+                .create("batchPianoDispatcher", PianoDispatcherExtension.class);
+
+        project.getPluginManager().withPlugin("com.android.base", plugin -> {
+            AndroidComponentsExtension<?, ?, ?> androidComponents =
+                    project.getExtensions().getByType(AndroidComponentsExtension.class);
+            androidComponents.onVariants(androidComponents.selector().all(), variant -> {
+                String taskName = "generate" + capitalize(variant.getName()) + "PianoDispatcherConfiguration";
+                TaskProvider<GeneratePianoDispatcherConfigurationTask> task = project.getTasks().register(
+                        taskName, GeneratePianoDispatcherConfigurationTask.class, t -> {
+                            t.getCustomEvents().set(extension.getCustomEvents());
+                            t.getOnSiteAdsEvents().set(extension.getOnSiteAdsEvents());
+                            t.getUtmTracking().set(extension.getUtmTracking());
+                            t.getDualDispatch().set(extension.getDualDispatch());
+                            t.getFilterRules().set(extension.getFilterRules());
+                            t.getFlightRecorderSize().set(extension.getFlightRecorderSize());
+                            t.getDeferredDelivery().set(extension.getDeferredDelivery());
+                            t.getDeferredDeliveryDelayMinutes().set(extension.getDeferredDeliveryDelayMinutes());
+                            t.getMainThreadBudgetMicros().set(extension.getMainThreadBudgetMicros());
+                            t.getMaxPropertyBytes().set(extension.getMaxPropertyBytes());
+                            t.getMaxEventBytes().set(extension.getMaxEventBytes());
+                            t.getConsentGate().set(extension.getConsentGate());
+                            t.getContextProperties().set(extension.getContextProperties());
+                            t.getDataModelAsset().set(extension.getDataModelAsset());
+                            t.getShardedDispatchShards().set(extension.getShardedDispatchShards());
+                            t.getShardedDispatchQueueCapacity().set(extension.getShardedDispatchQueueCapacity());
+                            t.getLoadShedding().set(extension.getLoadShedding());
+                        });
+                if (variant.getSources().getJava() == null) {
+                    throw new GradleException("PianoDispatcher - Variant " + variant.getName() + " has no java sources");
+                }
+                variant.getSources().getJava().addGeneratedSourceDirectory(
+                        task, GeneratePianoDispatcherConfigurationTask::getOutputDirectory);
+            });
+        });
+    }
+
+    private static String capitalize(String value) {
+        if (value.isEmpty()) {
+            return value;
+        }
+        return Character.toUpperCase(value.charAt(0)) + value.substring(1);
+    }
+}
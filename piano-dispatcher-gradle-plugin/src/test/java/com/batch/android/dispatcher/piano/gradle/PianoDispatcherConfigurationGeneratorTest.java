@@ -0,0 +1,32 @@
+package com.batch.android.dispatcher.piano.gradle;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class PianoDispatcherConfigurationGeneratorTest {
+
+    @Test
+    public void testGenerateOnlySetValues() {
+        String source = new PianoDispatcherConfigurationGenerator()
+                .set("customEventsEnabled", true)
+                .set("utmTrackingEnabled", null)
+                .set("flightRecorderSize", 32)
+                .generate();
+        Assert.assertTrue(source.startsWith("package com.batch.android.dispatcher.piano;"));
+        Assert.assertTrue(source.contains("public final class GeneratedPianoDispatcherConfiguration extends PianoDispatcherConfiguration"));
+        Assert.assertTrue(source.contains("        customEventsEnabled = true;\n"));
+        Assert.assertTrue(source.contains("        flightRecorderSize = 32;\n"));
+        Assert.assertFalse(source.contains("utmTrackingEnabled"));
+    }
+
+    @Test
+    public void testStringLiteralEscaping() {
+        Assert.assertEquals("\"a\\\"b\\\\c\\n\\u00e9\"", PianoDispatcherConfigurationGenerator.toLiteral("a\"b\\c\né"));
+        Assert.assertEquals("false", PianoDispatcherConfigurationGenerator.toLiteral(false));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnsupportedValue() {
+        PianoDispatcherConfigurationGenerator.toLiteral(1.5d);
+    }
+}
@@ -0,0 +1,10 @@
+# The Piano SDK is provided by the app
+-dontwarn io.piano.android.analytics.**
+
+# Optional dependencies, only required when the matching feature is enabled
+-dontwarn kotlinx.coroutines.**
+
+# Instantiated by Batch from the manifest
+-keep class com.batch.android.dispatcher.piano.KotlinPianoRegistrar {
+    public <init>();
+}
@@ -0,0 +1,46 @@
+package com.batch.android.dispatcher.piano
+
+import io.piano.android.analytics.PianoAnalytics
+import io.piano.android.analytics.model.Event
+import io.piano.android.analytics.model.Property
+import io.piano.android.analytics.model.PropertyName
+
+/**
+ * Sink sending the mapped events to the Kotlin Piano SDK (3.3.0+).
+ */
+class KotlinPianoEventSink(private val pianoAnalytics: PianoAnalytics) : PianoEventSink {
+
+    constructor() : this(PianoAnalytics.getInstance())
+
+    override fun send(events: List<BatchPianoEvent>) {
+        pianoAnalytics.sendEvents(*Array(events.size) { toEvent(events[it]) })
+    }
+
+    internal companion object {
+        /**
+         * Convert an SDK-neutral event into a Piano event
+         *
+         * @param event The SDK-neutral event
+         * @return The Piano event
+         */
+        fun toEvent(event: BatchPianoEvent): Event {
+            val properties = event.properties.map { (key, value) -> toProperty(key, value) }
+            return Event.Builder(event.name).properties(properties.toMutableSet()).build()
+        }
+
+        /**
+         * Convert a property value into a Piano property
+         */
+        fun toProperty(key: String, value: Any): Property {
+            val name = PropertyName(key)
+            return when (value) {
+                is String -> Property(name, value)
+                is Boolean -> Property(name, value)
+                is Int -> Property(name, value)
+                is Long -> Property(name, value)
+                is Double -> Property(name, value)
+                else -> Property(name, value.toString())
+            }
+        }
+    }
+}
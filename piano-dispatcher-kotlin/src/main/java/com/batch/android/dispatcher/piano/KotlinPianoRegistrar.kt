@@ -0,0 +1,30 @@
+package com.batch.android.dispatcher.piano
+
+import android.content.Context
+import com.batch.android.BatchEventDispatcher
+
+/**
+ * Registrar of the `piano-dispatcher-kotlin` artifact, dispatching to the Kotlin Piano SDK (3.3.0+).
+ */
+class KotlinPianoRegistrar : AbstractPianoRegistrar() {
+
+    override fun getDispatcher(context: Context): BatchEventDispatcher {
+        synchronized(KotlinPianoRegistrar::class.java) {
+            return getOrCreateDispatcher(context)
+        }
+    }
+
+    private fun getOrCreateDispatcher(context: Context): BatchEventDispatcher {
+        var dispatcher = instance
+        if (dispatcher == null) {
+            dispatcher = PianoDispatcher()
+            instance = dispatcher
+            configure(context, dispatcher, loadConfiguration(context))
+        }
+        return dispatcher
+    }
+
+    private companion object {
+        private var instance: AbstractPianoDispatcher? = null
+    }
+}
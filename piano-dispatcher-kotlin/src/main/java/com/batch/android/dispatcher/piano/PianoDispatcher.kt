@@ -0,0 +1,180 @@
+package com.batch.android.dispatcher.piano
+
+import androidx.annotation.VisibleForTesting
+import com.batch.android.Batch
+import com.batch.android.Batch.EventDispatcher.Payload
+import io.piano.android.analytics.PianoAnalytics
+import io.piano.android.analytics.model.Event
+import io.piano.android.analytics.model.Property
+import io.piano.android.analytics.model.PropertyName
+
+/**
+ * Piano Event Dispatcher (Kotlin)
+ * Instantiated when running on Piano SDK 3.3.0 or newer.
+ */
+class PianoDispatcher() : AbstractPianoDispatcher() {
+
+    /**
+     * Piano Analytics instance, resolved on first dispatch and then reused
+     */
+    private val pianoAnalytics: PianoAnalytics by lazy { PianoAnalytics.getInstance() }
+
+    /**
+     * Optional publisher mirroring the mapped events as a Flow
+     */
+    @Volatile
+    private var eventPublisher: PianoEventPublisher? = null
+
+    /**
+     * Expose the mapped events as a hot Flow, alongside the send to Piano or to the event sink.
+     *
+     * Events are mapped once per Batch event whatever the number of collectors, and only
+     * when at least one collector is subscribed. Calling this method again replaces
+     * the previous publisher.
+     *
+     * Note: requires `org.jetbrains.kotlinx:kotlinx-coroutines-core` in your app.
+     *
+     * @param capacity Number of events buffered for slow collectors
+     * @param overflowStrategy What to do when the buffer is full
+     * @return The publisher holding the flow of mapped events
+     */
+    @JvmOverloads
+    fun enableEventFlow(
+        capacity: Int = PianoEventPublisher.DEFAULT_CAPACITY,
+        overflowStrategy: PianoEventPublisher.OverflowStrategy = PianoEventPublisher.OverflowStrategy.DROP_OLDEST,
+    ): PianoEventPublisher {
+        return PianoEventPublisher(capacity, overflowStrategy).also { eventPublisher = it }
+    }
+
+    /**
+     * Stop mirroring the mapped events as a Flow
+     */
+    fun disableEventFlow() {
+        eventPublisher = null
+    }
+
+    /**
+     * Lower the mapped events to Piano events and send them in a single SDK call.
+     */
+    override fun sendEvents(events: List<MappedPianoEvent>) {
+        pianoAnalytics.sendEvents(*Array(events.size) { toEvent(events[it]) })
+    }
+
+    /**
+     * Publish the mapped events to the flow before they are sent, whether they go to
+     * the Piano SDK, to an event sink, or through a dual dispatcher. Events are published even if the send then fails.
+     */
+    override fun onEventsMapped(events: List<MappedPianoEvent>) {
+        eventPublisher?.let { publisher ->
+            if (publisher.hasCollectors) {
+                events.forEach { publisher.publish(it.toBatchPianoEvent()) }
+            }
+        }
+    }
+
+    /**
+     * Read the visitor privacy mode from the privacy modes storage, if this SDK version has it
+     */
+    override fun createPrivacyModeReader(): PianoConsentGate.PrivacyModeReader? {
+        return PianoConsentGate.reflectiveReader(
+            { pianoAnalytics },
+            "getPrivacyModesStorage", "getCurrentMode", "getVisitorMode"
+        )
+    }
+
+    /**
+     * The Kotlin dispatcher never sends blank content, tracking id or webview analytics id
+     */
+    override fun dropsBlankValues(): Boolean = true
+
+    /**
+     * Convert a Piano event into its SDK-neutral representation
+     *
+     * @param type Batch event type
+     * @param event The Piano event
+     * @return The SDK-neutral event
+     */
+    @VisibleForTesting
+    fun toBatchPianoEvent(type: Batch.EventDispatcher.Type, event: Event): BatchPianoEvent {
+        val properties = HashMap<String, Any>(event.properties.size)
+        event.properties.forEach { properties[it.name.key] = it.value }
+        return BatchPianoEvent(type, event.name, properties, System.currentTimeMillis())
+    }
+
+    /**
+     * Build an On-Site Ads Piano Event from a Batch Event
+     *
+     * @param type Batch event type
+     * @param payload Batch event payload
+     * @return The Piano event to send
+     */
+    @VisibleForTesting
+    fun buildPianoOnSiteAdsEvent(type: Batch.EventDispatcher.Type, payload: Payload): Event? {
+        return mapOnSiteAdsEvent(type, payload)?.let { toEvent(it) }
+    }
+
+    /**
+     * Build a Piano Custom Event from a Batch Event
+     *
+     * @param type Batch event type
+     * @param payload Batch event payload
+     * @return The Piano event to send
+     */
+    @VisibleForTesting
+    fun buildPianoCustomEvent(
+        type: Batch.EventDispatcher.Type,
+        payload: Payload
+    ): Event {
+        return toEvent(mapCustomEvent(type, payload))
+    }
+
+    /**
+     * Lower a mapped event to a Piano event
+     *
+     * @param event The mapped event
+     * @return The Piano event
+     */
+    private fun toEvent(event: MappedPianoEvent): Event {
+        val data = HashSet<Property>(event.propertyCount * 4 / 3 + 1)
+        event.contextProperties?.let { data.addAll(lowerContextProperties(it)) }
+        val keys = event.keys
+        if (event.custom) {
+            event.source?.let { value -> keys.source?.let { data.add(Property(PropertyName(it), value)) } }
+            event.campaign?.let { value -> keys.campaign?.let { data.add(Property(PropertyName(it), value)) } }
+            event.medium?.let { value -> keys.medium?.let { data.add(Property(PropertyName(it), value)) } }
+            keys.sourceForce?.let { data.add(Property(PropertyName(it), true)) }
+            if (!event.trackingId.isNullOrBlank() && keys.trackingId != null) {
+                data.add(Property(PropertyName(keys.trackingId), event.trackingId))
+            }
+            if (!event.content.isNullOrBlank() && keys.content != null) {
+                data.add(Property(PropertyName(keys.content), event.content))
+            }
+            if (!event.webViewAnalyticsId.isNullOrBlank() && keys.webViewAnalyticsId != null) {
+                data.add(Property(PropertyName(keys.webViewAnalyticsId), event.webViewAnalyticsId))
+            }
+        } else {
+            data.add(Property(PropertyName(ON_SITE_TYPE), ON_SITE_TYPE_PUBLISHER))
+            event.source?.let { data.add(Property(PropertyName(ON_SITE_ADVERTISER), it)) }
+            event.campaign?.let { data.add(Property(PropertyName(ON_SITE_CAMPAIGN), it)) }
+            event.medium?.let { data.add(Property(PropertyName(ON_SITE_FORMAT), it)) }
+        }
+        if (event.hasEventTime && keys.eventTime != null) {
+            data.add(Property(PropertyName(keys.eventTime), event.eventTime))
+        }
+        return Event.Builder(event.name).properties(data).build()
+    }
+
+    /**
+     * Lower a context property block once, then reuse its immutable properties for every event
+     *
+     * @param contextProperties The context property block
+     * @return The Piano properties
+     */
+    private fun lowerContextProperties(contextProperties: PianoContextProperties): List<Property> {
+        @Suppress("UNCHECKED_CAST")
+        (contextProperties.lowered as? List<Property>)?.let { return it }
+        return contextProperties.properties
+            .map { (key, value) -> KotlinPianoEventSink.toProperty(key, value) }
+            .also { contextProperties.lowered = it }
+    }
+}
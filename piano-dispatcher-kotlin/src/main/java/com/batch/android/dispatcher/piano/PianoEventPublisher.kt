@@ -0,0 +1,89 @@
+package com.batch.android.dispatcher.piano
+
+import kotlinx.coroutines.channels.BufferOverflow
+import kotlinx.coroutines.flow.MutableSharedFlow
+import kotlinx.coroutines.flow.SharedFlow
+import kotlinx.coroutines.flow.asSharedFlow
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * Publish the events mapped by [PianoDispatcher] as a hot [SharedFlow].
+ *
+ * Events are mapped once and shared by every collector. Publishing never suspends:
+ * Batch's callback thread only tries to emit into the buffer and moves on.
+ *
+ * Note: requires `org.jetbrains.kotlinx:kotlinx-coroutines-core` in your app.
+ *
+ * @param capacity Number of events buffered for slow collectors
+ * @param overflowStrategy What to do when the buffer is full
+ */
+class PianoEventPublisher internal constructor(
+    val capacity: Int,
+    val overflowStrategy: OverflowStrategy,
+) {
+
+    /**
+     * Behaviour when collectors are too slow and the buffer is full
+     */
+    enum class OverflowStrategy {
+        /**
+         * Collectors apply backpressure to the buffer. As Batch's callback thread
+         * can't be suspended, events that don't fit are dropped and counted.
+         */
+        SUSPEND,
+
+        /**
+         * Drop the oldest buffered event to make room for the new one
+         */
+        DROP_OLDEST,
+
+        /**
+         * Only keep the most recent event, whatever the capacity
+         */
+        CONFLATE,
+    }
+
+    init {
+        require(capacity > 0) { "capacity must be greater than 0" }
+    }
+
+    private val flow: MutableSharedFlow<BatchPianoEvent> = when (overflowStrategy) {
+        OverflowStrategy.SUSPEND -> MutableSharedFlow(0, capacity, BufferOverflow.SUSPEND)
+        OverflowStrategy.DROP_OLDEST -> MutableSharedFlow(0, capacity, BufferOverflow.DROP_OLDEST)
+        OverflowStrategy.CONFLATE -> MutableSharedFlow(0, 1, BufferOverflow.DROP_OLDEST)
+    }
+
+    private val dropped = AtomicLong()
+
+    /**
+     * Mapped events, shared between all collectors
+     */
+    val events: SharedFlow<BatchPianoEvent> = flow.asSharedFlow()
+
+    /**
+     * Number of events that could not be buffered (only with [OverflowStrategy.SUSPEND])
+     */
+    val droppedEvents: Long
+        get() = dropped.get()
+
+    /**
+     * Whether someone is collecting the events, used to skip the mapping when nobody listens.
+     */
+    internal val hasCollectors: Boolean
+        get() = flow.subscriptionCount.value > 0
+
+    /**
+     * Try to emit an event without ever suspending the caller
+     *
+     * @param event The mapped event
+     */
+    internal fun publish(event: BatchPianoEvent) {
+        if (!flow.tryEmit(event)) {
+            dropped.incrementAndGet()
+        }
+    }
+
+    companion object {
+        const val DEFAULT_CAPACITY = 64
+    }
+}
@@ -0,0 +1,67 @@
+package com.batch.android.dispatcher.piano;
+
+import android.os.Build;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import com.batch.android.Batch;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.annotation.Config;
+
+@RunWith(AndroidJUnit4.class)
+@Config(sdk = Build.VERSION_CODES.S)
+public class DispatchFlightRecorderTest {
+
+    @Test
+    public void testCapacityRoundedToPowerOfTwo() {
+        Assert.assertEquals(8, new DispatchFlightRecorder(5).getCapacity());
+        Assert.assertEquals(4, new DispatchFlightRecorder(4).getCapacity());
+    }
+
+    @Test
+    public void testDumpEmpty() {
+        Assert.assertEquals("[]", new DispatchFlightRecorder(4).dump());
+    }
+
+    @Test
+    public void testDumpKeepsMostRecentRecords() throws JSONException {
+        DispatchFlightRecorder recorder = new DispatchFlightRecorder(2);
+        for (int i = 0; i < 3; i++) {
+            recorder.record(Batch.EventDispatcher.Type.NOTIFICATION_OPEN, "campaign_" + i, "push", "Batch",
+                    "publisher.click", null, 1000L + i, 5000L);
+        }
+        Assert.assertEquals(3, recorder.getRecordedCount());
+
+        JSONArray records = new JSONArray(recorder.dump());
+        Assert.assertEquals(2, records.length());
+        JSONObject oldest = records.getJSONObject(0);
+        Assert.assertEquals(1, oldest.getLong("seq"));
+        Assert.assertEquals("NOTIFICATION_OPEN", oldest.getString("type"));
+        Assert.assertEquals("campaign_1", oldest.getString("campaign"));
+        Assert.assertEquals("push", oldest.getString("medium"));
+        Assert.assertEquals("Batch", oldest.getString("source"));
+        Assert.assertEquals(1, oldest.getJSONArray("events").length());
+        Assert.assertEquals("publisher.click", oldest.getJSONArray("events").getString(0));
+        Assert.assertEquals(5, oldest.getLong("durationUs"));
+        Assert.assertEquals("campaign_2", records.getJSONObject(1).getString("campaign"));
+    }
+
+    @Test
+    public void testDispatcherRecords() throws JSONException {
+        PianoDispatcher dispatcher = new PianoDispatcher();
+        dispatcher.enableBatchOnSiteAdsEvents(false);
+        dispatcher.enableFlightRecorder(4);
+        // Nothing to send, so nothing is resolved nor recorded
+        dispatcher.dispatchEvent(Batch.EventDispatcher.Type.NOTIFICATION_OPEN, new TestEventPayload("campaign_label", null, null));
+        Assert.assertNotNull(dispatcher.getFlightRecorder());
+        Assert.assertEquals(0, dispatcher.getFlightRecorder().getRecordedCount());
+        dispatcher.disableFlightRecorder();
+        Assert.assertNull(dispatcher.getFlightRecorder());
+    }
+}
@@ -0,0 +1,140 @@
+package com.batch.android.dispatcher.piano;
+
+import android.os.Build;
+import android.os.Bundle;
+
+import androidx.annotation.NonNull;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import com.batch.android.Batch;
+import com.batch.android.BatchEventDispatcher;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+@RunWith(AndroidJUnit4.class)
+@Config(sdk = Build.VERSION_CODES.S)
+public class EventCaptureTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static class RecordingDispatcher implements BatchEventDispatcher {
+
+        final List<Batch.EventDispatcher.Type> types = new ArrayList<>();
+        final List<Batch.EventDispatcher.Payload> payloads = new ArrayList<>();
+
+        @Override
+        public void dispatchEvent(@NonNull Batch.EventDispatcher.Type type, @NonNull Batch.EventDispatcher.Payload payload) {
+            types.add(type);
+            payloads.add(payload);
+        }
+
+        @Override
+        public String getName() {
+            return "recording";
+        }
+
+        @Override
+        public int getVersion() {
+            return 1;
+        }
+    }
+
+    @Test
+    public void testCaptureAndReplay() throws Exception {
+        File file = folder.newFile();
+        Bundle customPayload = new Bundle();
+        customPayload.putString("utm_source", "firebase");
+        customPayload.putString("unrelated", "ignored");
+
+        EventCaptureWriter writer = new EventCaptureWriter(file, 1024, false);
+        writer.capture(Batch.EventDispatcher.Type.NOTIFICATION_OPEN,
+                new TestEventPayload("tracking_id", null, "https://test.com?utm_campaign=campaign", customPayload));
+        writer.capture(Batch.EventDispatcher.Type.MESSAGING_WEBVIEW_CLICK,
+                new TestEventPayload(null, "webview_id", null, null));
+        writer.close();
+        Assert.assertEquals(2, writer.getCapturedCount());
+
+        RecordingDispatcher dispatcher = new RecordingDispatcher();
+        EventCaptureReplayer.Result result = EventCaptureReplayer.replay(file, dispatcher, false);
+        Assert.assertEquals(2, result.getEventCount());
+        Assert.assertEquals(Batch.EventDispatcher.Type.NOTIFICATION_OPEN, dispatcher.types.get(0));
+        Assert.assertEquals("tracking_id", dispatcher.payloads.get(0).getTrackingId());
+        Assert.assertEquals("https://test.com?utm_campaign=campaign", dispatcher.payloads.get(0).getDeeplink());
+        Assert.assertEquals("firebase", dispatcher.payloads.get(0).getCustomValue("utm_source"));
+        Assert.assertNull(dispatcher.payloads.get(0).getCustomValue("unrelated"));
+        Assert.assertEquals(Batch.EventDispatcher.Type.MESSAGING_WEBVIEW_CLICK, dispatcher.types.get(1));
+        Assert.assertEquals("webview_id", dispatcher.payloads.get(1).getWebViewAnalyticsID());
+        Assert.assertNull(dispatcher.payloads.get(1).getDeeplink());
+    }
+
+    @Test
+    public void testPiiHashingKeepsAttribution() throws Exception {
+        File file = folder.newFile();
+        EventCaptureWriter writer = new EventCaptureWriter(file, 1024, true);
+        TestEventPayload payload = new TestEventPayload("tracking_id", null,
+                "https://test.com/user/42?email=a@b.c&utm_campaign=campaign#utm_medium=email&token=secret", null);
+        writer.capture(Batch.EventDispatcher.Type.NOTIFICATION_OPEN, payload);
+        // The tracking id is the campaign when the deeplink has none
+        TestEventPayload fallback = new TestEventPayload("tracking_id", "webview_id", "https://test.com/user/42", null);
+        writer.capture(Batch.EventDispatcher.Type.MESSAGING_WEBVIEW_CLICK, fallback);
+        writer.close();
+
+        RecordingDispatcher dispatcher = new RecordingDispatcher();
+        EventCaptureReplayer.replay(file, dispatcher, false);
+        Batch.EventDispatcher.Payload replayed = dispatcher.payloads.get(0);
+        Assert.assertFalse(replayed.getDeeplink().contains("email="));
+        Assert.assertFalse(replayed.getDeeplink().contains("secret"));
+
+        PianoDispatcher pianoDispatcher = new PianoDispatcher();
+        Assert.assertEquals(pianoDispatcher.getCampaign(payload), pianoDispatcher.getCampaign(replayed));
+        Assert.assertEquals(pianoDispatcher.getMedium(payload, Batch.EventDispatcher.Type.NOTIFICATION_OPEN),
+                pianoDispatcher.getMedium(replayed, Batch.EventDispatcher.Type.NOTIFICATION_OPEN));
+
+        Batch.EventDispatcher.Payload replayedFallback = dispatcher.payloads.get(1);
+        Assert.assertNotEquals("webview_id", replayedFallback.getWebViewAnalyticsID());
+        Assert.assertEquals("tracking_id", pianoDispatcher.getCampaign(replayedFallback));
+    }
+
+    @Test
+    public void testOversizedRecordIsSkipped() throws Exception {
+        File file = folder.newFile();
+        EventCaptureWriter writer = new EventCaptureWriter(file, 1024 * 1024, false);
+        StringBuilder deeplink = new StringBuilder("https://test.com?utm_campaign=");
+        while (deeplink.length() <= 65535) {
+            deeplink.append("campaign");
+        }
+        writer.capture(Batch.EventDispatcher.Type.NOTIFICATION_OPEN, new TestEventPayload(null, deeplink.toString(), null));
+        writer.capture(Batch.EventDispatcher.Type.NOTIFICATION_OPEN, new TestEventPayload("campaign_label", null, null));
+        writer.close();
+        Assert.assertEquals(1, writer.getSkippedCount());
+        Assert.assertEquals(1, writer.getCapturedCount());
+
+        RecordingDispatcher dispatcher = new RecordingDispatcher();
+        Assert.assertEquals(1, EventCaptureReplayer.replay(file, dispatcher, false).getEventCount());
+        Assert.assertEquals("campaign_label", dispatcher.payloads.get(0).getTrackingId());
+    }
+
+    @Test
+    public void testSizeCap() throws Exception {
+        File file = folder.newFile();
+        EventCaptureWriter writer = new EventCaptureWriter(file, 64, false);
+        for (int i = 0; i < 10; i++) {
+            writer.capture(Batch.EventDispatcher.Type.NOTIFICATION_DISPLAY, new TestEventPayload("campaign_label", null, null));
+        }
+        writer.close();
+        Assert.assertTrue(writer.isFull());
+        Assert.assertTrue(file.length() <= 64);
+        Assert.assertEquals(writer.getCapturedCount(),
+                EventCaptureReplayer.replay(file, new RecordingDispatcher(), false).getEventCount());
+    }
+}
@@ -0,0 +1,121 @@
+package com.batch.android.dispatcher.piano
+
+import android.content.Context
+import androidx.test.core.app.ApplicationProvider
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import com.batch.android.Batch
+import com.batch.android.BatchEventDispatcher
+import io.piano.android.analytics.PianoAnalytics
+import io.piano.android.analytics.model.Event
+import org.junit.Assert
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.mockito.Mockito
+import org.mockito.stubbing.Answer
+import org.powermock.reflect.Whitebox
+import java.util.Collections
+import java.util.IdentityHashMap
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.atomic.AtomicLong
+
+@RunWith(AndroidJUnit4::class)
+class PianoDispatcherStressTest {
+    private lateinit var context: Context
+    private lateinit var dispatcher: PianoDispatcher
+
+    /**
+     * Events received by the fake Piano SDK, by event name and campaign
+     */
+    private val sink = ConcurrentHashMap<String, AtomicInteger>()
+    private val sinkTotal = AtomicLong()
+
+    @Before
+    fun setUp() {
+        context = ApplicationProvider.getApplicationContext()
+        dispatcher = PianoDispatcher()
+        val pianoAnalytics = Mockito.mock(PianoAnalytics::class.java, Answer<Any?> { invocation ->
+            if (invocation.method.name == "sendEvents") {
+                invocation.arguments.forEach { receive(it as Event) }
+            }
+            null
+        })
+        Whitebox.setInternalState(dispatcher, "pianoAnalytics\$delegate", lazyOf(pianoAnalytics))
+    }
+
+    private fun receive(event: Event) {
+        val properties = event.properties.associate { it.name.key to it.value }
+        val campaign = properties["onsitead_campaign"] ?: properties["batch_tracking_id"]
+        sink.getOrPut("${event.name}|$campaign") { AtomicInteger() }.incrementAndGet()
+        sinkTotal.incrementAndGet()
+    }
+
+    @Test
+    fun testRegistrarCreatesASingleDispatcher() {
+        Whitebox.setInternalState(KotlinPianoRegistrar::class.java, "instance", null as Any?)
+        val instances = Collections.synchronizedSet(Collections.newSetFromMap(IdentityHashMap<BatchEventDispatcher, Boolean>()))
+        val result = ConcurrencyHarness.run(THREADS, 200) { _, _ ->
+            instances.add(KotlinPianoRegistrar().getDispatcher(context))
+        }
+        Assert.assertTrue(result.errors.toString(), result.errors.isEmpty())
+        Assert.assertEquals(1, instances.size)
+    }
+
+    @Test
+    fun testDispatchWhileConfigurationChanges() {
+        val iterations = 500
+        val result = ConcurrencyHarness.run(THREADS, iterations) { thread, iteration ->
+            if (thread == 0) {
+                dispatcher.enableBatchCustomEvents(iteration % 2 == 0)
+                dispatcher.enableUTMTracking(iteration % 3 != 0)
+                dispatcher.enableEventTimeProperty(iteration % 5 == 0)
+            } else {
+                dispatcher.dispatchEvent(
+                    Batch.EventDispatcher.Type.NOTIFICATION_OPEN,
+                    TestEventPayload("id-$thread-$iteration", null, null)
+                )
+            }
+        }
+        Assert.assertTrue(result.errors.toString(), result.errors.isEmpty())
+
+        var customEvents = 0
+        for (thread in 1 until THREADS) {
+            for (iteration in 0 until iterations) {
+                val id = "id-$thread-$iteration"
+                // On-site Ads are never disabled: exactly one per dispatch
+                Assert.assertEquals(id, 1, sink["publisher.click|$id"]?.get())
+                // Custom events may or may not be enabled, but are never duplicated
+                sink["batch_notification_open|$id"]?.let {
+                    Assert.assertEquals(id, 1, it.get())
+                    customEvents++
+                }
+            }
+        }
+        Assert.assertEquals(((THREADS - 1) * iterations + customEvents).toLong(), sinkTotal.get())
+    }
+
+    @Test
+    fun testThroughputScaling() {
+        val iterations = 2000
+        var threads = 1
+        while (threads <= THREADS) {
+            sink.clear()
+            sinkTotal.set(0)
+            val result = ConcurrencyHarness.run(threads, iterations) { thread, iteration ->
+                dispatcher.dispatchEvent(
+                    Batch.EventDispatcher.Type.NOTIFICATION_OPEN,
+                    TestEventPayload("id-$thread-$iteration", null, null)
+                )
+            }
+            Assert.assertTrue(result.errors.toString(), result.errors.isEmpty())
+            Assert.assertEquals(result.operations.toLong(), sinkTotal.get())
+            println("PianoDispatcher - $result")
+            threads *= 2
+        }
+    }
+
+    private companion object {
+        private const val THREADS = 8
+    }
+}
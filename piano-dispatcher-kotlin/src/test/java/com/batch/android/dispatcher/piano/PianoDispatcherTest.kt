@@ -5,6 +5,11 @@ import androidx.test.ext.junit.runners.AndroidJUnit4
 import com.batch.android.Batch
 import io.piano.android.analytics.model.Property
 import io.piano.android.analytics.model.PropertyName
+import kotlinx.coroutines.CoroutineStart
+import kotlinx.coroutines.flow.take
+import kotlinx.coroutines.flow.toList
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.runBlocking
 import org.junit.Assert
 import org.junit.Before
 import org.junit.Test
@@ -251,4 +256,61 @@ class PianoDispatcherTest {
         Assert.assertEquals("publisher.click", event!!.name)
         Assert.assertEquals(expectedData, event.properties)
     }
-}
\ No newline at end of file
+
+    @Test
+    fun testToBatchPianoEvent() {
+        val payload = TestEventPayload("campaign_label", null, null)
+        val event = dispatcher.buildPianoOnSiteAdsEvent(
+            Batch.EventDispatcher.Type.MESSAGING_CLICK,
+            payload
+        )
+        val mapped = dispatcher.toBatchPianoEvent(Batch.EventDispatcher.Type.MESSAGING_CLICK, event!!)
+        val expectedData: Map<String, Any> = mapOf(
+            "onsitead_type" to "Publisher",
+            "onsitead_advertiser" to "Batch",
+            "onsitead_campaign" to "campaign_label",
+            "onsitead_format" to "in-app",
+        )
+        Assert.assertEquals(Batch.EventDispatcher.Type.MESSAGING_CLICK, mapped.batchType)
+        Assert.assertEquals("publisher.click", mapped.name)
+        Assert.assertEquals(expectedData, mapped.properties)
+    }
+
+    @Test
+    fun testEventSinkMatchesDirectMapping() {
+        val sink = InMemoryPianoEventSink()
+        dispatcher.setEventSink(sink)
+        dispatcher.enableBatchCustomEvents(true)
+        val payload = TestEventPayload("campaign_label", null, null)
+        dispatcher.dispatchEvent(Batch.EventDispatcher.Type.NOTIFICATION_OPEN, payload)
+
+        val events = sink.events
+        Assert.assertEquals(2, events.size)
+        val onSiteAdsEvent = dispatcher.buildPianoOnSiteAdsEvent(Batch.EventDispatcher.Type.NOTIFICATION_OPEN, payload)!!
+        val customEvent = dispatcher.buildPianoCustomEvent(Batch.EventDispatcher.Type.NOTIFICATION_OPEN, payload)
+        // Lowering the SDK-neutral events gives back the events the dispatcher sends itself
+        val lowered = events.map { KotlinPianoEventSink.toEvent(it) }
+        Assert.assertEquals(onSiteAdsEvent.name, lowered[0].name)
+        Assert.assertEquals(onSiteAdsEvent.properties, lowered[0].properties)
+        Assert.assertEquals(customEvent.name, lowered[1].name)
+        Assert.assertEquals(customEvent.properties, lowered[1].properties)
+    }
+
+    @Test
+    fun testEventFlowPublishesEventsSentToSink() = runBlocking {
+        val sink = InMemoryPianoEventSink()
+        dispatcher.setEventSink(sink)
+        dispatcher.enableBatchCustomEvents(true)
+        val publisher = dispatcher.enableEventFlow()
+        val received = mutableListOf<BatchPianoEvent>()
+        val job = launch(start = CoroutineStart.UNDISPATCHED) {
+            publisher.events.take(2).toList(received)
+        }
+        val payload = TestEventPayload("campaign_label", null, null)
+        dispatcher.dispatchEvent(Batch.EventDispatcher.Type.NOTIFICATION_OPEN, payload)
+        job.join()
+
+        Assert.assertEquals(sink.events.map { it.name }, received.map { it.name })
+        Assert.assertEquals(sink.events.map { it.properties }, received.map { it.properties })
+    }
+}
@@ -0,0 +1,94 @@
+package com.batch.android.dispatcher.piano;
+
+import android.os.Build;
+
+import androidx.annotation.Nullable;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import com.batch.android.Batch;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.annotation.Config;
+
+@RunWith(AndroidJUnit4.class)
+@Config(sdk = Build.VERSION_CODES.S)
+public class PianoEventFilterTest {
+
+    private static final int ON_SITE_ADS = PianoEventFilter.Channel.ON_SITE_ADS.mask;
+    private static final int CUSTOM = PianoEventFilter.Channel.CUSTOM.mask;
+
+    @Test
+    public void testChannelRules() {
+        PianoEventFilter filter = new PianoEventFilter.Builder()
+                .drop(Batch.EventDispatcher.Type.MESSAGING_CLOSE, PianoEventFilter.Channel.CUSTOM)
+                .drop(Batch.EventDispatcher.Type.NOTIFICATION_DISMISS, PianoEventFilter.Channel.CUSTOM)
+                .drop(Batch.EventDispatcher.Type.NOTIFICATION_DISMISS, PianoEventFilter.Channel.ON_SITE_ADS)
+                .build();
+        Assert.assertEquals(ON_SITE_ADS, filter.getAllowedChannels(Batch.EventDispatcher.Type.MESSAGING_CLOSE));
+        Assert.assertEquals(0, filter.getAllowedChannels(Batch.EventDispatcher.Type.NOTIFICATION_DISMISS));
+        Assert.assertEquals(ON_SITE_ADS | CUSTOM, filter.getAllowedChannels(Batch.EventDispatcher.Type.NOTIFICATION_OPEN));
+    }
+
+    @Test
+    public void testTrackingIdPrefixes() {
+        PianoEventFilter filter = new PianoEventFilter.Builder()
+                .dropTrackingIdPrefix("test_")
+                .dropTrackingIdPrefix("qa")
+                .dropTrackingIdPrefix("team")
+                .build();
+        Assert.assertTrue(filter.rejectsTrackingId("test_campaign"));
+        Assert.assertTrue(filter.rejectsTrackingId("qa"));
+        Assert.assertTrue(filter.rejectsTrackingId("teamX"));
+        Assert.assertFalse(filter.rejectsTrackingId("test"));
+        Assert.assertFalse(filter.rejectsTrackingId("tea"));
+        Assert.assertFalse(filter.rejectsTrackingId("campaign"));
+        Assert.assertFalse(filter.rejectsTrackingId(null));
+    }
+
+    @Test
+    public void testParse() {
+        PianoEventFilter filter = PianoEventFilter.parse(
+                "drop:MESSAGING_CLOSE:custom; drop:*:onsite;drop_tracking_id:test_;invalid;drop:UNKNOWN:all");
+        Assert.assertEquals(0, filter.getAllowedChannels(Batch.EventDispatcher.Type.MESSAGING_CLOSE));
+        Assert.assertEquals(CUSTOM, filter.getAllowedChannels(Batch.EventDispatcher.Type.NOTIFICATION_OPEN));
+        Assert.assertTrue(filter.rejectsTrackingId("test_campaign"));
+    }
+
+    @Test
+    public void testRejectedBeforeParsing() {
+        PianoDispatcher dispatcher = new PianoDispatcher();
+        dispatcher.enableBatchCustomEvents(true);
+        dispatcher.setEventFilter(new PianoEventFilter.Builder()
+                .drop(Batch.EventDispatcher.Type.MESSAGING_CLOSE, PianoEventFilter.Channel.CUSTOM)
+                .dropTrackingIdPrefix("test_")
+                .build());
+
+        dispatcher.dispatchEvent(Batch.EventDispatcher.Type.MESSAGING_CLOSE, new UnreadablePayload("campaign"));
+        dispatcher.dispatchEvent(Batch.EventDispatcher.Type.NOTIFICATION_OPEN, new UnreadablePayload("test_campaign"));
+        Assert.assertEquals(2, dispatcher.getEventFilter().getRejectedCount());
+    }
+
+    /**
+     * Payload failing the test if the dispatcher tries to read its deeplink or custom payload
+     */
+    private static class UnreadablePayload extends TestEventPayload {
+
+        UnreadablePayload(String trackingId) {
+            super(trackingId, null, null);
+        }
+
+        @Nullable
+        @Override
+        public String getDeeplink() {
+            throw new AssertionError("Deeplink should not be read");
+        }
+
+        @Nullable
+        @Override
+        public String getCustomValue(String key) {
+            throw new AssertionError("Custom payload should not be read");
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.batch.android.dispatcher.piano
+
+import com.batch.android.Batch
+import kotlinx.coroutines.CoroutineStart
+import kotlinx.coroutines.flow.take
+import kotlinx.coroutines.flow.toList
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.runBlocking
+import org.junit.Assert
+import org.junit.Test
+
+class PianoEventPublisherTest {
+
+    private fun event(name: String) = BatchPianoEvent(
+        Batch.EventDispatcher.Type.NOTIFICATION_OPEN,
+        name,
+        emptyMap(),
+        0L
+    )
+
+    @Test
+    fun testNoCollectors() {
+        val publisher = PianoEventPublisher(1, PianoEventPublisher.OverflowStrategy.SUSPEND)
+        Assert.assertFalse(publisher.hasCollectors)
+        publisher.publish(event("first"))
+        publisher.publish(event("second"))
+        Assert.assertEquals(0L, publisher.droppedEvents)
+    }
+
+    @Test
+    fun testSuspendNeverBlocksPublisher() = runBlocking {
+        val publisher = PianoEventPublisher(1, PianoEventPublisher.OverflowStrategy.SUSPEND)
+        val received = mutableListOf<BatchPianoEvent>()
+        val job = launch(start = CoroutineStart.UNDISPATCHED) {
+            publisher.events.take(1).toList(received)
+        }
+        Assert.assertTrue(publisher.hasCollectors)
+        // The collector can't run until we suspend, so only the first event fits in the buffer
+        publisher.publish(event("first"))
+        publisher.publish(event("second"))
+        publisher.publish(event("third"))
+        job.join()
+        Assert.assertEquals(2L, publisher.droppedEvents)
+        Assert.assertEquals("first", received[0].name)
+    }
+
+    @Test
+    fun testDropOldestKeepsLatest() = runBlocking {
+        val publisher = PianoEventPublisher(1, PianoEventPublisher.OverflowStrategy.DROP_OLDEST)
+        val received = mutableListOf<BatchPianoEvent>()
+        val job = launch(start = CoroutineStart.UNDISPATCHED) {
+            publisher.events.take(1).toList(received)
+        }
+        publisher.publish(event("first"))
+        publisher.publish(event("second"))
+        job.join()
+        Assert.assertEquals(0L, publisher.droppedEvents)
+        Assert.assertEquals("second", received[0].name)
+    }
+
+    @Test(expected = IllegalArgumentException::class)
+    fun testInvalidCapacity() {
+        PianoEventPublisher(0, PianoEventPublisher.OverflowStrategy.DROP_OLDEST)
+    }
+}
@@ -0,0 +1,7 @@
+# The Piano SDK is provided by the app
+-dontwarn io.piano.analytics.**
+
+# Instantiated by Batch from the manifest
+-keep class com.batch.android.dispatcher.piano.LegacyPianoRegistrar {
+    public <init>();
+}
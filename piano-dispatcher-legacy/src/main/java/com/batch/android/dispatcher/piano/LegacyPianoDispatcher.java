@@ -0,0 +1,99 @@
+package com.batch.android.dispatcher.piano;
+
+import android.content.Context;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+
+import com.batch.android.Batch;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import io.piano.analytics.Event;
+import io.piano.analytics.PianoAnalytics;
+
+/**
+ * Legacy Piano Event Dispatcher
+ * Instantiated when running on Piano SDK 3.2.1 or older.
+ */
+public class LegacyPianoDispatcher extends AbstractPianoDispatcher {
+
+    /**
+     * Piano Analytics instance
+     */
+    private final PianoAnalytics pianoAnalytics;
+
+    /**
+     * Constructor
+     *
+     * @param context application context
+     */
+    public LegacyPianoDispatcher(@NonNull Context context) {
+        pianoAnalytics = PianoAnalytics.getInstance(context);
+    }
+
+    /**
+     * Lower the mapped events to Piano events and send them in a single SDK call.
+     */
+    @Override
+    protected void sendEvents(@NonNull List<MappedPianoEvent> events) {
+        if (events.size() == 1) {
+            pianoAnalytics.sendEvent(toEvent(events.get(0)));
+            return;
+        }
+        List<Event> pianoEvents = new ArrayList<>(events.size());
+        for (MappedPianoEvent event : events) {
+            pianoEvents.add(toEvent(event));
+        }
+        pianoAnalytics.sendEvents(pianoEvents);
+    }
+
+    /**
+     * Read the privacy mode with PianoAnalytics#privacyGetMode(), if this SDK version has it
+     */
+    @Nullable
+    @Override
+    protected PianoConsentGate.PrivacyModeReader createPrivacyModeReader() {
+        return PianoConsentGate.reflectiveReader(() -> pianoAnalytics, "privacyGetMode");
+    }
+
+    /**
+     * Build an On-Site Ads Piano Event from a Batch Event
+     *
+     * @param type Batch event type
+     * @param payload Batch event payload
+     * @return The Piano event to send
+     */
+    @Nullable
+    @VisibleForTesting
+    Event buildPianoOnSiteAdsEvent(Batch.EventDispatcher.Type type, Batch.EventDispatcher.Payload payload) {
+        MappedPianoEvent event = mapOnSiteAdsEvent(type, payload);
+        return event != null ? toEvent(event) : null;
+    }
+
+    /**
+     * Build a Piano Custom Event from a Batch Event
+     *
+     * @param type Batch event type
+     * @param payload Batch event payload
+     * @return The Piano event to send
+     */
+    @VisibleForTesting
+    Event buildPianoCustomEvent(@NonNull Batch.EventDispatcher.Type type,
+                                @NonNull Batch.EventDispatcher.Payload payload) {
+        return toEvent(mapCustomEvent(type, payload));
+    }
+
+    /**
+     * Lower a mapped event to a Piano event
+     *
+     * @param event The mapped event
+     * @return The Piano event
+     */
+    @NonNull
+    static Event toEvent(@NonNull MappedPianoEvent event) {
+        return new Event(event.name, event.toPropertyMap());
+    }
+}
@@ -0,0 +1,66 @@
+package com.batch.android.dispatcher.piano;
+
+import android.content.Context;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import io.piano.analytics.Event;
+import io.piano.analytics.PianoAnalytics;
+
+/**
+ * Sink sending the mapped events to the Java Piano SDK (3.2.1-).
+ */
+public class LegacyPianoEventSink implements PianoEventSink {
+
+    /**
+     * Piano Analytics instance
+     */
+    @NonNull
+    private final PianoAnalytics pianoAnalytics;
+
+    /**
+     * Constructor
+     *
+     * @param context application context
+     */
+    public LegacyPianoEventSink(@NonNull Context context) {
+        this(PianoAnalytics.getInstance(context));
+    }
+
+    /**
+     * Constructor
+     *
+     * @param pianoAnalytics Piano Analytics instance
+     */
+    public LegacyPianoEventSink(@NonNull PianoAnalytics pianoAnalytics) {
+        this.pianoAnalytics = pianoAnalytics;
+    }
+
+    @Override
+    public void send(@NonNull List<BatchPianoEvent> events) {
+        if (events.size() == 1) {
+            pianoAnalytics.sendEvent(toEvent(events.get(0)));
+            return;
+        }
+        List<Event> pianoEvents = new ArrayList<>(events.size());
+        for (BatchPianoEvent event : events) {
+            pianoEvents.add(toEvent(event));
+        }
+        pianoAnalytics.sendEvents(pianoEvents);
+    }
+
+    /**
+     * Convert an SDK-neutral event into a Piano event
+     *
+     * @param event The SDK-neutral event
+     * @return The Piano event
+     */
+    @NonNull
+    static Event toEvent(@NonNull BatchPianoEvent event) {
+        return new Event(event.getName(), new HashMap<>(event.getProperties()));
+    }
+}
@@ -0,0 +1,28 @@
+package com.batch.android.dispatcher.piano;
+
+import android.content.Context;
+
+import com.batch.android.BatchEventDispatcher;
+
+/**
+ * Registrar of the `piano-dispatcher-legacy` artifact, dispatching to the Java Piano SDK (3.2.1-).
+ */
+public class LegacyPianoRegistrar extends AbstractPianoRegistrar {
+
+    private static AbstractPianoDispatcher instance = null;
+
+    @Override
+    public BatchEventDispatcher getDispatcher(Context context) {
+        synchronized (LegacyPianoRegistrar.class) {
+            return getOrCreateDispatcher(context);
+        }
+    }
+
+    private BatchEventDispatcher getOrCreateDispatcher(Context context) {
+        if (instance == null) {
+            instance = new LegacyPianoDispatcher(context);
+            configure(context, instance, loadConfiguration(context));
+        }
+        return instance;
+    }
+}
@@ -0,0 +1,119 @@
+package com.batch.android.dispatcher.piano;
+
+import android.content.Context;
+import android.os.Build;
+
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.work.Configuration;
+import androidx.work.ListenableWorker;
+import androidx.work.WorkInfo;
+import androidx.work.WorkManager;
+import androidx.work.testing.SynchronousExecutor;
+import androidx.work.testing.TestListenableWorkerBuilder;
+import androidx.work.testing.WorkManagerTestInitHelper;
+
+import com.batch.android.Batch;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mockito;
+import org.powermock.api.mockito.PowerMockito;
+import org.powermock.core.classloader.annotations.PowerMockIgnore;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.reflect.Whitebox;
+import org.robolectric.annotation.Config;
+
+import java.util.List;
+
+import io.piano.analytics.Event;
+import io.piano.analytics.PianoAnalytics;
+
+@RunWith(AndroidJUnit4.class)
+@Config(sdk = Build.VERSION_CODES.S)
+@PowerMockIgnore({"org.powermock.*", "org.mockito.*", "org.robolectric.*", "android.*", "androidx.*"})
+@PrepareForTest(PianoAnalytics.class)
+public class DeferredEventChannelTest {
+
+    private Context context;
+    private LegacyPianoDispatcher dispatcher;
+    private PianoAnalytics pa;
+
+    @Before
+    public void setUp() {
+        context = ApplicationProvider.getApplicationContext();
+        Configuration configuration = new Configuration.Builder()
+                .setExecutor(new SynchronousExecutor())
+                .build();
+        WorkManagerTestInitHelper.initializeTestWorkManager(context, configuration);
+
+        dispatcher = new LegacyPianoDispatcher(context);
+        dispatcher.enableBatchCustomEvents(true);
+        pa = PowerMockito.mock(PianoAnalytics.class);
+        Whitebox.setInternalState(dispatcher, "pianoAnalytics", pa);
+        dispatcher.enableDeferredDelivery(context, AbstractPianoDispatcher.DEFAULT_DEFERRED_TYPES, DeferredEventChannel.DEFAULT_DELAY_MINUTES);
+    }
+
+    @After
+    public void tearDown() {
+        DeferredEventChannel.activeDispatcher = null;
+    }
+
+    @Test
+    public void testDeferredEventsAreReplayedByTheJob() throws Exception {
+        TestEventPayload payload = new TestEventPayload("campaign_label", null, null);
+        dispatcher.dispatchEvent(Batch.EventDispatcher.Type.NOTIFICATION_DISMISS, payload);
+        dispatcher.dispatchEvent(Batch.EventDispatcher.Type.MESSAGING_AUTO_CLOSE, payload);
+        Mockito.verifyNoInteractions(pa);
+
+        List<WorkInfo> infos = WorkManager.getInstance(context).getWorkInfosForUniqueWork(DeferredEventChannel.WORK_NAME).get();
+        Assert.assertEquals(1, infos.size());
+        Assert.assertEquals(WorkInfo.State.ENQUEUED, infos.get(0).getState());
+
+        DeferredDispatchWorker worker = TestListenableWorkerBuilder.from(context, DeferredDispatchWorker.class).build();
+        Assert.assertEquals(ListenableWorker.Result.success(), worker.doWork());
+        Mockito.verify(pa, Mockito.times(1)).sendEvents(Mockito.<List<Event>>argThat(events -> events.size() == 2));
+        Assert.assertTrue(new DeferredEventStore(context).isEmpty());
+    }
+
+    @Test
+    public void testOtherEventsAreNotDeferred() throws Exception {
+        TestEventPayload payload = new TestEventPayload("campaign_label", null, null);
+        dispatcher.dispatchEvent(Batch.EventDispatcher.Type.NOTIFICATION_OPEN, payload);
+        Mockito.verify(pa, Mockito.times(1)).sendEvents(Mockito.anyList());
+        Assert.assertTrue(new DeferredEventStore(context).isEmpty());
+        Assert.assertTrue(WorkManager.getInstance(context).getWorkInfosForUniqueWork(DeferredEventChannel.WORK_NAME).get().isEmpty());
+    }
+
+    @Test
+    public void testEventsAreKeptWhileTheSDKIsUnavailable() throws Exception {
+        dispatcher.getCircuitBreaker().setFailureThreshold(1);
+        dispatcher.getCircuitBreaker().onFailure(new IllegalStateException());
+        dispatcher.dispatchEvent(Batch.EventDispatcher.Type.NOTIFICATION_DISMISS, new TestEventPayload("campaign_label", null, null));
+
+        DeferredDispatchWorker worker = TestListenableWorkerBuilder.from(context, DeferredDispatchWorker.class).build();
+        Assert.assertEquals(ListenableWorker.Result.retry(), worker.doWork());
+        Mockito.verifyNoInteractions(pa);
+        Assert.assertFalse(new DeferredEventStore(context).isEmpty());
+    }
+
+    @Test
+    public void testEventsAreKeptWhenTheSendFails() throws Exception {
+        Mockito.doThrow(new IllegalStateException("not initialized")).when(pa).sendEvent(Mockito.any());
+        dispatcher.dispatchEvent(Batch.EventDispatcher.Type.NOTIFICATION_DISMISS, new TestEventPayload("campaign_label", null, null));
+
+        DeferredDispatchWorker worker = TestListenableWorkerBuilder.from(context, DeferredDispatchWorker.class).build();
+        Assert.assertEquals(ListenableWorker.Result.retry(), worker.doWork());
+        Mockito.verify(pa, Mockito.times(1)).sendEvent(Mockito.any());
+        Assert.assertFalse(new DeferredEventStore(context).isEmpty());
+
+        Mockito.doNothing().when(pa).sendEvent(Mockito.any());
+        worker = TestListenableWorkerBuilder.from(context, DeferredDispatchWorker.class).build();
+        Assert.assertEquals(ListenableWorker.Result.success(), worker.doWork());
+        Mockito.verify(pa, Mockito.times(2)).sendEvent(Mockito.any());
+        Assert.assertTrue(new DeferredEventStore(context).isEmpty());
+    }
+}
@@ -0,0 +1,139 @@
+package com.batch.android.dispatcher.piano;
+
+import android.content.Context;
+import android.os.Build;
+
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import com.batch.android.Batch;
+import com.batch.android.BatchEventDispatcher;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mockito;
+import org.powermock.api.mockito.PowerMockito;
+import org.powermock.core.classloader.annotations.PowerMockIgnore;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.reflect.Whitebox;
+import org.robolectric.annotation.Config;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.piano.analytics.Event;
+import io.piano.analytics.PianoAnalytics;
+
+@RunWith(AndroidJUnit4.class)
+@Config(sdk = Build.VERSION_CODES.S)
+@PowerMockIgnore({"org.powermock.*", "org.mockito.*", "org.robolectric.*", "android.*", "androidx.*"})
+@PrepareForTest(PianoAnalytics.class)
+public class LegacyPianoDispatcherStressTest {
+
+    private static final int THREADS = 8;
+
+    private Context context;
+
+    private LegacyPianoDispatcher dispatcher;
+
+    /**
+     * Events received by the fake Piano SDK, by event name and campaign
+     */
+    private final Map<String, AtomicInteger> sink = new ConcurrentHashMap<>();
+
+    private final AtomicLong sinkTotal = new AtomicLong();
+
+    @Before
+    public void setUp() {
+        context = ApplicationProvider.getApplicationContext();
+        dispatcher = new LegacyPianoDispatcher(context);
+        PianoAnalytics pa = PowerMockito.mock(PianoAnalytics.class);
+        Mockito.doAnswer(invocation -> {
+            receive(invocation.getArgument(0));
+            return null;
+        }).when(pa).sendEvent(Mockito.any());
+        Mockito.doAnswer(invocation -> {
+            List<Event> events = invocation.getArgument(0);
+            for (Event event : events) {
+                receive(event);
+            }
+            return null;
+        }).when(pa).sendEvents(Mockito.anyList());
+        Whitebox.setInternalState(dispatcher, "pianoAnalytics", pa);
+    }
+
+    private void receive(Event event) {
+        Object campaign = event.getData().containsKey("onsitead_campaign")
+                ? event.getData().get("onsitead_campaign")
+                : event.getData().get("batch_tracking_id");
+        sink.computeIfAbsent(event.getName() + "|" + campaign, key -> new AtomicInteger()).incrementAndGet();
+        sinkTotal.incrementAndGet();
+    }
+
+    @Test
+    public void testRegistrarCreatesASingleDispatcher() throws Exception {
+        Whitebox.setInternalState(LegacyPianoRegistrar.class, "instance", (Object) null);
+        Set<BatchEventDispatcher> instances = Collections.synchronizedSet(Collections.newSetFromMap(new IdentityHashMap<>()));
+        ConcurrencyHarness.Result result = ConcurrencyHarness.run(THREADS, 200, (thread, iteration) ->
+                instances.add(new LegacyPianoRegistrar().getDispatcher(context)));
+        Assert.assertTrue(result.errors.toString(), result.errors.isEmpty());
+        Assert.assertEquals(1, instances.size());
+    }
+
+    @Test
+    public void testDispatchWhileConfigurationChanges() throws Exception {
+        int iterations = 500;
+        ConcurrencyHarness.Result result = ConcurrencyHarness.run(THREADS, iterations, (thread, iteration) -> {
+            if (thread == 0) {
+                dispatcher.enableBatchCustomEvents(iteration % 2 == 0);
+                dispatcher.enableUTMTracking(iteration % 3 != 0);
+                dispatcher.enableEventTimeProperty(iteration % 5 == 0);
+                return;
+            }
+            dispatcher.dispatchEvent(Batch.EventDispatcher.Type.NOTIFICATION_OPEN,
+                    new TestEventPayload("id-" + thread + "-" + iteration, null, null));
+        });
+        Assert.assertTrue(result.errors.toString(), result.errors.isEmpty());
+
+        int customEvents = 0;
+        for (int thread = 1; thread < THREADS; thread++) {
+            for (int iteration = 0; iteration < iterations; iteration++) {
+                String id = "id-" + thread + "-" + iteration;
+                // On-site Ads are never disabled: exactly one per dispatch
+                AtomicInteger onSite = sink.get("publisher.click|" + id);
+                Assert.assertNotNull(id, onSite);
+                Assert.assertEquals(id, 1, onSite.get());
+                // Custom events may or may not be enabled, but are never duplicated
+                AtomicInteger custom = sink.get("batch_notification_open|" + id);
+                if (custom != null) {
+                    Assert.assertEquals(id, 1, custom.get());
+                    customEvents++;
+                }
+            }
+        }
+        Assert.assertEquals((THREADS - 1) * iterations + customEvents, sinkTotal.get());
+    }
+
+    @Test
+    public void testThroughputScaling() throws Exception {
+        int iterations = 2000;
+        for (int threads = 1; threads <= THREADS; threads *= 2) {
+            sink.clear();
+            sinkTotal.set(0);
+            ConcurrencyHarness.Result result = ConcurrencyHarness.run(threads, iterations, (thread, iteration) ->
+                    dispatcher.dispatchEvent(Batch.EventDispatcher.Type.NOTIFICATION_OPEN,
+                            new TestEventPayload("id-" + thread + "-" + iteration, null, null)));
+            Assert.assertTrue(result.errors.toString(), result.errors.isEmpty());
+            Assert.assertEquals(result.operations, sinkTotal.get());
+            System.out.println("LegacyPianoDispatcher - " + result);
+        }
+    }
+}
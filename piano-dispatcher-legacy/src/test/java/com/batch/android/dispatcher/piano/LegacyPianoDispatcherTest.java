@@ -0,0 +1,634 @@
+package com.batch.android.dispatcher.piano;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.MockedStatic;
+import org.mockito.Mockito;
+import org.powermock.api.mockito.PowerMockito;
+import org.powermock.core.classloader.annotations.PowerMockIgnore;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.reflect.Whitebox;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowSystemClock;
+
+import android.os.Build;
+import android.os.Bundle;
+
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import com.batch.android.Batch;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+import io.piano.analytics.Event;
+import io.piano.analytics.PianoAnalytics;
+
+@RunWith(AndroidJUnit4.class)
+@Config(sdk = Build.VERSION_CODES.S)
+@PowerMockIgnore({"org.powermock.*", "org.mockito.*", "org.robolectric.*", "android.*", "androidx.*"})
+@PrepareForTest(PianoAnalytics.class)
+public class LegacyPianoDispatcherTest {
+
+    private LegacyPianoDispatcher dispatcher;
+
+    @Before
+    public void setUp() {
+        this.dispatcher = new LegacyPianoDispatcher(ApplicationProvider.getApplicationContext());
+    }
+
+    @Test
+    public void testGetCampaignFromTrackingID() {
+        TestEventPayload payload = new TestEventPayload("from_tracking_id", "https://test.com", new Bundle());
+        Assert.assertEquals("from_tracking_id", dispatcher.getCampaign(payload));
+    }
+
+    @Test
+    public void testGetCampaignFromCustomPayload() {
+        Bundle customPayload = new Bundle();
+        customPayload.putString("at_campaign", "from_payload");
+        TestEventPayload payload = new TestEventPayload(null, "https://test.com?at_campaign=from_deeplink", customPayload);
+        Assert.assertEquals("from_payload", dispatcher.getCampaign(payload));
+    }
+
+    @Test
+    public void testGetCampaignFromDeeplink() {
+        TestEventPayload payload = new TestEventPayload(null, "https://test.com?at_campaign=from_deeplink", null);
+        Assert.assertEquals("from_deeplink", dispatcher.getCampaign(payload));
+    }
+
+    @Test
+    public void testGetCampaignFromWrongDeeplink() {
+        TestEventPayload payload = new TestEventPayload(null, "mailto:test@test.com?utm_campaign=wrong", null);
+        Assert.assertEquals("batch-default-campaign", dispatcher.getCampaign(payload));
+    }
+
+    @Test
+    public void testGetCampaignFromUTMCustomPayload() {
+        TestEventPayload payload = new TestEventPayload(null, "https://test.com?utm_campaign=expected", null);
+        Assert.assertEquals("expected", dispatcher.getCampaign(payload));
+    }
+
+    @Test
+    public void testGetCampaignFromUTMDeepLink() {
+        Bundle customPayload = new Bundle();
+        customPayload.putString("utm_campaign", "expected");
+        TestEventPayload payload = new TestEventPayload(null, null, customPayload);
+        Assert.assertEquals("expected", dispatcher.getCampaign(payload));
+    }
+
+    @Test
+    public void testBuildPianoCustomEventInApp() {
+        TestEventPayload payload = new TestEventPayload("campaign_label", null, null);
+        Event event = dispatcher.buildPianoCustomEvent(Batch.EventDispatcher.Type.MESSAGING_SHOW, payload);
+        HashMap<String, Object> expectedData = new HashMap<String, Object>() {{
+            put("src_campaign", "campaign_label");
+            put("src_source", "Batch");
+            put("src_force", true);
+            put("src_medium", "in-app");
+            put("batch_tracking_id", "campaign_label");
+
+        }};
+        Assert.assertEquals("batch_in_app_show", event.getName());
+        Assert.assertEquals(expectedData, event.getData());
+    }
+
+    @Test
+    public void testBuildPianoCustomEventPush() {
+        TestEventPayload payload = new TestEventPayload("campaign_label", null, null);
+        Event event = dispatcher.buildPianoCustomEvent(Batch.EventDispatcher.Type.NOTIFICATION_DISPLAY, payload);
+        HashMap<String, Object> expectedData = new HashMap<String, Object>() {{
+            put("src_campaign", "campaign_label");
+            put("src_source", "Batch");
+            put("src_force", true);
+            put("src_medium", "push");
+            put("batch_tracking_id", "campaign_label");
+        }};
+        Assert.assertEquals("batch_notification_display", event.getName());
+        Assert.assertEquals(expectedData, event.getData());
+    }
+
+    @Test
+    public void testBuildPianoCustomEventFromDeeplinkAT() {
+        TestEventPayload payload = new TestEventPayload("batchTrackingId", "https://test.com?at_campaign=campaign_label&at_medium=email", null);
+        Event event = dispatcher.buildPianoCustomEvent(Batch.EventDispatcher.Type.NOTIFICATION_DISPLAY, payload);
+        HashMap<String, Object> expectedData = new HashMap<String, Object>() {{
+            put("src_campaign", "campaign_label");
+            put("src_source", "Batch");
+            put("src_force", true);
+            put("src_medium", "email");
+            put("batch_tracking_id", "batchTrackingId");
+        }};
+        Assert.assertEquals("batch_notification_display", event.getName());
+        Assert.assertEquals(expectedData, event.getData());
+    }
+
+    @Test
+    public void testBuildPianoCustomEventFromDeeplinkFirebase() {
+        TestEventPayload payload = new TestEventPayload("batchTrackingId", "https://test.com?utm_campaign=campaign_label&utm_medium=email&utm_source=firebase&utm_content=content", null);
+        Event event = dispatcher.buildPianoCustomEvent(Batch.EventDispatcher.Type.NOTIFICATION_DISPLAY, payload);
+        HashMap<String, Object> expectedData = new HashMap<String, Object>() {{
+            put("src_campaign", "campaign_label");
+            put("src_source", "firebase");
+            put("src_force", true);
+            put("src_medium", "email");
+            put("src_content", "content");
+            put("batch_tracking_id", "batchTrackingId");
+        }};
+        Assert.assertEquals("batch_notification_display", event.getName());
+        Assert.assertEquals(expectedData, event.getData());
+    }
+
+    @Test
+    public void testBuildPianoCustomEventFromDeeplinkFirebaseFragment() {
+        TestEventPayload payload = new TestEventPayload("batchTrackingId",
+                "https://test.com#utm_campaign=campaign_label&utm_medium=email&utm_source=firebase&utm_content=content",
+                null);
+        Event event = dispatcher.buildPianoCustomEvent(Batch.EventDispatcher.Type.NOTIFICATION_DISPLAY, payload);
+        HashMap<String, Object> expectedData = new HashMap<String, Object>() {{
+            put("src_campaign", "campaign_label");
+            put("src_source", "firebase");
+            put("src_force", true);
+            put("src_medium", "email");
+            put("src_content", "content");
+            put("batch_tracking_id", "batchTrackingId");
+        }};
+        Assert.assertEquals("batch_notification_display", event.getName());
+        Assert.assertEquals(expectedData, event.getData());
+    }
+
+    @Test
+    public void testPriorityBuildPianoCustomEventFromDeeplink() {
+        TestEventPayload payload = new TestEventPayload("batchTrackingId",
+                "https://test.com?utm_campaign=campaign_label#utm_campaign=campaign_label2&utm_medium=email&utm_source=firebase&utm_content=content",
+                null);
+        Event event = dispatcher.buildPianoCustomEvent(Batch.EventDispatcher.Type.NOTIFICATION_DISPLAY, payload);
+        HashMap<String, Object> expectedData = new HashMap<String, Object>() {{
+            put("src_campaign", "campaign_label");
+            put("src_source", "firebase");
+            put("src_force", true);
+            put("src_medium", "email");
+            put("src_content", "content");
+            put("batch_tracking_id", "batchTrackingId");
+        }};
+        Assert.assertEquals("batch_notification_display", event.getName());
+        Assert.assertEquals(expectedData, event.getData());
+    }
+
+    @Test
+    public void testBuildPianoCustomEventFromPayloadAT() {
+        Bundle customPayload = new Bundle();
+        customPayload.putString("at_campaign", "campaign_label");
+        customPayload.putString("at_medium", "email");
+        TestEventPayload payload = new TestEventPayload("batchTrackingId", null, customPayload);
+        Event event = dispatcher.buildPianoCustomEvent(Batch.EventDispatcher.Type.NOTIFICATION_DISPLAY, payload);
+        HashMap<String, Object> expectedData = new HashMap<String, Object>() {{
+            put("src_campaign", "campaign_label");
+            put("src_source", "Batch");
+            put("src_force", true);
+            put("src_medium", "email");
+            put("batch_tracking_id", "batchTrackingId");
+        }};
+        Assert.assertEquals("batch_notification_display", event.getName());
+        Assert.assertEquals(expectedData, event.getData());
+    }
+
+    @Test
+    public void testBuildPianoCustomEventFromPayloadFirebase() {
+        Bundle customPayload = new Bundle();
+        customPayload.putString("utm_campaign", "campaign_label");
+        customPayload.putString("utm_medium", "email");
+        customPayload.putString("utm_source", "firebase");
+        customPayload.putString("utm_content", "content");
+        TestEventPayload payload = new TestEventPayload("batchTrackingId", null, customPayload);
+        Event event = dispatcher.buildPianoCustomEvent(Batch.EventDispatcher.Type.NOTIFICATION_DISPLAY, payload);
+        HashMap<String, Object> expectedData = new HashMap<String, Object>() {{
+            put("src_campaign", "campaign_label");
+            put("src_source", "firebase");
+            put("src_force", true);
+            put("src_medium", "email");
+            put("src_content", "content");
+            put("batch_tracking_id", "batchTrackingId");
+        }};
+        Assert.assertEquals("batch_notification_display", event.getName());
+        Assert.assertEquals(expectedData, event.getData());
+    }
+
+    @Test
+    public void testUTMTrackingDisabled() {
+        Bundle customPayload = new Bundle();
+        customPayload.putString("utm_campaign", "campaign_label");
+        customPayload.putString("utm_medium", "email");
+        customPayload.putString("utm_source", "firebase");
+        customPayload.putString("utm_content", "content");
+        TestEventPayload payload = new TestEventPayload("batchTrackingId", null, customPayload);
+        dispatcher.enableUTMTracking(false);
+        Event event = dispatcher.buildPianoCustomEvent(Batch.EventDispatcher.Type.NOTIFICATION_DISPLAY, payload);
+        HashMap<String, Object> expectedData = new HashMap<String, Object>() {{
+            put("src_campaign", "batchTrackingId");
+            put("src_source", "Batch");
+            put("src_force", true);
+            put("src_medium", "push");
+            put("batch_tracking_id", "batchTrackingId");
+        }};
+        Assert.assertEquals("batch_notification_display", event.getName());
+        Assert.assertEquals(expectedData, event.getData());
+    }
+
+    @Test
+    public void testBuildPianoOnSiteAdsEventImpressionPush() {
+        TestEventPayload payload = new TestEventPayload("campaign_label", null, null);
+        Event event = dispatcher.buildPianoOnSiteAdsEvent(Batch.EventDispatcher.Type.NOTIFICATION_DISPLAY, payload);
+        HashMap<String, Object> expectedData = new HashMap<String, Object>() {{
+            put("onsitead_type", "Publisher");
+            put("onsitead_advertiser", "Batch");
+            put("onsitead_campaign", "campaign_label");
+            put("onsitead_format", "push");
+        }};
+        assert event != null;
+        Assert.assertEquals("publisher.impression", event.getName());
+        Assert.assertEquals(expectedData, event.getData());
+    }
+
+    @Test
+    public void testBuildPianoOnSiteAdsEventClickInApp() {
+        TestEventPayload payload = new TestEventPayload("campaign_label", null, null);
+        Event event = dispatcher.buildPianoOnSiteAdsEvent(Batch.EventDispatcher.Type.MESSAGING_CLICK, payload);
+        HashMap<String, Object> expectedData = new HashMap<String, Object>() {{
+            put("onsitead_type", "Publisher");
+            put("onsitead_advertiser", "Batch");
+            put("onsitead_campaign", "campaign_label");
+            put("onsitead_format", "in-app");
+        }};
+        assert event != null;
+        Assert.assertEquals("publisher.click", event.getName());
+        Assert.assertEquals(expectedData, event.getData());
+    }
+
+    @Test
+    public void testDispatchEventWithoutCustomEvents() {
+        PianoAnalytics pa = PowerMockito.mock(PianoAnalytics.class);
+        Whitebox.setInternalState(dispatcher, "pianoAnalytics", pa);
+
+        TestEventPayload payload = new TestEventPayload("campaign_label", null, null);
+        HashMap<String, Object> expectedData = new HashMap<String, Object>() {{
+            put("onsitead_type", "Publisher");
+            put("onsitead_advertiser", "Batch");
+            put("onsitead_campaign", "campaign_label");
+            put("onsitead_format", "in-app");
+        }};
+        Event expectedEvent = new Event("publisher.click", expectedData);
+        dispatcher.dispatchEvent(Batch.EventDispatcher.Type.MESSAGING_CLICK, payload);
+        Mockito.verify(pa, Mockito.times(1)).sendEvent(Mockito.any());
+        Mockito.verify(pa, Mockito.times(1)).sendEvent(PianoEventMockitoMatcher.eq(expectedEvent));
+    }
+
+    @Test
+    public void testDispatchEventWithCustomEvents() {
+        PianoAnalytics pa = PowerMockito.mock(PianoAnalytics.class);
+        Whitebox.setInternalState(dispatcher, "pianoAnalytics", pa);
+
+        TestEventPayload payload = new TestEventPayload("campaign_label", null, null);
+
+        HashMap<String, Object> onSiteEventExpectedData = new HashMap<String, Object>() {{
+            put("onsitead_type", "Publisher");
+            put("onsitead_advertiser", "Batch");
+            put("onsitead_campaign", "campaign_label");
+            put("onsitead_format", "in-app");
+        }};
+        Event expectedOnSiteAdsEvent = new Event("publisher.impression", onSiteEventExpectedData);
+
+        HashMap<String, Object> customEventExpectedData = new HashMap<String, Object>() {{
+            put("src_campaign", "campaign_label");
+            put("src_source", "Batch");
+            put("src_force", true);
+            put("src_medium", "in-app");
+            put("batch_tracking_id", "campaign_label");
+        }};
+        Event expectedCustomEvent = new Event("batch_in_app_show", customEventExpectedData);
+
+        dispatcher.enableBatchCustomEvents(true);
+        dispatcher.dispatchEvent(Batch.EventDispatcher.Type.MESSAGING_SHOW, payload);
+        Mockito.verify(pa, Mockito.never()).sendEvent(Mockito.any());
+        Mockito.verify(pa, Mockito.times(1)).sendEvents(Mockito.anyList());
+        Mockito.verify(pa, Mockito.times(1)).sendEvents(PianoEventMockitoMatcher.eqList(expectedOnSiteAdsEvent, expectedCustomEvent));
+    }
+
+    @Test
+    public void testDispatchEventCircuitBreaker() {
+        PianoAnalytics pa = PowerMockito.mock(PianoAnalytics.class);
+        Mockito.doThrow(new IllegalStateException("not initialized")).when(pa).sendEvent(Mockito.any());
+        Whitebox.setInternalState(dispatcher, "pianoAnalytics", pa);
+        dispatcher.getCircuitBreaker().setFailureThreshold(2);
+
+        TestEventPayload payload = new TestEventPayload("campaign_label", null, null);
+        for (int i = 0; i < 5; i++) {
+            dispatcher.dispatchEvent(Batch.EventDispatcher.Type.MESSAGING_CLICK, payload);
+        }
+        Mockito.verify(pa, Mockito.times(2)).sendEvent(Mockito.any());
+        Assert.assertEquals(PianoCircuitBreaker.State.OPEN, dispatcher.getCircuitBreaker().getState());
+        Assert.assertEquals(3, dispatcher.getCircuitBreaker().getSkippedDispatches());
+    }
+
+    @Test
+    public void testCircuitBreakerProbeMappingNothing() throws Exception {
+        PianoAnalytics pa = PowerMockito.mock(PianoAnalytics.class);
+        Mockito.doThrow(new IllegalStateException("not initialized")).when(pa).sendEvent(Mockito.any());
+        Whitebox.setInternalState(dispatcher, "pianoAnalytics", pa);
+        PianoCircuitBreaker breaker = dispatcher.getCircuitBreaker();
+        breaker.setFailureThreshold(1);
+        breaker.setCooldownMillis(1000);
+        dispatcher.enableBatchCustomEvents(true);
+        dispatcher.enableBatchOnSiteAdsEvents(false);
+        TestEventPayload payload = new TestEventPayload("campaign_label", null, null);
+        dispatcher.dispatchEvent(Batch.EventDispatcher.Type.NOTIFICATION_OPEN, payload);
+        Assert.assertEquals(PianoCircuitBreaker.State.OPEN, breaker.getState());
+        ShadowSystemClock.advanceBy(Duration.ofMillis(1000));
+
+        // The probe event is dropped by the data model: nothing is sent
+        dispatcher.setDataModel(PianoDataModel.parse("{\"events\": [\"batch_notification_open\"]}"));
+        dispatcher.dispatchEvent(Batch.EventDispatcher.Type.NOTIFICATION_DISMISS, payload);
+        Assert.assertEquals(PianoCircuitBreaker.State.OPEN, breaker.getState());
+
+        // The next event probes the SDK and closes the circuit
+        Mockito.doNothing().when(pa).sendEvent(Mockito.any());
+        dispatcher.dispatchEvent(Batch.EventDispatcher.Type.NOTIFICATION_OPEN, payload);
+        Assert.assertEquals(PianoCircuitBreaker.State.CLOSED, breaker.getState());
+        Mockito.verify(pa, Mockito.times(2)).sendEvent(Mockito.any());
+    }
+
+    @Test
+    public void testSendBuffered() {
+        PianoAnalytics pa = PowerMockito.mock(PianoAnalytics.class);
+        Whitebox.setInternalState(dispatcher, "pianoAnalytics", pa);
+
+        CompactEventBuffer buffer = new CompactEventBuffer();
+        dispatcher.bufferEvent(buffer, Batch.EventDispatcher.Type.MESSAGING_CLICK, new TestEventPayload("campaign_label", null, null));
+        dispatcher.bufferEvent(buffer, Batch.EventDispatcher.Type.MESSAGING_CLOSE, new TestEventPayload("campaign_label", null, null));
+        // Not an On-site Ad and custom events are disabled
+        Assert.assertEquals(1, buffer.size());
+
+        HashMap<String, Object> expectedData = new HashMap<String, Object>() {{
+            put("onsitead_type", "Publisher");
+            put("onsitead_advertiser", "Batch");
+            put("onsitead_campaign", "campaign_label");
+            put("onsitead_format", "in-app");
+        }};
+        dispatcher.sendBuffered(buffer);
+        Mockito.verify(pa, Mockito.times(1)).sendEvents(PianoEventMockitoMatcher.eqList(new Event("publisher.click", expectedData)));
+        Assert.assertEquals(0, buffer.size());
+    }
+
+    @Test
+    public void testBuildPianoCustomEventWithEventTime() {
+        TestEventPayload payload = new TestEventPayload("campaign_label", null, null);
+        dispatcher.enableEventTimeProperty(true);
+        long before = System.currentTimeMillis();
+        Event event = dispatcher.buildPianoCustomEvent(Batch.EventDispatcher.Type.NOTIFICATION_DISPLAY, payload);
+        Object eventTime = event.getData().get("batch_event_time");
+        Assert.assertTrue(eventTime instanceof Long);
+        Assert.assertTrue((Long) eventTime >= before);
+    }
+
+    @Test
+    public void testDispatchEventToSink() {
+        PianoAnalytics pa = PowerMockito.mock(PianoAnalytics.class);
+        Whitebox.setInternalState(dispatcher, "pianoAnalytics", pa);
+        InMemoryPianoEventSink sink = new InMemoryPianoEventSink();
+        dispatcher.setEventSink(sink);
+        dispatcher.enableBatchCustomEvents(true);
+
+        TestEventPayload payload = new TestEventPayload("campaign_label", null, null);
+        dispatcher.dispatchEvent(Batch.EventDispatcher.Type.NOTIFICATION_OPEN, payload);
+        Mockito.verify(pa, Mockito.never()).sendEvent(Mockito.any());
+        Mockito.verify(pa, Mockito.never()).sendEvents(Mockito.anyList());
+
+        List<BatchPianoEvent> events = sink.getEvents();
+        Assert.assertEquals(2, events.size());
+        Event onSiteAdsEvent = dispatcher.buildPianoOnSiteAdsEvent(Batch.EventDispatcher.Type.NOTIFICATION_OPEN, payload);
+        Event customEvent = dispatcher.buildPianoCustomEvent(Batch.EventDispatcher.Type.NOTIFICATION_OPEN, payload);
+        Assert.assertEquals(onSiteAdsEvent.getName(), events.get(0).getName());
+        Assert.assertEquals(onSiteAdsEvent.getData(), events.get(0).getProperties());
+        Assert.assertEquals(customEvent.getName(), events.get(1).getName());
+        Assert.assertEquals(customEvent.getData(), events.get(1).getProperties());
+
+        // Sent back to the Piano SDK through its sink
+        dispatcher.setEventSink(new LegacyPianoEventSink(pa));
+        dispatcher.dispatchEvent(Batch.EventDispatcher.Type.NOTIFICATION_OPEN, payload);
+        Mockito.verify(pa, Mockito.times(1)).sendEvents(PianoEventMockitoMatcher.eqList(onSiteAdsEvent, customEvent));
+    }
+
+    @Test
+    public void testSendBufferedToSink() {
+        InMemoryPianoEventSink sink = new InMemoryPianoEventSink();
+        dispatcher.setEventSink(sink);
+        CompactEventBuffer buffer = new CompactEventBuffer();
+        dispatcher.bufferEvent(buffer, Batch.EventDispatcher.Type.MESSAGING_CLICK, new TestEventPayload("campaign_label", null, null));
+        dispatcher.sendBuffered(buffer);
+        Assert.assertEquals(0, buffer.size());
+        Assert.assertEquals(1, sink.size());
+        Assert.assertEquals("publisher.click", sink.getEvents().get(0).getName());
+    }
+
+    @Test
+    public void testSendBufferedAppliesTrackingIdRules() {
+        InMemoryPianoEventSink sink = new InMemoryPianoEventSink();
+        dispatcher.setEventSink(sink);
+        CompactEventBuffer buffer = new CompactEventBuffer();
+        dispatcher.bufferEvent(buffer, Batch.EventDispatcher.Type.MESSAGING_CLICK, new TestEventPayload("test_campaign", null, null));
+        dispatcher.bufferEvent(buffer, Batch.EventDispatcher.Type.MESSAGING_CLICK, new TestEventPayload("campaign_label", null, null));
+        // Rules set after the events have been buffered still apply
+        dispatcher.setEventFilter(PianoEventFilter.parse("drop_tracking_id:test_"));
+        dispatcher.sendBuffered(buffer);
+        Assert.assertEquals(1, sink.size());
+        Assert.assertEquals("campaign_label", sink.getEvents().get(0).getProperties().get("onsitead_campaign"));
+        Assert.assertEquals(0, dispatcher.getLatencyHistogram().getCount(Batch.EventDispatcher.Type.MESSAGING_CLICK));
+    }
+
+    @Test
+    public void testMainThreadWatchdog() {
+        PianoAnalytics pa = PowerMockito.mock(PianoAnalytics.class);
+        Whitebox.setInternalState(dispatcher, "pianoAnalytics", pa);
+        // Any dispatch on the main thread exceeds a zero budget
+        MainThreadWatchdog watchdog = dispatcher.enableMainThreadWatchdog(0);
+        dispatcher.dispatchEvent(Batch.EventDispatcher.Type.MESSAGING_SHOW, new TestEventPayload("campaign_label", null, null));
+        Assert.assertEquals(1, watchdog.getViolationCount());
+        Assert.assertEquals(Batch.EventDispatcher.Type.MESSAGING_SHOW, watchdog.getViolations().get(0).getType());
+        Assert.assertEquals(0, watchdog.getViolations().get(0).getDeeplinkLength());
+    }
+
+    @Test
+    public void testConsentGate() {
+        PianoAnalytics pa = PowerMockito.mock(PianoAnalytics.class);
+        Whitebox.setInternalState(dispatcher, "pianoAnalytics", pa);
+        dispatcher.enableBatchCustomEvents(true);
+        PianoConsentGate gate = dispatcher.enableConsentGate();
+        TestEventPayload payload = new TestEventPayload("campaign_label", null, null);
+
+        gate.onPrivacyModeChanged("optout");
+        dispatcher.dispatchEvent(Batch.EventDispatcher.Type.NOTIFICATION_OPEN, payload);
+        Mockito.verify(pa, Mockito.never()).sendEvent(Mockito.any());
+        Mockito.verify(pa, Mockito.never()).sendEvents(Mockito.anyList());
+        Assert.assertEquals(1, gate.getSkippedCount(Batch.EventDispatcher.Type.NOTIFICATION_OPEN));
+
+        // Only On-site Ads events are sent in exempt mode
+        gate.onPrivacyModeChanged("exempt");
+        dispatcher.dispatchEvent(Batch.EventDispatcher.Type.NOTIFICATION_OPEN, payload);
+        Mockito.verify(pa, Mockito.times(1)).sendEvent(Mockito.argThat(event -> "publisher.click".equals(event.getName())));
+        Assert.assertEquals(1, gate.getSkippedCount());
+
+        // Buffered events have already been counted, they are not skipped again when replayed
+        CompactEventBuffer buffer = new CompactEventBuffer();
+        dispatcher.bufferEvent(buffer, Batch.EventDispatcher.Type.NOTIFICATION_OPEN, payload);
+        gate.onPrivacyModeChanged("optout");
+        dispatcher.sendBuffered(buffer);
+        Mockito.verify(pa, Mockito.times(1)).sendEvent(Mockito.any());
+        Assert.assertEquals(1, gate.getSkippedCount());
+
+        // Events dropped by the event filter are not skipped by the gate
+        PianoEventFilter filter = PianoEventFilter.parse("drop:NOTIFICATION_OPEN:all");
+        dispatcher.setEventFilter(filter);
+        dispatcher.dispatchEvent(Batch.EventDispatcher.Type.NOTIFICATION_OPEN, payload);
+        Assert.assertEquals(1, filter.getRejectedCount());
+        Assert.assertEquals(1, gate.getSkippedCount());
+    }
+
+    @Test
+    public void testDispatchEventsInBulk() {
+        PianoAnalytics pa = PowerMockito.mock(PianoAnalytics.class);
+        Whitebox.setInternalState(dispatcher, "pianoAnalytics", pa);
+        LegacyPianoDispatcher spy = Mockito.spy(dispatcher);
+        TestEventPayload sale = new TestEventPayload(null, "https://batch.com?utm_campaign=sale", null);
+        TestEventPayload other = new TestEventPayload(null, "https://batch.com?utm_campaign=other", null);
+        List<BatchEventEntry> entries = Arrays.asList(
+                new BatchEventEntry(Batch.EventDispatcher.Type.NOTIFICATION_OPEN, sale),
+                new BatchEventEntry(Batch.EventDispatcher.Type.NOTIFICATION_DISPLAY, new TestEventPayload(null, "https://batch.com?utm_campaign=sale", null)),
+                new BatchEventEntry(Batch.EventDispatcher.Type.NOTIFICATION_DISMISS, sale),
+                new BatchEventEntry(Batch.EventDispatcher.Type.MESSAGING_CLICK, other));
+
+        // Dismiss events have no On-site Ads equivalent
+        Assert.assertEquals(3, spy.dispatchEvents(entries));
+        Mockito.verify(spy, Mockito.times(2)).getCampaign(Mockito.any());
+        // Custom events are disabled, so no content is needed
+        Mockito.verify(spy, Mockito.never()).getContent(Mockito.any());
+        // Every entry that produced an event is recorded
+        Mockito.verify(spy, Mockito.times(3)).recordDispatch(Mockito.any(), Mockito.any(), Mockito.any(), Mockito.any(),
+                Mockito.any(), Mockito.any(), Mockito.anyLong());
+        Mockito.verify(pa, Mockito.times(1)).sendEvents(Mockito.argThat(events -> events.size() == 3
+                && "publisher.click".equals(events.get(0).getName())
+                && "publisher.impression".equals(events.get(1).getName())
+                && "sale".equals(events.get(1).getData().get("onsitead_campaign"))
+                && "other".equals(events.get(2).getData().get("onsitead_campaign"))));
+    }
+
+    @Test
+    public void testDispatchEventsResolvesMissingContentOnce() {
+        PianoAnalytics pa = PowerMockito.mock(PianoAnalytics.class);
+        Whitebox.setInternalState(dispatcher, "pianoAnalytics", pa);
+        dispatcher.enableBatchCustomEvents(true);
+        dispatcher.enableBatchOnSiteAdsEvents(false);
+        LegacyPianoDispatcher spy = Mockito.spy(dispatcher);
+        TestEventPayload payload = new TestEventPayload(null, "https://batch.com?utm_campaign=sale", null);
+        List<BatchEventEntry> entries = Arrays.asList(
+                new BatchEventEntry(Batch.EventDispatcher.Type.NOTIFICATION_OPEN, payload),
+                new BatchEventEntry(Batch.EventDispatcher.Type.NOTIFICATION_OPEN, payload),
+                new BatchEventEntry(Batch.EventDispatcher.Type.NOTIFICATION_OPEN, payload));
+
+        Assert.assertEquals(3, spy.dispatchEvents(entries));
+        // The payload has no content, which is only resolved once too
+        Mockito.verify(spy, Mockito.times(1)).getContent(Mockito.any());
+    }
+
+    @Test
+    public void testDataModel() throws Exception {
+        PianoAnalytics pa = PowerMockito.mock(PianoAnalytics.class);
+        Whitebox.setInternalState(dispatcher, "pianoAnalytics", pa);
+        dispatcher.enableBatchCustomEvents(true);
+        dispatcher.enableBatchOnSiteAdsEvents(false);
+        dispatcher.enableEventTimeProperty(true);
+        PianoDataModel model = PianoDataModel.parse("{" +
+                "\"events\": [\"batch_notification_open\"]," +
+                "\"properties\": [\"src_campaign\", \"src_medium\", \"src_source\", \"src_force\", \"tracking_id\"]," +
+                "\"renames\": {\"batch_tracking_id\": \"tracking_id\"}" +
+                "}");
+        dispatcher.setDataModel(model);
+        TestEventPayload payload = new TestEventPayload("campaign_label", null, null);
+
+        dispatcher.dispatchEvent(Batch.EventDispatcher.Type.NOTIFICATION_DISMISS, payload);
+        Mockito.verify(pa, Mockito.never()).sendEvent(Mockito.any());
+        Assert.assertEquals(1, model.getDroppedEventCount(Batch.EventDispatcher.Type.NOTIFICATION_DISMISS));
+
+        dispatcher.dispatchEvent(Batch.EventDispatcher.Type.NOTIFICATION_OPEN, payload);
+        Mockito.verify(pa, Mockito.times(1)).sendEvent(Mockito.argThat(event -> "batch_notification_open".equals(event.getName())
+                && "campaign_label".equals(event.getData().get("tracking_id"))
+                && !event.getData().containsKey("batch_tracking_id")
+                && !event.getData().containsKey("batch_event_time")));
+        Assert.assertEquals(0, model.getDroppedEventCount(Batch.EventDispatcher.Type.NOTIFICATION_OPEN));
+        Assert.assertEquals(1, model.getDroppedPropertyCount());
+
+        // Undeclared context properties are dropped and counted for every sent custom event
+        dispatcher.setContextProperties(new PianoContextProperties.Builder()
+                .put("src_campaign", "context_campaign")
+                .put("app_flavor", "beta")
+                .build());
+        dispatcher.dispatchEvent(Batch.EventDispatcher.Type.NOTIFICATION_OPEN, payload);
+        Mockito.verify(pa, Mockito.times(2)).sendEvent(Mockito.argThat(event -> "batch_notification_open".equals(event.getName())
+                && !event.getData().containsKey("app_flavor")));
+        Assert.assertEquals(3, model.getDroppedPropertyCount());
+        dispatcher.setContextProperties(null);
+
+        // On-site Ads events are not part of the data model
+        dispatcher.enableBatchOnSiteAdsEvents(true);
+        dispatcher.dispatchEvent(Batch.EventDispatcher.Type.NOTIFICATION_OPEN, payload);
+        Mockito.verify(pa, Mockito.times(1)).sendEvents(Mockito.argThat(events -> events.size() == 2
+                && "publisher.click".equals(events.get(0).getName())
+                && events.get(0).getData().containsKey("batch_event_time")));
+    }
+
+    @Test
+    public void testShardedDispatchKeepsOrderWhenReconfigured() {
+        dispatcher.enableBatchCustomEvents(true);
+        dispatcher.enableBatchOnSiteAdsEvents(false);
+        List<Object> contents = new ArrayList<>();
+        dispatcher.setEventSink(events -> {
+            try {
+                Thread.sleep(1);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            synchronized (contents) {
+                for (BatchPianoEvent event : events) {
+                    contents.add(event.getProperties().get("src_content"));
+                }
+            }
+        });
+
+        int count = 0;
+        dispatcher.enableShardedDispatch(2, ShardedDispatchExecutor.DEFAULT_QUEUE_CAPACITY);
+        for (; count < 40; count++) {
+            dispatcher.dispatchEvent(Batch.EventDispatcher.Type.NOTIFICATION_OPEN,
+                    new TestEventPayload("campaign", "https://batch.com?utm_content=" + count, null));
+        }
+        dispatcher.enableShardedDispatch(4, ShardedDispatchExecutor.DEFAULT_QUEUE_CAPACITY);
+        for (; count < 80; count++) {
+            dispatcher.dispatchEvent(Batch.EventDispatcher.Type.NOTIFICATION_OPEN,
+                    new TestEventPayload("campaign", "https://batch.com?utm_content=" + count, null));
+        }
+        dispatcher.disableShardedDispatch();
+        for (; count < 120; count++) {
+            dispatcher.dispatchEvent(Batch.EventDispatcher.Type.NOTIFICATION_OPEN,
+                    new TestEventPayload("campaign", "https://batch.com?utm_content=" + count, null));
+        }
+
+        Assert.assertEquals(120, contents.size());
+        for (int i = 0; i < 120; i++) {
+            Assert.assertEquals(String.valueOf(i), contents.get(i));
+        }
+    }
+}
@@ -5,6 +5,8 @@ import androidx.annotation.NonNull;
 import org.mockito.ArgumentMatcher;
 import org.mockito.Mockito;
 
+import java.util.List;
+
 import io.piano.analytics.Event;
 
 public class PianoEventMockitoMatcher implements ArgumentMatcher<Event> {
@@ -32,4 +34,18 @@ public class PianoEventMockitoMatcher implements ArgumentMatcher<Event> {
     public static Event eq(@NonNull Event expected) {
         return Mockito.argThat(new PianoEventMockitoMatcher(expected));
     }
+
+    public static List<Event> eqList(@NonNull Event... expected) {
+        return Mockito.argThat(argument -> {
+            if (argument == null || argument.size() != expected.length) {
+                return false;
+            }
+            for (int i = 0; i < expected.length; i++) {
+                if (!new PianoEventMockitoMatcher(expected[i]).matches(argument.get(i))) {
+                    return false;
+                }
+            }
+            return true;
+        });
+    }
 }
@@ -0,0 +1,8 @@
+# Both Piano SDKs are probed at runtime, only one is usually provided by the app
+-dontwarn io.piano.analytics.**
+-dontwarn io.piano.android.analytics.**
+
+# Instantiated by Batch from the manifest
+-keep class com.batch.android.dispatcher.piano.PianoRegistrar {
+    public <init>();
+}
@@ -0,0 +1,160 @@
+package com.batch.android.dispatcher.piano;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Dual Piano Event Dispatcher
+ * <p>
+ * Send every Batch event through two dispatchers, typically {@link LegacyPianoDispatcher} and
+ * {@link PianoDispatcher} while migrating from Piano SDK 3.2.x to 3.3+.
+ * Attribution is resolved once, the primary path sends on the caller's thread and the
+ * secondary path on a background thread, so Batch's callback latency does not double.
+ * Per-path counters let you check that both paths stay at parity.
+ * <p>
+ * Configuration (custom events, On-site Ads, UTM tracking, event time) is read from this dispatcher,
+ * not from the wrapped ones.
+ */
+public class DualPianoDispatcher extends AbstractPianoDispatcher {
+
+    /**
+     * Maximum number of Batch events waiting for the secondary path
+     */
+    private static final int SECONDARY_QUEUE_CAPACITY = 1024;
+
+    /**
+     * Counters of a dispatch path
+     */
+    public static final class PathStats {
+
+        private final AtomicLong sent = new AtomicLong();
+
+        private final AtomicLong failed = new AtomicLong();
+
+        private final AtomicLong dropped = new AtomicLong();
+
+        /**
+         * @return Number of Batch events whose Piano events have been handed to the SDK
+         */
+        public long getSentCount() {
+            return sent.get();
+        }
+
+        /**
+         * @return Number of Batch events that failed or were skipped by the path's circuit breaker
+         */
+        public long getFailedCount() {
+            return failed.get();
+        }
+
+        /**
+         * @return Number of Batch events dropped because the path was lagging behind
+         */
+        public long getDroppedCount() {
+            return dropped.get();
+        }
+
+        void onDelivered(boolean delivered) {
+            if (delivered) {
+                sent.incrementAndGet();
+            } else {
+                failed.incrementAndGet();
+            }
+        }
+    }
+
+    @NonNull
+    private final AbstractPianoDispatcher primary;
+
+    @NonNull
+    private final AbstractPianoDispatcher secondary;
+
+    @NonNull
+    private final PathStats primaryStats = new PathStats();
+
+    @NonNull
+    private final PathStats secondaryStats = new PathStats();
+
+    /**
+     * Single thread running the secondary path, in order
+     */
+    @NonNull
+    private final ThreadPoolExecutor secondaryExecutor;
+
+    /**
+     * Constructor
+     *
+     * @param primary Dispatcher sending on the caller's thread
+     * @param secondary Dispatcher sending on a background thread
+     */
+    public DualPianoDispatcher(@NonNull AbstractPianoDispatcher primary, @NonNull AbstractPianoDispatcher secondary) {
+        this.primary = primary;
+        this.secondary = secondary;
+        this.secondaryExecutor = new ThreadPoolExecutor(1, 1, 30, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(SECONDARY_QUEUE_CAPACITY),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "batch-piano-dual-dispatch");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        this.secondaryExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    @NonNull
+    public AbstractPianoDispatcher getPrimary() {
+        return primary;
+    }
+
+    @NonNull
+    public AbstractPianoDispatcher getSecondary() {
+        return secondary;
+    }
+
+    @NonNull
+    public PathStats getPrimaryStats() {
+        return primaryStats;
+    }
+
+    @NonNull
+    public PathStats getSecondaryStats() {
+        return secondaryStats;
+    }
+
+    /**
+     * Send the mapped events through the primary path, then schedule the secondary path.
+     * Both paths lower the same mapped events.
+     */
+    @Override
+    protected void sendEvents(@NonNull List<MappedPianoEvent> events) {
+        primaryStats.onDelivered(primary.deliverEvents(events));
+        runOnSecondary(() -> secondaryStats.onDelivered(secondary.deliverEvents(events)));
+    }
+
+    /**
+     * Read the privacy mode from the primary SDK
+     */
+    @Nullable
+    @Override
+    protected PianoConsentGate.PrivacyModeReader createPrivacyModeReader() {
+        return primary.createPrivacyModeReader();
+    }
+
+    private void runOnSecondary(@NonNull Runnable runnable) {
+        try {
+            secondaryExecutor.execute(runnable);
+        } catch (RejectedExecutionException e) {
+            if (secondaryStats.dropped.incrementAndGet() == 1) {
+                Log.w("Batch", "PianoDispatcher - Secondary dispatch path is lagging behind, dropping events");
+            }
+        }
+    }
+}
@@ -1,36 +1,34 @@
 package com.batch.android.dispatcher.piano;
 
 import android.content.Context;
-import android.content.pm.ApplicationInfo;
-import android.content.pm.PackageManager;
 import android.util.Log;
 
 import com.batch.android.BatchEventDispatcher;
-import com.batch.android.eventdispatcher.DispatcherRegistrar;
 
-public class PianoRegistrar implements DispatcherRegistrar {
+/**
+ * Registrar of the all-in-one artifact, picking the dispatcher matching the Piano SDK found at runtime.
+ * <p>
+ * Apps depending on a single Piano SDK should rather use the `piano-dispatcher-legacy` or
+ * `piano-dispatcher-kotlin` artifacts, which skip this probing.
+ */
+public class PianoRegistrar extends AbstractPianoRegistrar {
 
     private static AbstractPianoDispatcher instance = null;
 
-    /**
-     * Meta-data name to enable custom events
-     */
-    private static final String CUSTOM_EVENT_ENABLED_METADATA = "com.batch.android.dispatcher.piano.enable_custom_events";
-
-    /**
-     * Meta-data name to enable On-Site Ads events
-     */
-    private static final String ONSITE_AD_EVENT_ENABLED_METADATA = "com.batch.android.dispatcher.piano.enable_onsite_ad_events";
-
-    /**
-     * Meta-data name to enable utm tracking
-     */
-    private static final String UTM_TRACKING_ENABLED_METADATA = "com.batch.android.dispatcher.piano.enable_utm_tracking";
-
     @Override
     public BatchEventDispatcher getDispatcher(Context context) {
+        synchronized (PianoRegistrar.class) {
+            return getOrCreateDispatcher(context);
+        }
+    }
+
+    private BatchEventDispatcher getOrCreateDispatcher(Context context) {
         if (instance == null) {
-            if (isNewPianoSDKPresent()) {
+            PianoDispatcherConfiguration configuration = loadConfiguration(context);
+            if (configuration.isDualDispatchEnabled()
+                    && isNewPianoSDKPresent() && isOldPianoSDKPresent()) {
+                instance = new DualPianoDispatcher(new LegacyPianoDispatcher(context), new PianoDispatcher());
+            } else if (isNewPianoSDKPresent()) {
                 instance = new PianoDispatcher();
             } else if(isOldPianoSDKPresent()) {
                 Log.w("Batch", "PianoDispatcher - It looks like your app is running with an old version of the Piano Analytics SDK. You should migrate on version 3.3.0 or newer.");
@@ -38,35 +36,11 @@ public class PianoRegistrar implements DispatcherRegistrar {
             } else {
                 Log.w("Batch", "PianoDispatcher - It looks like the Piano Analytics SDK is not present. Did you add the dependency in your build.gradle?");
             }
-            instance.enableBatchCustomEvents(getBooleanMetaDataInfo(context, CUSTOM_EVENT_ENABLED_METADATA, false));
-            instance.enableBatchOnSiteAdsEvents(getBooleanMetaDataInfo(context, ONSITE_AD_EVENT_ENABLED_METADATA, true));
-            instance.enableUTMTracking(getBooleanMetaDataInfo(context, UTM_TRACKING_ENABLED_METADATA, true));
+            configure(context, instance, configuration);
         }
         return instance;
     }
 
-    /**
-     * Get boolean meta-data value from Android's manifest.
-     *
-     * @param context Application context
-     * @param key Name of the meta-data
-     * @param fallback Default value to fallback
-     * @return the value found or the fallback
-     */
-    private boolean getBooleanMetaDataInfo(Context context, String key, boolean fallback) {
-        try {
-            ApplicationInfo appInfo = context.getPackageManager().getApplicationInfo(context.getPackageName(), PackageManager.GET_META_DATA);
-            if (appInfo.metaData != null) {
-                return appInfo.metaData.getBoolean(key, fallback);
-            }
-        } catch (PackageManager.NameNotFoundException e) {
-            // if we can’t find it in the manifest, just return the fallback
-        } catch (Exception e) {
-            Log.e("Batch", "Error while parsing meta-data info", e);
-        }
-        return fallback;
-    }
-
     /**
      * Check if the new Kotlin Piano SDK (3.3.0+) is present.
      * @return Whether the new Piano SDK is present.
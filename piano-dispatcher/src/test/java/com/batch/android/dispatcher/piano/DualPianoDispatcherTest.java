@@ -0,0 +1,67 @@
+package com.batch.android.dispatcher.piano;
+
+import android.os.Build;
+
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import com.batch.android.Batch;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mockito;
+import org.powermock.api.mockito.PowerMockito;
+import org.powermock.core.classloader.annotations.PowerMockIgnore;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.reflect.Whitebox;
+import org.robolectric.annotation.Config;
+
+import io.piano.analytics.PianoAnalytics;
+
+@RunWith(AndroidJUnit4.class)
+@Config(sdk = Build.VERSION_CODES.S)
+@PowerMockIgnore({"org.powermock.*", "org.mockito.*", "org.robolectric.*", "android.*", "androidx.*"})
+@PrepareForTest(PianoAnalytics.class)
+public class DualPianoDispatcherTest {
+
+    private PianoAnalytics primaryPiano;
+
+    private PianoAnalytics secondaryPiano;
+
+    private DualPianoDispatcher dispatcher;
+
+    @Before
+    public void setUp() {
+        LegacyPianoDispatcher primary = new LegacyPianoDispatcher(ApplicationProvider.getApplicationContext());
+        LegacyPianoDispatcher secondary = new LegacyPianoDispatcher(ApplicationProvider.getApplicationContext());
+        primaryPiano = PowerMockito.mock(PianoAnalytics.class);
+        secondaryPiano = PowerMockito.mock(PianoAnalytics.class);
+        Whitebox.setInternalState(primary, "pianoAnalytics", primaryPiano);
+        Whitebox.setInternalState(secondary, "pianoAnalytics", secondaryPiano);
+        dispatcher = new DualPianoDispatcher(primary, secondary);
+    }
+
+    @Test
+    public void testDispatchThroughBothPaths() {
+        TestEventPayload payload = new TestEventPayload("campaign_label", null, null);
+        for (int i = 0; i < 3; i++) {
+            dispatcher.dispatchEvent(Batch.EventDispatcher.Type.NOTIFICATION_OPEN, payload);
+        }
+        Mockito.verify(primaryPiano, Mockito.times(3)).sendEvent(Mockito.any());
+        Mockito.verify(secondaryPiano, Mockito.timeout(1000).times(3)).sendEvent(Mockito.any());
+        Assert.assertEquals(3, dispatcher.getPrimaryStats().getSentCount());
+        Assert.assertEquals(0, dispatcher.getPrimaryStats().getFailedCount());
+    }
+
+    @Test
+    public void testSecondaryFailureDoesNotAffectPrimary() {
+        Mockito.doThrow(new IllegalStateException()).when(secondaryPiano).sendEvent(Mockito.any());
+        TestEventPayload payload = new TestEventPayload("campaign_label", null, null);
+        dispatcher.dispatchEvent(Batch.EventDispatcher.Type.MESSAGING_SHOW, payload);
+        Mockito.verify(primaryPiano, Mockito.times(1)).sendEvent(Mockito.any());
+        Mockito.verify(secondaryPiano, Mockito.timeout(1000).times(1)).sendEvent(Mockito.any());
+        Assert.assertEquals(1, dispatcher.getPrimaryStats().getSentCount());
+    }
+}
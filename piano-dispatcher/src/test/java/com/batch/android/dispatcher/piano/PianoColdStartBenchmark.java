@@ -0,0 +1,217 @@
+package com.batch.android.dispatcher.piano;
+
+import android.content.Context;
+import android.os.Build;
+
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import com.batch.android.Batch;
+
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.annotation.Config;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cold-start benchmark of what the dispatcher adds to Application.onCreate and to the first events.
+ * <p>
+ * Each run loads the dispatcher classes in a fresh class loader, so class initialization is paid
+ * again, then measures:
+ * <ul>
+ *     <li>registrar: PianoRegistrar#getDispatcher, including the SDK probes and the configuration load</li>
+ *     <li>first_dispatch: first dispatchEvent, mapping a deeplink to an in-memory sink</li>
+ *     <li>first_legacy_build / first_kotlin_build: first Piano SDK event built by each dispatcher</li>
+ *     <li>steady_dispatch: mean dispatchEvent time once warm</li>
+ * </ul>
+ * Android framework, Batch and Piano SDK classes are shared by all runs: only the first run pays
+ * for their initialization (eg: the first Uri.parse), which is reported separately as run 0.
+ * <p>
+ * Skipped unless run with `make benchmark` (or `-Ppiano.benchmark`). Timings are printed and
+ * written to build/benchmarks/cold-start.tsv so they can be tracked across versions.
+ */
+@RunWith(AndroidJUnit4.class)
+@Config(sdk = Build.VERSION_CODES.S)
+public class PianoColdStartBenchmark {
+
+    private static final String DISPATCHER_PACKAGE = "com.batch.android.dispatcher.piano.";
+
+    private static final int COLD_RUNS = 20;
+
+    private static final int STEADY_ITERATIONS = 2000;
+
+    private static final String[] PHASES = {
+            "registrar", "first_dispatch", "first_legacy_build", "first_kotlin_build", "steady_dispatch"
+    };
+
+    private Context context;
+
+    private TestEventPayload payload;
+
+    @Before
+    public void setUp() {
+        Assume.assumeTrue("Run with -Ppiano.benchmark", Boolean.getBoolean("piano.benchmark"));
+        context = ApplicationProvider.getApplicationContext();
+        payload = new TestEventPayload("tracking_id",
+                "https://batch.com/landing?utm_campaign=spring_sale&utm_medium=push&utm_source=batch&utm_content=banner", null);
+    }
+
+    @Test
+    public void benchmarkColdStart() throws Exception {
+        long[][] timings = new long[PHASES.length][COLD_RUNS + 1];
+        for (int run = 0; run <= COLD_RUNS; run++) {
+            long[] phases = runCold();
+            for (int phase = 0; phase < PHASES.length; phase++) {
+                timings[phase][run] = phases[phase];
+            }
+        }
+        report(timings);
+    }
+
+    /**
+     * Measure every phase in a fresh class loader
+     *
+     * @return The timing of each phase in nanoseconds
+     */
+    private long[] runCold() throws Exception {
+        ClassLoader loader = new ColdClassLoader(getClass().getClassLoader());
+        long[] phases = new long[PHASES.length];
+        Batch.EventDispatcher.Type type = Batch.EventDispatcher.Type.NOTIFICATION_OPEN;
+
+        long start = System.nanoTime();
+        Object registrar = loader.loadClass(DISPATCHER_PACKAGE + "PianoRegistrar").getDeclaredConstructor().newInstance();
+        Object dispatcher = registrar.getClass().getMethod("getDispatcher", Context.class).invoke(registrar, context);
+        phases[0] = System.nanoTime() - start;
+
+        Class<?> sinkClass = loader.loadClass(DISPATCHER_PACKAGE + "PianoEventSink");
+        Object sink = loader.loadClass(DISPATCHER_PACKAGE + "InMemoryPianoEventSink").getDeclaredConstructor().newInstance();
+        dispatcher.getClass().getMethod("setEventSink", sinkClass).invoke(dispatcher, sink);
+        dispatcher.getClass().getMethod("enableBatchCustomEvents", boolean.class).invoke(dispatcher, true);
+        Method dispatchEvent = dispatcher.getClass().getMethod("dispatchEvent",
+                Batch.EventDispatcher.Type.class, Batch.EventDispatcher.Payload.class);
+
+        start = System.nanoTime();
+        dispatchEvent.invoke(dispatcher, type, payload);
+        phases[1] = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        Constructor<?> legacyConstructor = loader.loadClass(DISPATCHER_PACKAGE + "LegacyPianoDispatcher").getConstructor(Context.class);
+        Object legacy = legacyConstructor.newInstance(context);
+        buildCustomEvent(legacy, type);
+        phases[2] = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        Object kotlin = loader.loadClass(DISPATCHER_PACKAGE + "PianoDispatcher").getDeclaredConstructor().newInstance();
+        buildCustomEvent(kotlin, type);
+        phases[3] = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i = 0; i < STEADY_ITERATIONS; i++) {
+            dispatchEvent.invoke(dispatcher, type, payload);
+            if (i % 256 == 0) {
+                sink.getClass().getMethod("clear").invoke(sink);
+            }
+        }
+        phases[4] = (System.nanoTime() - start) / STEADY_ITERATIONS;
+        return phases;
+    }
+
+    private void buildCustomEvent(Object dispatcher, Batch.EventDispatcher.Type type) throws Exception {
+        Method build = dispatcher.getClass().getDeclaredMethod("buildPianoCustomEvent",
+                Batch.EventDispatcher.Type.class, Batch.EventDispatcher.Payload.class);
+        build.setAccessible(true);
+        build.invoke(dispatcher, type, payload);
+    }
+
+    private void report(long[][] timings) throws IOException {
+        Map<String, String> lines = new LinkedHashMap<>();
+        for (int phase = 0; phase < PHASES.length; phase++) {
+            long[] cold = Arrays.copyOfRange(timings[phase], 1, COLD_RUNS + 1);
+            Arrays.sort(cold);
+            lines.put(PHASES[phase], micros(timings[phase][0])
+                    + "\t" + micros(cold[0])
+                    + "\t" + micros(cold[cold.length / 2])
+                    + "\t" + micros(cold[(int) Math.ceil(cold.length * 0.9) - 1]));
+        }
+        StringBuilder builder = new StringBuilder("phase\trun0_us\tmin_us\tmedian_us\tp90_us\n");
+        for (Map.Entry<String, String> line : lines.entrySet()) {
+            builder.append(line.getKey()).append('\t').append(line.getValue()).append('\n');
+        }
+        System.out.print(builder);
+        File output = new File("build/benchmarks/cold-start.tsv");
+        if (output.getParentFile().mkdirs() || output.getParentFile().isDirectory()) {
+            try (Writer writer = new FileWriter(output)) {
+                writer.write(builder.toString());
+            }
+        }
+    }
+
+    private static long micros(long nanos) {
+        return TimeUnit.NANOSECONDS.toMicros(nanos);
+    }
+
+    /**
+     * Class loader defining the dispatcher classes again instead of delegating to its parent
+     */
+    private static final class ColdClassLoader extends ClassLoader {
+
+        ColdClassLoader(ClassLoader parent) {
+            super(parent);
+        }
+
+        @Override
+        protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+            if (!isDispatcherClass(name)) {
+                return super.loadClass(name, resolve);
+            }
+            synchronized (getClassLoadingLock(name)) {
+                Class<?> loaded = findLoadedClass(name);
+                if (loaded == null) {
+                    loaded = defineDispatcherClass(name);
+                }
+                if (resolve) {
+                    resolveClass(loaded);
+                }
+                return loaded;
+            }
+        }
+
+        private boolean isDispatcherClass(String name) {
+            return name.startsWith(DISPATCHER_PACKAGE)
+                    && !name.startsWith(PianoColdStartBenchmark.class.getName())
+                    && !name.startsWith(TestEventPayload.class.getName())
+                    && getParent().getResource(name.replace('.', '/') + ".class") != null;
+        }
+
+        private Class<?> defineDispatcherClass(String name) throws ClassNotFoundException {
+            try (InputStream input = getParent().getResourceAsStream(name.replace('.', '/') + ".class")) {
+                if (input == null) {
+                    throw new ClassNotFoundException(name);
+                }
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                byte[] buffer = new byte[8192];
+                int read;
+                while ((read = input.read(buffer)) != -1) {
+                    bytes.write(buffer, 0, read);
+                }
+                return defineClass(name, bytes.toByteArray(), 0, bytes.size());
+            } catch (IOException e) {
+                throw new ClassNotFoundException(name, e);
+            }
+        }
+    }
+}